@@ -15,7 +15,16 @@ abstract class AbstractSitemapGeneratorOptions<THIS extends AbstractSitemapGener
 	W3CDateFormat dateFormat;
 	int maxUrls = SitemapGenerator.MAX_URLS_PER_SITEMAP;
 	boolean autoValidate = false;
+	boolean autoValidateStructure = false;
+	int validationThreads = 1;
+	ValidationPolicy validationPolicy = ValidationPolicy.ALL;
 	boolean gzip = false;
+	boolean compact = false;
+	boolean contentAddressed = false;
+	boolean writeManifest = false;
+	ShardPartitioner<?> partitioner;
+	boolean append = false;
+	boolean writeLocator = false;
 	
 	public AbstractSitemapGeneratorOptions(URL baseUrl, File baseDir) {
 		if (baseUrl == null) throw new NullPointerException("baseUrl may not be null");
@@ -79,11 +88,115 @@ abstract class AbstractSitemapGeneratorOptions<THIS extends AbstractSitemapGener
 		this.autoValidate = autoValidate;
 		return getThis();
 	}
+	/**
+	 * Check the structure of the sitemaps as they are written, including the rules of the Google extensions
+	 * (e.g. at most 1,000 news URLs from the last three days, a title for every video), that every URL is on the
+	 * base URL's host, and that no sitemap is larger than 50MB.  This works for every kind of sitemap, and is much
+	 * faster than {@link #autoValidate(boolean)}.
+	 */
+	public THIS autoValidateStructure(boolean autoValidateStructure) {
+		this.autoValidateStructure = autoValidateStructure;
+		return getThis();
+	}
+	/**
+	 * How many threads validate the sitemaps when {@link #autoValidate(boolean)} or {@link #autoValidateStructure(boolean)} is on; by default, one.  Validation
+	 * runs alongside the rendering of the following sitemaps, and any failures are thrown by write().  With more than
+	 * one thread, a sitemap waiting to be validated is held in memory, so up to validationThreads + 1 sitemaps' worth
+	 * of XML may be buffered at once.
+	 */
+	public THIS validationThreads(int validationThreads) {
+		if (validationThreads < 1) throw new RuntimeException("validationThreads must be at least 1: " + validationThreads);
+		this.validationThreads = validationThreads;
+		return getThis();
+	}
+	/**
+	 * Which sitemaps to validate when {@link #autoValidate(boolean)} or {@link #autoValidateStructure(boolean)} is on;
+	 * by default, {@link ValidationPolicy#ALL all of them}.  For very large runs, validating a sample (e.g. every
+	 * 10th sitemap) keeps most of the safety for a fraction of the cost.
+	 */
+	public THIS validationPolicy(ValidationPolicy validationPolicy) {
+		if (validationPolicy == null) throw new NullPointerException("validationPolicy may not be null");
+		this.validationPolicy = validationPolicy;
+		return getThis();
+	}
 	/** Gzip the sitemaps after they are written to disk */
 	public THIS gzip(boolean gzip) {
 		this.gzip = gzip;
 		return getThis();
 	}
+	/**
+	 * Write compact XML, without indentation or newlines between elements; this makes
+	 * the sitemaps (and the sitemap index) smaller, so more URLs fit under the size limit.
+	 * By default, the output is indented.
+	 */
+	public THIS compact(boolean compact) {
+		this.compact = compact;
+		return getThis();
+	}
+	
+	/**
+	 * Name each sitemap after a hash of its content, e.g. "sitemap17-3f2a9c1b0d4e5f60.xml.gz" instead of
+	 * "sitemap17.xml.gz"; {@link SitemapGenerator#writeSitemapsWithIndex()} refers to those names.  A sitemap
+	 * whose content didn't change keeps its name from one run to the next, so it can be cached forever, and
+	 * only the new names need uploading.  The hash is computed as the sitemap is written.  Once
+	 * {@link SitemapGenerator#writeSitemapsWithIndex()} has written the new index, the content-addressed sitemaps
+	 * (of the same prefix) that neither it nor the index it replaced lists are deleted: the sitemaps of the
+	 * previous index are kept for one more run, for the crawlers and caches that still have it.  Give other
+	 * generators writing to the same directory a prefix of their own; without an index, cleaning up the old names
+	 * is up to you.
+	 */
+	public THIS contentAddressed(boolean contentAddressed) {
+		this.contentAddressed = contentAddressed;
+		return getThis();
+	}
+	
+	/**
+	 * Also write a JSON manifest next to the sitemaps, e.g. "sitemap_manifest.json", with the size, CRC-32C,
+	 * SHA-256, URL count and latest lastmod of each one (see {@link SitemapGenerator#getSitemapResults()}), so
+	 * uploads can be checked without reading the sitemaps back.  By default, there's no manifest.
+	 */
+	public THIS writeManifest(boolean writeManifest) {
+		this.writeManifest = writeManifest;
+		return getThis();
+	}
+	
+	/**
+	 * Route the URLs to named groups of sitemaps, each with its own files and rollover, instead of filling the
+	 * sitemaps in the order the URLs are added; {@link SitemapGenerator#writeSitemapsWithIndex()} lists the
+	 * sitemaps of every group.  The partitioner must accept the type of URL of the generator.  By default, there's
+	 * just one group.
+	 */
+	public THIS partitioner(ShardPartitioner<?> partitioner) {
+		this.partitioner = partitioner;
+		return getThis();
+	}
+	
+	/**
+	 * Add the URLs to the sitemaps already in the base directory instead of replacing them: they're appended to the
+	 * last numbered sitemap, without rewriting it, until it's full, and then go into new sitemaps after it.  The
+	 * sitemaps are always numbered, e.g. "sitemap1.xml", even if there's only one; a single unnumbered sitemap left
+	 * by a run that wasn't in append mode is copied to "sitemap1.xml" when the sitemaps are written, and left in
+	 * place for robots.txt or the index being served, so remove it once they point at the new ones.  Gzipped
+	 * sitemaps can only be appended to if they were written in append mode, which puts the closing tag in a gzip
+	 * member of its own.  The appended URLs aren't validated, and can't be combined with content-addressed names
+	 * or a partitioner.  A sitemap that was appended to gets a {@link SitemapGenerator#getSitemapResults() result}
+	 * too, with the checksums of the whole file, which is read back for them.
+	 */
+	public THIS append(boolean append) {
+		this.append = append;
+		return getThis();
+	}
+	
+	/**
+	 * Also write a locator file next to the sitemaps, e.g. "sitemap_locator.bin", which maps each URL to its
+	 * sitemap and its offset in it: see {@link SitemapLocator}.  It's what lets
+	 * {@link SitemapGenerator#updateUrls(Iterable, Iterable)} rewrite only the sitemaps of the URLs that changed.
+	 * By default, there's no locator.
+	 */
+	public THIS writeLocator(boolean writeLocator) {
+		this.writeLocator = writeLocator;
+		return getThis();
+	}
 	
 	@SuppressWarnings("unchecked")
 	THIS getThis() {
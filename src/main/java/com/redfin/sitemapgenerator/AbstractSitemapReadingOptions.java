@@ -0,0 +1,49 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.File;
+
+/** The options shared by the tools that read many sitemaps on a pool of threads, with {@link RecordSpill#readAll} */
+abstract class AbstractSitemapReadingOptions<THIS extends AbstractSitemapReadingOptions<THIS>> {
+	int threads = Runtime.getRuntime().availableProcessors();
+	W3CDateFormat dateFormat = new W3CDateFormat();
+
+	/** How many files to read at once; by default, one per processor */
+	public THIS threads(int threads) {
+		if (threads < 1) throw new IllegalArgumentException("threads must be at least 1: " + threads);
+		this.threads = threads;
+		return getThis();
+	}
+
+	/** Parses the dates of the input files, typically in AUTO mode with the time zone of dates that don't specify one */
+	public THIS dateFormat(W3CDateFormat dateFormat) {
+		this.dateFormat = dateFormat;
+		return getThis();
+	}
+
+	@SuppressWarnings("unchecked")
+	THIS getThis() {
+		return (THIS) this;
+	}
+
+	/** The options of the tools that also spill the URLs into partitions, with a {@link RecordSpill} */
+	abstract static class Spilling<THIS extends Spilling<THIS>> extends AbstractSitemapReadingOptions<THIS> {
+		int partitions = 16;
+		File tempDir;
+
+		/**
+		 * How many partitions to spill the URLs into; one partition (of each set of sitemaps) at a time is held in
+		 * memory, so use more of them for larger inputs (roughly one per million URLs).  The default is 16.
+		 */
+		public THIS partitions(int partitions) {
+			if (partitions < 1) throw new IllegalArgumentException("partitions must be at least 1: " + partitions);
+			this.partitions = partitions;
+			return getThis();
+		}
+
+		/** Where to put the temporary files; by default, the system's temporary directory */
+		public THIS tempDir(File tempDir) {
+			this.tempDir = tempDir;
+			return getThis();
+		}
+	}
+}
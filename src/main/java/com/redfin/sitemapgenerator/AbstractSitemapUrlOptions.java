@@ -4,6 +4,7 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.ParseException;
 import java.util.Date;
+import java.util.TimeZone;
 
 /** Container for optional URL parameters */
 //that weird thing with generics is so sub-classed objects will return themselves
@@ -42,10 +43,10 @@ abstract class AbstractSitemapUrlOptions<U extends WebSitemapUrl, THIS extends A
 	 * return, and search engines may use the information from both sources
 	 * differently.
 	 * @throws ParseException if the string isn't a valid W3C date time
-	 * @see W3CDateFormat
+	 * @see W3CDateParser
 	 */
 	public THIS lastMod(String lastMod) throws ParseException {
-		this.lastMod = new W3CDateFormat().parse(lastMod);
+		this.lastMod = W3CDateParser.parseDate(lastMod, TimeZone.getDefault());
 		return getThis();
 	}
 	
@@ -1,46 +1,75 @@
 package com.redfin.sitemapgenerator;
 
-abstract class AbstractSitemapUrlRenderer<T extends WebSitemapUrl> implements ISitemapUrlRenderer<T> {
+import java.io.IOException;
+
+abstract class AbstractSitemapUrlRenderer<T extends WebSitemapUrl> implements ISitemapUrlStreamRenderer<T> {
+	private static final XmlFragment URL_OPEN = XmlFragment.of("  <url>\n");
+	private static final XmlFragment URL_CLOSE = XmlFragment.of("  </url>\n");
+	private static final XmlFragment LOC_OPEN = XmlFragment.of("    <loc>");
+	private static final XmlFragment LOC_CLOSE = XmlFragment.of("</loc>\n");
+	private static final XmlFragment LASTMOD_OPEN = XmlFragment.of("    <lastmod>");
+	private static final XmlFragment LASTMOD_CLOSE = XmlFragment.of("</lastmod>\n");
+	private static final XmlFragment PRIORITY_OPEN = XmlFragment.of("    <priority>");
+	private static final XmlFragment PRIORITY_CLOSE = XmlFragment.of("</priority>\n");
+	private static final XmlFragment[] CHANGE_FREQS = new XmlFragment[ChangeFreq.values().length];
+	static {
+		for (ChangeFreq changeFreq : ChangeFreq.values()) {
+			CHANGE_FREQS[changeFreq.ordinal()] = XmlFragment.of("    <changefreq>" + changeFreq + "</changefreq>\n");
+		}
+	}
+	
+	public void render(T url, StringBuilder sb, W3CDateFormat dateFormat) {
+		try {
+			render(url, XmlSink.of(sb), dateFormat);
+		} catch (IOException e) {
+			throw new RuntimeException("BUG", e);
+		}
+	}
+	
+	public void render(T url, XmlSink out, W3CDateFormat dateFormat) throws IOException {
+		openUrl(url, out, dateFormat);
+		renderAdditionalData(url, out, dateFormat);
+		closeUrl(out);
+	}
 	
-	public void render(WebSitemapUrl url, StringBuilder sb, W3CDateFormat dateFormat, String additionalData) {
-		sb.append("  <url>\n");
-		sb.append("    <loc>");
-		sb.append(UrlUtils.escapeXml(url.getUrl().toString()));
-		sb.append("</loc>\n");
+	/** Writes the extension tags of one URL (e.g. &lt;video:video&gt;), after the standard ones */
+	void renderAdditionalData(T url, XmlSink out, W3CDateFormat dateFormat) throws IOException {
+	}
+	
+	void openUrl(WebSitemapUrl url, XmlSink out, W3CDateFormat dateFormat) throws IOException {
+		openUrl(url.getUrl().toString(), url, out, dateFormat);
+	}
+	
+	/** Opens a &lt;url&gt; with the given location, and the lastmod, changefreq and priority of the url */
+	void openUrl(String loc, WebSitemapUrl url, XmlSink out, W3CDateFormat dateFormat) throws IOException {
+		out.append(URL_OPEN);
+		out.append(LOC_OPEN);
+		out.text(loc);
+		out.append(LOC_CLOSE);
 		if (url.getLastMod() != null) {
-			sb.append("    <lastmod>");
-			sb.append(dateFormat.format(url.getLastMod()));
-			sb.append("</lastmod>\n");
+			out.append(LASTMOD_OPEN);
+			out.append(dateFormat.format(url.getLastMod()));
+			out.append(LASTMOD_CLOSE);
 		}
 		if (url.getChangeFreq() != null) {
-			sb.append("    <changefreq>");
-			sb.append(url.getChangeFreq().toString());
-			sb.append("</changefreq>\n");
+			out.append(CHANGE_FREQS[url.getChangeFreq().ordinal()]);
 		}
 		if (url.getPriority() != null) {
-			sb.append("    <priority>");
-			sb.append(url.getPriority().toString());
-			sb.append("</priority>\n");
+			out.append(PRIORITY_OPEN);
+			out.append(url.getPriority().toString());
+			out.append(PRIORITY_CLOSE);
 		}
-		if (additionalData != null) {
-			sb.append(additionalData);
-		}
-		sb.append("  </url>\n");
+	}
+	
+	void closeUrl(XmlSink out) throws IOException {
+		out.append(URL_CLOSE);
 	}
 
-	public void renderTag(StringBuilder sb, String namespace, String tagName, Object value) {
+	public void renderTag(XmlSink out, XmlTag tag, Object value) throws IOException {
 		if (value == null) return;
-		sb.append("      <");
-		sb.append(namespace);
-		sb.append(':');
-		sb.append(tagName);
-		sb.append('>');
-		sb.append(UrlUtils.escapeXml(value.toString()));
-		sb.append("</");
-		sb.append(namespace);
-		sb.append(':');
-		sb.append(tagName);
-		sb.append(">\n");
+		out.append(tag.open);
+		out.text(value.toString());
+		out.append(tag.close);
 	}
 
 }
@@ -0,0 +1,113 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzips a sitemap so that its closing tag is a gzip member of its own, with fixed bytes ({@link #CLOSING_MEMBER});
+ * URLs can then be appended by replacing that member with one of new entries followed by the closing member
+ * again.  Readers see one stream, as gzip concatenates members.
+ */
+final class AppendableGzipOutputStream extends OutputStream {
+	static final byte[] CLOSING_TAG = "</urlset>".getBytes(StandardCharsets.UTF_8);
+	/** A member with the closing tag in a stored (uncompressed) block, so its bytes don't depend on the zlib version */
+	static final byte[] CLOSING_MEMBER = closingMember();
+
+	private final OutputStream out;
+	private final MemberOutputStream gzip;
+	/** the last bytes written, held back until we know whether they're the closing tag */
+	private final byte[] tail = new byte[CLOSING_TAG.length];
+	private int tailLength;
+
+	AppendableGzipOutputStream(OutputStream out) throws IOException {
+		this.out = out;
+		gzip = new MemberOutputStream(out);
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (len >= tail.length) {
+			gzip.write(tail, 0, tailLength);
+			gzip.write(b, off, len - tail.length);
+			System.arraycopy(b, off + len - tail.length, tail, 0, tail.length);
+			tailLength = tail.length;
+			return;
+		}
+		int overflow = tailLength + len - tail.length;
+		if (overflow > 0) {
+			gzip.write(tail, 0, overflow);
+			System.arraycopy(tail, overflow, tail, 0, tailLength - overflow);
+			tailLength -= overflow;
+		}
+		System.arraycopy(b, off, tail, tailLength, len);
+		tailLength += len;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (!endsWithClosingTag(tail, tailLength)) throw new IOException("A sitemap must end with </urlset>");
+			gzip.finish();
+			out.write(CLOSING_MEMBER);
+		} finally {
+			gzip.end();
+			out.close();
+		}
+	}
+
+	/** Gzips one member; unlike {@link GZIPOutputStream#close()}, {@link #end()} frees the deflater's native memory
+	 * without closing the stream, which still gets the closing member */
+	static final class MemberOutputStream extends GZIPOutputStream {
+		MemberOutputStream(OutputStream out) throws IOException {
+			super(out);
+		}
+
+		void end() {
+			def.end();
+		}
+	}
+
+	static boolean endsWithClosingTag(byte[] b, int length) {
+		if (length < CLOSING_TAG.length) return false;
+		for (int i = 0; i < CLOSING_TAG.length; i++) {
+			if (b[length - CLOSING_TAG.length + i] != CLOSING_TAG[i]) return false;
+		}
+		return true;
+	}
+
+	private static byte[] closingMember() {
+		ByteBuffer member = ByteBuffer.allocate(10 + 5 + CLOSING_TAG.length + 8).order(ByteOrder.LITTLE_ENDIAN);
+		// magic, deflate, no flags, no time, no extra flags, unknown OS
+		member.put(new byte[] { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff });
+		// the final block, stored, with its length and the complement of its length
+		member.put((byte) 1).putShort((short) CLOSING_TAG.length).putShort((short) ~CLOSING_TAG.length);
+		member.put(CLOSING_TAG);
+		CRC32 crc = new CRC32();
+		crc.update(CLOSING_TAG, 0, CLOSING_TAG.length);
+		member.putInt((int) crc.getValue()).putInt(CLOSING_TAG.length);
+		return member.array();
+	}
+
+	static byte[] gzip(byte[] b, int off, int len) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+			gzip.write(b, off, len);
+			gzip.close();
+		} catch (IOException e) {
+			throw new RuntimeException("BUG", e);
+		}
+		return bytes.toByteArray();
+	}
+}
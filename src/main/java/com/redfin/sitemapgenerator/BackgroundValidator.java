@@ -0,0 +1,111 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xml.sax.SAXException;
+
+/** Validates the sitemaps of one generator on a pool of threads, while the generator goes on rendering the
+ * next ones; {@link #finish()} waits for all of them and reports any failures.
+ *
+ * <p>With one thread, the validator keeps pace with the writer, as {@link ValidatingOutputStream} does on its own.
+ * With more, each sitemap is buffered until a thread is free to validate it, so several sitemaps can be validated
+ * at once; to bound the memory this takes, no more than threads + 1 sitemaps are ever being validated.</p>
+ *
+ * <p>When each sitemap goes through several validators, each of them gets its own threads, so that none of them
+ * waits in the queue while the writer blocks on its full stream.</p>
+ */
+final class BackgroundValidator {
+	private final ExecutorService executor;
+	private final Semaphore permits;
+	private final int capacity;
+	private final List<File> pendingFiles = new ArrayList<File>();
+	private final List<ValidatingOutputStream> pending = new ArrayList<ValidatingOutputStream>();
+
+	BackgroundValidator(int threads) {
+		this(threads, 1);
+	}
+
+	/** @param validatorsPerFile how many times {@link #validate} is called for each file */
+	BackgroundValidator(int threads, int validatorsPerFile) {
+		if (threads < 1) throw new IllegalArgumentException("validationThreads must be at least 1: " + threads);
+		executor = Executors.newFixedThreadPool(threads * validatorsPerFile, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "sitemap-validator-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		permits = new Semaphore((threads + 1) * validatorsPerFile);
+		capacity = threads == 1 ? 16 : Integer.MAX_VALUE;
+	}
+
+	/** Wraps the stream the file is being written to; the file will be validated as it's written */
+	OutputStream validate(File file, OutputStream out, DocumentValidator validator) throws IOException {
+		try {
+			permits.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to validate " + file);
+		}
+		Executor releasing = new Executor() {
+			public void execute(final Runnable command) {
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							command.run();
+						} finally {
+							permits.release();
+						}
+					}
+				});
+			}
+		};
+		ValidatingOutputStream stream = new ValidatingOutputStream(out, validator, releasing, capacity);
+		pendingFiles.add(file);
+		pending.add(stream);
+		return stream;
+	}
+
+	/** Waits for every file to be validated, then shuts down the threads
+	 *
+	 * @throws RuntimeException if any file failed to validate; the first failure is the cause, and
+	 * the others are suppressed
+	 */
+	void finish() {
+		List<String> failedFiles = new ArrayList<String>();
+		List<SAXException> failures = new ArrayList<SAXException>();
+		try {
+			for (int i = 0; i < pending.size(); i++) {
+				try {
+					pending.get(i).finish();
+				} catch (SAXException e) {
+					String name = pendingFiles.get(i).getName();
+					if (!failedFiles.contains(name)) failedFiles.add(name);
+					failures.add(e);
+				}
+			}
+		} finally {
+			pendingFiles.clear();
+			pending.clear();
+			executor.shutdown();
+		}
+		if (failures.isEmpty()) return;
+		RuntimeException e = new RuntimeException("Sitemap file failed to validate (bug?): " + failedFiles, failures.get(0));
+		for (int i = 1; i < failures.size(); i++) {
+			e.addSuppressed(failures.get(i));
+		}
+		throw e;
+	}
+}
@@ -0,0 +1,52 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/** Counts, CRC-32Cs and SHA-256s the bytes on their way to the underlying stream */
+final class ChecksumOutputStream extends FilterOutputStream {
+	private final Crc32c crc = new Crc32c();
+	private final MessageDigest sha256;
+	private long count;
+
+	ChecksumOutputStream(OutputStream out) {
+		super(out);
+		try {
+			sha256 = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		crc.update(b);
+		sha256.update((byte) b);
+		count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		crc.update(b, off, len);
+		sha256.update(b, off, len);
+		count += len;
+	}
+
+	long getCount() {
+		return count;
+	}
+
+	long getCrc32c() {
+		return crc.getValue();
+	}
+
+	/** The SHA-256 of everything written; call this once, when it's all written */
+	byte[] getSha256() {
+		return sha256.digest();
+	}
+}
@@ -0,0 +1,55 @@
+package com.redfin.sitemapgenerator;
+
+import java.util.zip.Checksum;
+
+/**
+ * CRC-32C (Castagnoli), as used by cloud storage APIs to check uploads; java.util.zip.CRC32C only exists since
+ * Java 9.  Processes eight bytes at a time (slicing-by-8).
+ */
+final class Crc32c implements Checksum {
+	private static final int[][] TABLES = new int[8][256];
+	static {
+		for (int i = 0; i < 256; i++) {
+			int crc = i;
+			for (int bit = 0; bit < 8; bit++) {
+				crc = (crc & 1) != 0 ? (crc >>> 1) ^ 0x82F63B78 : crc >>> 1;
+			}
+			TABLES[0][i] = crc;
+		}
+		for (int i = 0; i < 256; i++) {
+			for (int t = 1; t < 8; t++) {
+				int previous = TABLES[t - 1][i];
+				TABLES[t][i] = (previous >>> 8) ^ TABLES[0][previous & 0xff];
+			}
+		}
+	}
+
+	private int crc = 0xffffffff;
+
+	public void update(int b) {
+		crc = (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xff];
+	}
+
+	public void update(byte[] b, int off, int len) {
+		int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+		int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+		int crc = this.crc;
+		for (; len >= 8; off += 8, len -= 8) {
+			int c = crc ^ ((b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24);
+			crc = t7[c & 0xff] ^ t6[(c >>> 8) & 0xff] ^ t5[(c >>> 16) & 0xff] ^ t4[c >>> 24]
+				^ t3[b[off + 4] & 0xff] ^ t2[b[off + 5] & 0xff] ^ t1[b[off + 6] & 0xff] ^ t0[b[off + 7] & 0xff];
+		}
+		for (; len > 0; off++, len--) {
+			crc = (crc >>> 8) ^ t0[(crc ^ b[off]) & 0xff];
+		}
+		this.crc = crc;
+	}
+
+	public long getValue() {
+		return ~crc & 0xffffffffL;
+	}
+
+	public void reset() {
+		crc = 0xffffffff;
+	}
+}
@@ -0,0 +1,17 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.xml.sax.SAXException;
+
+/** Checks a whole sitemap (or sitemap index) document, read from a stream of bytes */
+interface DocumentValidator {
+
+	/**
+	 * @param in the document; the caller closes it
+	 * @param systemId where the document comes from, for error messages; may be null
+	 * @throws SAXException if the document isn't valid
+	 */
+	void validate(InputStream in, String systemId) throws SAXException, IOException;
+}
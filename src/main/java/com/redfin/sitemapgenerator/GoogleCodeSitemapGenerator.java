@@ -1,6 +1,7 @@
 package com.redfin.sitemapgenerator;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -77,6 +78,13 @@ public class GoogleCodeSitemapGenerator extends SitemapGenerator<GoogleCodeSitem
 	}
 
 	private static class Renderer extends AbstractSitemapUrlRenderer<GoogleCodeSitemapUrl> implements ISitemapUrlRenderer<GoogleCodeSitemapUrl> {
+		private static final XmlFragment CODESEARCH_OPEN = XmlFragment.of("    <codesearch:codesearch>\n");
+		private static final XmlFragment CODESEARCH_CLOSE = XmlFragment.of("    </codesearch:codesearch>\n");
+		private static final XmlTag FILETYPE = new XmlTag("codesearch", "filetype");
+		private static final XmlTag LICENSE = new XmlTag("codesearch", "license");
+		private static final XmlTag FILENAME = new XmlTag("codesearch", "filename");
+		private static final XmlTag PACKAGEURL = new XmlTag("codesearch", "packageurl");
+		private static final XmlTag PACKAGEMAP = new XmlTag("codesearch", "packagemap");
 
 		public Class<GoogleCodeSitemapUrl> getUrlClass() {
 			return GoogleCodeSitemapUrl.class;
@@ -86,17 +94,15 @@ public class GoogleCodeSitemapGenerator extends SitemapGenerator<GoogleCodeSitem
 			return "xmlns:codesearch=\"http://www.google.com/codesearch/schemas/sitemap/1.0\"";
 		}
 
-		public void render(GoogleCodeSitemapUrl url, StringBuilder sb,
-				W3CDateFormat dateFormat) {
-			StringBuilder tagSb = new StringBuilder();
-			tagSb.append("    <codesearch:codesearch>\n");
-			renderTag(tagSb, "codesearch", "filetype", url.getFileType());
-			renderTag(tagSb, "codesearch", "license", url.getLicense());
-			renderTag(tagSb, "codesearch", "filename", url.getFileName());
-			renderTag(tagSb, "codesearch", "packageurl", url.getPackageUrl());
-			renderTag(tagSb, "codesearch", "packagemap", url.getPackageMap());
-			tagSb.append("    </codesearch:codesearch>\n");
-			super.render(url, sb, dateFormat, tagSb.toString());
+		void renderAdditionalData(GoogleCodeSitemapUrl url, XmlSink out,
+				W3CDateFormat dateFormat) throws IOException {
+			out.append(CODESEARCH_OPEN);
+			renderTag(out, FILETYPE, url.getFileType());
+			renderTag(out, LICENSE, url.getLicense());
+			renderTag(out, FILENAME, url.getFileName());
+			renderTag(out, PACKAGEURL, url.getPackageUrl());
+			renderTag(out, PACKAGEMAP, url.getPackageMap());
+			out.append(CODESEARCH_CLOSE);
 		}
 		
 	}
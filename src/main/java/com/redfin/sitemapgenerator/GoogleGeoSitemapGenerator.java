@@ -1,6 +1,7 @@
 package com.redfin.sitemapgenerator;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -78,6 +79,10 @@ public class GoogleGeoSitemapGenerator extends SitemapGenerator<GoogleGeoSitemap
 	}
 
 	private static class Renderer extends AbstractSitemapUrlRenderer<GoogleGeoSitemapUrl> implements ISitemapUrlRenderer<GoogleGeoSitemapUrl> {
+		private static final XmlFragment GEO_OPEN = XmlFragment.of("    <geo:geo>\n");
+		private static final XmlFragment FORMAT_OPEN = XmlFragment.of("      <geo:format>");
+		private static final XmlFragment FORMAT_CLOSE = XmlFragment.of("</geo:format>\n");
+		private static final XmlFragment GEO_CLOSE = XmlFragment.of("    </geo:geo>\n");
 
 		public Class<GoogleGeoSitemapUrl> getUrlClass() {
 			return GoogleGeoSitemapUrl.class;
@@ -87,12 +92,12 @@ public class GoogleGeoSitemapGenerator extends SitemapGenerator<GoogleGeoSitemap
 			return "xmlns:geo=\"http://www.google.com/geo/schemas/sitemap/1.0\"";
 		}
 
-		public void render(GoogleGeoSitemapUrl url, StringBuilder sb, W3CDateFormat dateFormat) {
-			StringBuilder tagSb = new StringBuilder();
-			tagSb.append("    <geo:geo>\n");
-			tagSb.append("      <geo:format>"+url.getFormat()+"</geo:format>\n");
-			tagSb.append("    </geo:geo>\n");
-			super.render(url, sb, dateFormat, tagSb.toString());
+		void renderAdditionalData(GoogleGeoSitemapUrl url, XmlSink out, W3CDateFormat dateFormat) throws IOException {
+			out.append(GEO_OPEN);
+			out.append(FORMAT_OPEN);
+			out.append(String.valueOf(url.getFormat()));
+			out.append(FORMAT_CLOSE);
+			out.append(GEO_CLOSE);
 		}
 		
 	}
@@ -1,6 +1,7 @@
 package com.redfin.sitemapgenerator;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -76,6 +77,13 @@ public class GoogleImageSitemapGenerator extends SitemapGenerator<GoogleImageSit
 	}
 
 	private static class Renderer extends AbstractSitemapUrlRenderer<GoogleImageSitemapUrl> implements ISitemapUrlRenderer<GoogleImageSitemapUrl> {
+		private static final XmlFragment IMAGE_OPEN = XmlFragment.of("    <image:image>\n");
+		private static final XmlFragment IMAGE_CLOSE = XmlFragment.of("    </image:image>\n");
+		private static final XmlTag LOC = new XmlTag("image", "loc");
+		private static final XmlTag LICENSE = new XmlTag("image", "license");
+		private static final XmlTag CAPTION = new XmlTag("image", "caption");
+		private static final XmlTag GEO_LOCATION = new XmlTag("image", "geo_location");
+		private static final XmlTag TITLE = new XmlTag("image", "title");
 
 		public Class<GoogleImageSitemapUrl> getUrlClass() {
 			return GoogleImageSitemapUrl.class;
@@ -85,17 +93,15 @@ public class GoogleImageSitemapGenerator extends SitemapGenerator<GoogleImageSit
 			return "xmlns:image=\"http://www.google.com/schemas/sitemap-image/1.1\"";
 		}
 
-		public void render(GoogleImageSitemapUrl url, StringBuilder sb,
-				W3CDateFormat dateFormat) {
-			StringBuilder tagSb = new StringBuilder();
-			tagSb.append("    <image:image>\n");
-			renderTag(tagSb, "image", "loc", url.getImageUrl());
-			renderTag(tagSb, "image", "license", url.getLicenseUrl());
-			renderTag(tagSb, "image", "caption", url.getCaption());
-			renderTag(tagSb, "image", "geo_location", url.getGeoLocation());
-			renderTag(tagSb, "image", "title", url.getTitle());
-			tagSb.append("    </image:image>\n");
-			super.render(url, sb, dateFormat, tagSb.toString());
+		void renderAdditionalData(GoogleImageSitemapUrl url, XmlSink out,
+				W3CDateFormat dateFormat) throws IOException {
+			out.append(IMAGE_OPEN);
+			renderTag(out, LOC, url.getImageUrl());
+			renderTag(out, LICENSE, url.getLicenseUrl());
+			renderTag(out, CAPTION, url.getCaption());
+			renderTag(out, GEO_LOCATION, url.getGeoLocation());
+			renderTag(out, TITLE, url.getTitle());
+			out.append(IMAGE_CLOSE);
 		}
 		
 	}
@@ -1,6 +1,7 @@
 package com.redfin.sitemapgenerator;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -76,6 +77,7 @@ public class GoogleMobileSitemapGenerator extends SitemapGenerator<GoogleMobileS
 	}
 
 	private static class Renderer extends AbstractSitemapUrlRenderer<GoogleMobileSitemapUrl> implements ISitemapUrlRenderer<GoogleMobileSitemapUrl> {
+		private static final XmlFragment MOBILE = XmlFragment.of("    <mobile:mobile/>\n");
 
 		public Class<GoogleMobileSitemapUrl> getUrlClass() {
 			return GoogleMobileSitemapUrl.class;
@@ -85,9 +87,8 @@ public class GoogleMobileSitemapGenerator extends SitemapGenerator<GoogleMobileS
 			return "xmlns:mobile=\"http://www.google.com/schemas/sitemap-mobile/1.0\"";
 		}
 
-		public void render(GoogleMobileSitemapUrl url, StringBuilder sb, W3CDateFormat dateFormat) {
-			String additionalData = "    <mobile:mobile/>\n";
-			super.render(url, sb, dateFormat, additionalData);
+		void renderAdditionalData(GoogleMobileSitemapUrl url, XmlSink out, W3CDateFormat dateFormat) throws IOException {
+			out.append(MOBILE);
 		}
 		
 	}
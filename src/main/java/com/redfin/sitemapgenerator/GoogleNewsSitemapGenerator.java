@@ -1,6 +1,7 @@
 package com.redfin.sitemapgenerator;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -88,6 +89,10 @@ public class GoogleNewsSitemapGenerator extends SitemapGenerator<GoogleNewsSitem
 	}
 	
 	private static class Renderer extends AbstractSitemapUrlRenderer<GoogleNewsSitemapUrl> implements ISitemapUrlRenderer<GoogleNewsSitemapUrl> {
+		private static final XmlFragment NEWS_OPEN = XmlFragment.of("    <news:news>\n");
+		private static final XmlFragment NEWS_CLOSE = XmlFragment.of("    </news:news>\n");
+		private static final XmlTag PUBLICATION_DATE = new XmlTag("news", "publication_date");
+		private static final XmlTag KEYWORDS = new XmlTag("news", "keywords");
 
 		public Class<GoogleNewsSitemapUrl> getUrlClass() {
 			return GoogleNewsSitemapUrl.class;
@@ -97,13 +102,11 @@ public class GoogleNewsSitemapGenerator extends SitemapGenerator<GoogleNewsSitem
 			return "xmlns:news=\"http://www.google.com/schemas/sitemap-news/0.9\"";
 		}
 
-		public void render(GoogleNewsSitemapUrl url, StringBuilder sb, W3CDateFormat dateFormat) {
-			StringBuilder tagSb = new StringBuilder();
-			tagSb.append("    <news:news>\n");
-			renderTag(tagSb, "news", "publication_date", dateFormat.format(url.getPublicationDate()));
-			renderTag(tagSb, "news", "keywords", url.getKeywords());
-			tagSb.append("    </news:news>\n");
-			super.render(url, sb, dateFormat, tagSb.toString());
+		void renderAdditionalData(GoogleNewsSitemapUrl url, XmlSink out, W3CDateFormat dateFormat) throws IOException {
+			out.append(NEWS_OPEN);
+			renderTag(out, PUBLICATION_DATE, dateFormat.format(url.getPublicationDate()));
+			renderTag(out, KEYWORDS, url.getKeywords());
+			out.append(NEWS_CLOSE);
 		}
 		
 	}
@@ -1,6 +1,7 @@
 package com.redfin.sitemapgenerator;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 
@@ -76,6 +77,22 @@ public class GoogleVideoSitemapGenerator extends SitemapGenerator<GoogleVideoSit
 	}
 
 	private static class Renderer extends AbstractSitemapUrlRenderer<GoogleVideoSitemapUrl> implements ISitemapUrlRenderer<GoogleVideoSitemapUrl> {
+		private static final XmlFragment VIDEO_OPEN = XmlFragment.of("    <video:video>\n");
+		private static final XmlFragment PLAYER_LOC_OPEN = XmlFragment.of("      <video:player_loc allow_embed=\"");
+		private static final XmlFragment PLAYER_LOC_ATTRIBUTE_CLOSE = XmlFragment.of("\">");
+		private static final XmlFragment PLAYER_LOC_CLOSE = XmlFragment.of("</video:player_loc>\n");
+		private static final XmlFragment VIDEO_CLOSE = XmlFragment.of("    </video:video>\n");
+		private static final XmlTag CONTENT_LOC = new XmlTag("video", "content_loc");
+		private static final XmlTag THUMBNAIL_LOC = new XmlTag("video", "thumbnail_loc");
+		private static final XmlTag TITLE = new XmlTag("video", "title");
+		private static final XmlTag DESCRIPTION = new XmlTag("video", "description");
+		private static final XmlTag RATING = new XmlTag("video", "rating");
+		private static final XmlTag VIEW_COUNT = new XmlTag("video", "view_count");
+		private static final XmlTag PUBLICATION_DATE = new XmlTag("video", "publication_date");
+		private static final XmlTag TAG = new XmlTag("video", "tag");
+		private static final XmlTag CATEGORY = new XmlTag("video", "category");
+		private static final XmlTag FAMILY_FRIENDLY = new XmlTag("video", "family_friendly");
+		private static final XmlTag DURATION = new XmlTag("video", "duration");
 
 		public Class<GoogleVideoSitemapUrl> getUrlClass() {
 			return GoogleVideoSitemapUrl.class;
@@ -85,35 +102,33 @@ public class GoogleVideoSitemapGenerator extends SitemapGenerator<GoogleVideoSit
 			return "xmlns:video=\"http://www.google.com/schemas/sitemap-video/1.1\"";
 		}
 
-		public void render(GoogleVideoSitemapUrl url, StringBuilder sb, W3CDateFormat dateFormat) {
-			StringBuilder tagSb = new StringBuilder();
-			tagSb.append("    <video:video>\n");
-			renderTag(tagSb, "video", "content_loc", url.getContentUrl());
+		void renderAdditionalData(GoogleVideoSitemapUrl url, XmlSink out, W3CDateFormat dateFormat) throws IOException {
+			out.append(VIDEO_OPEN);
+			renderTag(out, CONTENT_LOC, url.getContentUrl());
 			if (url.getPlayerUrl() != null) {
-				tagSb.append("      <video:player_loc allow_embed=\"");
-				tagSb.append(url.getAllowEmbed());
-				tagSb.append("\">");
-				tagSb.append(url.getPlayerUrl());
-				tagSb.append("</video:player_loc>\n");
+				out.append(PLAYER_LOC_OPEN);
+				out.append(String.valueOf(url.getAllowEmbed()));
+				out.append(PLAYER_LOC_ATTRIBUTE_CLOSE);
+				out.append(url.getPlayerUrl().toString());
+				out.append(PLAYER_LOC_CLOSE);
 			}
-			renderTag(tagSb, "video", "thumbnail_loc", url.getThumbnailUrl());
-			renderTag(tagSb, "video", "title", url.getTitle());
-			renderTag(tagSb, "video", "description", url.getDescription());
-			renderTag(tagSb, "video", "rating", url.getRating());
-			renderTag(tagSb, "video", "view_count", url.getViewCount());
+			renderTag(out, THUMBNAIL_LOC, url.getThumbnailUrl());
+			renderTag(out, TITLE, url.getTitle());
+			renderTag(out, DESCRIPTION, url.getDescription());
+			renderTag(out, RATING, url.getRating());
+			renderTag(out, VIEW_COUNT, url.getViewCount());
 			if (url.getPublicationDate() != null) {
-				renderTag(tagSb, "video", "publication_date", dateFormat.format(url.getPublicationDate()));
+				renderTag(out, PUBLICATION_DATE, dateFormat.format(url.getPublicationDate()));
 			}
 			if (url.getTags() != null) {
 				for (String tag : url.getTags()) {
-					renderTag(tagSb, "video", "tag", tag);
+					renderTag(out, TAG, tag);
 				}
 			}
-			renderTag(tagSb, "video", "category", url.getCategory());
-			renderTag(tagSb, "video", "family_friendly", url.getFamilyFriendly());
-			renderTag(tagSb, "video", "duration", url.getDurationInSeconds());
-			tagSb.append("    </video:video>\n");
-			super.render(url, sb, dateFormat, tagSb.toString());
+			renderTag(out, CATEGORY, url.getCategory());
+			renderTag(out, FAMILY_FRIENDLY, url.getFamilyFriendly());
+			renderTag(out, DURATION, url.getDurationInSeconds());
+			out.append(VIDEO_CLOSE);
 		}
 		
 	}
@@ -0,0 +1,51 @@
+package com.redfin.sitemapgenerator;
+
+/**
+ * Estimates how many distinct strings were added, in a fixed 16KB of memory, within about 1% (HyperLogLog, with
+ * linear counting for small sets).  Sketches built separately, e.g. one per sitemap, can be merged.
+ */
+final class HyperLogLog {
+	private static final int P = 14;
+	private static final int M = 1 << P;
+
+	private final byte[] registers = new byte[M];
+
+	void add(String value) {
+		long hash = hash(value);
+		int register = (int) (hash >>> (64 - P));
+		// the position of the first 1 bit in the remaining 50 bits, from 1 to 51
+		int rank = Long.numberOfLeadingZeros((hash << P) | (1L << (P - 1))) + 1;
+		if (rank > registers[register]) registers[register] = (byte) rank;
+	}
+
+	/** Adds all the strings that were added to the other sketch */
+	void merge(HyperLogLog other) {
+		for (int i = 0; i < M; i++) {
+			if (other.registers[i] > registers[i]) registers[i] = other.registers[i];
+		}
+	}
+
+	long estimate() {
+		double sum = 0;
+		int zeros = 0;
+		for (byte register : registers) {
+			sum += 1.0 / (1L << register);
+			if (register == 0) zeros++;
+		}
+		double alpha = 0.7213 / (1 + 1.079 / M);
+		double estimate = alpha * M * M / sum;
+		if (estimate <= 2.5 * M && zeros > 0) estimate = M * Math.log((double) M / zeros);
+		return Math.round(estimate);
+	}
+
+	/** FNV-1a over the characters, then the SplitMix64 finalizer to spread the bits */
+	static long hash(String value) {
+		long z = 0xcbf29ce484222325L;
+		for (int i = 0; i < value.length(); i++) {
+			z = (z ^ value.charAt(i)) * 0x100000001b3L;
+		}
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,10 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.IOException;
+
+/** A renderer that writes each URL straight into the output, rather than building a String per URL.
+ * {@link ISitemapUrlRenderer#render(ISitemapUrl, StringBuilder, W3CDateFormat)} is kept as an adapter on top of this. */
+interface ISitemapUrlStreamRenderer<T extends ISitemapUrl> extends ISitemapUrlRenderer<T> {
+	
+	public void render(T url, XmlSink out, W3CDateFormat dateFormat) throws IOException;
+}
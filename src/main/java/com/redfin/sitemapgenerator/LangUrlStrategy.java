@@ -0,0 +1,64 @@
+package com.redfin.sitemapgenerator;
+
+import java.net.URL;
+
+/**
+ * Works out the address of a page in another language, for the hreflang alternates of a
+ * {@link MultipleLangSitemapUrl}.  Only called for languages other than the default one; the page in the
+ * default language is the URL itself.
+ *
+ * @see MultipleLangSitemapUrl.Options#langStrategy(LangUrlStrategy)
+ */
+public interface LangUrlStrategy {
+
+	/** One domain per language: https://example.com/page becomes https://en.example.com/page */
+	LangUrlStrategy SUBDOMAIN = new LangUrlStrategy() {
+		public String getUrlByLang(URL url, String lang) {
+			String string = url.toString();
+			int host = string.indexOf("://") + 3;
+			return new StringBuilder(string.length() + lang.length() + 1)
+					.append(string, 0, host).append(lang).append('.').append(string, host, string.length())
+					.toString();
+		}
+	};
+
+	/** One directory per language: https://example.com/page becomes https://example.com/en/page */
+	LangUrlStrategy PATH_PREFIX = new LangUrlStrategy() {
+		public String getUrlByLang(URL url, String lang) {
+			String string = url.toString();
+			int path = string.indexOf('/', string.indexOf("://") + 3);
+			StringBuilder sb = new StringBuilder(string.length() + lang.length() + 2);
+			if (path < 0) {
+				return sb.append(string).append('/').append(lang).append('/').toString();
+			}
+			return sb.append(string, 0, path + 1).append(lang).append('/').append(string, path + 1, string.length())
+					.toString();
+		}
+	};
+
+	/** A "lang" query parameter: https://example.com/page becomes https://example.com/page?lang=en */
+	LangUrlStrategy QUERY_PARAMETER = queryParameter("lang");
+
+	/** Returns the address of the page in the given language
+	 *
+	 * @param url the page in the default language
+	 * @param lang the language code, e.g. "en" or "pt-BR"
+	 */
+	String getUrlByLang(URL url, String lang);
+
+	/** A query parameter with the given name: https://example.com/page?id=1 becomes
+	 * https://example.com/page?id=1&amp;name=en */
+	static LangUrlStrategy queryParameter(final String name) {
+		return new LangUrlStrategy() {
+			public String getUrlByLang(URL url, String lang) {
+				String string = url.toString();
+				int ref = string.indexOf('#');
+				if (ref < 0) ref = string.length();
+				char separator = url.getQuery() == null ? '?' : '&';
+				return new StringBuilder(string.length() + name.length() + lang.length() + 2)
+						.append(string, 0, ref).append(separator).append(name).append('=').append(lang)
+						.append(string, ref, string.length()).toString();
+			}
+		};
+	}
+}
@@ -1,6 +1,8 @@
 package com.redfin.sitemapgenerator;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.List;
@@ -116,6 +118,11 @@ public class MultipleLangSitemapGenerator
 	private static class Renderer extends AbstractSitemapUrlRenderer<MultipleLangSitemapUrl>
 			implements ISitemapUrlRenderer<MultipleLangSitemapUrl> {
 
+		private static final XmlFragment LINK_HREFLANG = XmlFragment.of(
+				"    <xhtml:link\n      rel=\"alternate\"\n      hreflang=\"", "<xhtml:link rel=\"alternate\" hreflang=\"");
+		private static final XmlFragment LINK_HREF = XmlFragment.of("\"\n      href=\"", "\" href=\"");
+		private static final XmlFragment LINK_CLOSE = XmlFragment.of("\"\n    />\n", "\"/>");
+
 		public Class<MultipleLangSitemapUrl> getUrlClass() {
 			return MultipleLangSitemapUrl.class;
 		}
@@ -124,22 +131,30 @@ public class MultipleLangSitemapGenerator
 			return "\n  xmlns:xhtml=\"http://www.w3.org/1999/xhtml\"";
 		}
 
-		public void render(MultipleLangSitemapUrl url, StringBuilder sb, W3CDateFormat dateFormat) {
+		/*
+		 * Every language of a page gets its own <url>, and each of them lists the same alternates, so the
+		 * alternate URLs and the <xhtml:link> block are worked out once, the block encoded to UTF-8 like the
+		 * XmlFragments, and then copied into each entry
+		 */
+		public void render(MultipleLangSitemapUrl url, XmlSink out, W3CDateFormat dateFormat) throws IOException {
 
 			List<String> langs = url.getLangs();
+			String[] alternates = new String[langs.size()];
+			int size = Math.max(alternates.length, 1) * 128;
+			ByteArrayOutputStream links = new ByteArrayOutputStream(size);
+			XmlSink linkOut = new Utf8XmlSink(links, out.compact, size);
+			for (int i = 0; i < alternates.length; i++) {
+				String lang = langs.get(i);
+				alternates[i] = url.getUrlByLang(lang);
+				addAlternate(linkOut, lang, alternates[i]);
+			}
+			linkOut.flush();
+			byte[] linkBlock = links.toByteArray();
 
-			URL originalUrl = url.getUrl();
-
-			for (String langForUrl : langs) {
-				//new config for each URL
-				url = newUrl(url, originalUrl, langForUrl);
-				
-				StringBuilder tagSb = new StringBuilder();
-
-				for (String langForTag : langs) {
-					addAlternate(tagSb, langForTag, getUrlByLang(originalUrl, langForTag, url.getDefaultLang()));
-				}
-				super.render(url, sb, dateFormat, tagSb.toString());
+			for (String alternate : alternates) {
+				openUrl(alternate, url, out, dateFormat);
+				out.appendUtf8(linkBlock);
+				closeUrl(out);
 			}
 		}
 
@@ -147,19 +162,21 @@ public class MultipleLangSitemapGenerator
 		 * Add lang tags
 		 */
 
-		private void addAlternate(StringBuilder tagSb, String lang, String url) {
-			tagSb.append("    <xhtml:link\n");
-			tagSb.append("      rel=\"alternate\"\n");
-			tagSb.append("      hreflang=\"" + lang + "\"\n");
-			tagSb.append("      href=\"" + url + "\"\n");
-			tagSb.append("    />\n");
+		private void addAlternate(XmlSink out, String lang, String url) throws IOException {
+			out.append(LINK_HREFLANG).text(lang);
+			out.append(LINK_HREF).text(url);
+			out.append(LINK_CLOSE);
 		}
 
 	}
 	
-	/*
+	/**
 	 * Copy config for add new url tag with other language
-	 * */
+	 * 
+	 * @deprecated the renderer no longer builds a url per language; use
+	 *             {@link MultipleLangSitemapUrl#getUrlByLang(String)}
+	 */
+	@Deprecated
 	public static MultipleLangSitemapUrl newUrl(MultipleLangSitemapUrl url, URL originalUrl, String lang) {
 		
 		try {
@@ -175,17 +192,19 @@ public class MultipleLangSitemapGenerator
 		return url;
 	}
 	
-	/*
-	 * Create url depend on lang and defaultLang 
+	/**
+	 * Create url depend on lang and defaultLang, with one subdomain per language
+	 * 
+	 * @deprecated use {@link MultipleLangSitemapUrl#getUrlByLang(String)}, which honours the url's
+	 *             {@link LangUrlStrategy}
 	 */
-
+	@Deprecated
 	public static String getUrlByLang(URL url, String lang, String defaultLang) {
 
 		if (lang.equals(defaultLang)) {
 			return url.toString();
 		}
 
-		// TODO: support others language url format. This case is a different language per domain
-		return url.toString().replaceAll("//", "//" + lang + ".");
+		return LangUrlStrategy.SUBDOMAIN.getUrlByLang(url, lang);
 	}
 }
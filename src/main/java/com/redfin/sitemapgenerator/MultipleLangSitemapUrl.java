@@ -18,6 +18,8 @@ public class MultipleLangSitemapUrl extends WebSitemapUrl {
 	// Default lang
 	private String defaultLang;
 	
+	private LangUrlStrategy langStrategy;
+	
 	/** Options to configure langs URLs */
 	public static class Options extends AbstractSitemapUrlOptions<MultipleLangSitemapUrl, Options> {
 		
@@ -25,6 +27,8 @@ public class MultipleLangSitemapUrl extends WebSitemapUrl {
 		
 		private String defaultLang;
 		
+		private LangUrlStrategy langStrategy = LangUrlStrategy.SUBDOMAIN;
+		
 		public Options(String url, List<String> langs, String defaultLang) throws MalformedURLException {
 			super(new URL(url), MultipleLangSitemapUrl.class);
 			this.langs = langs;
@@ -40,6 +44,12 @@ public class MultipleLangSitemapUrl extends WebSitemapUrl {
 			this.defaultLang = defaultLang;
 			return this;
 		}
+		
+		/** How the URL of each language is derived from this one; {@link LangUrlStrategy#SUBDOMAIN} by default */
+		public Options langStrategy(LangUrlStrategy langStrategy) {
+			this.langStrategy = langStrategy;
+			return this;
+		}
 	}
 
 	/** Specifies a landing page URL, together with an image url 
@@ -57,6 +67,7 @@ public class MultipleLangSitemapUrl extends WebSitemapUrl {
 		super(options);
 		langs = options.langs;
 		defaultLang = options.defaultLang;
+		langStrategy = options.langStrategy;
 	}
 	
 	
@@ -68,4 +79,17 @@ public class MultipleLangSitemapUrl extends WebSitemapUrl {
 	public String getDefaultLang() {
 		return defaultLang;
 	}
+	
+	/** Retrieves the {@link Options#langStrategy(LangUrlStrategy)} */
+	public LangUrlStrategy getLangStrategy() {
+		return langStrategy;
+	}
+	
+	/** Retrieves the URL of this page in the given language */
+	public String getUrlByLang(String lang) {
+		if (lang.equals(defaultLang)) {
+			return getUrl().toString();
+		}
+		return langStrategy.getUrlByLang(getUrl(), lang);
+	}
 }
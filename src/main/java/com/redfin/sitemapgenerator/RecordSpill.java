@@ -0,0 +1,251 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads sitemaps in parallel and spills their URLs into temporary files, partitioned by a hash of their location,
+ * so that every occurrence of a location ends up in the same partition; the partitions can then be read back one
+ * at a time, bounding the memory it takes to process any number of URLs.  Two spills with the same number of
+ * partitions put each location in the same partition, so they can be joined partition by partition.
+ */
+final class RecordSpill implements Closeable {
+	static final Comparator<SitemapUrlRecord> BY_LOC = new Comparator<SitemapUrlRecord>() {
+		public int compare(SitemapUrlRecord a, SitemapUrlRecord b) {
+			return a.getLoc().compareTo(b.getLoc());
+		}
+	};
+
+	private final Partition[] partitions;
+
+	/** Creates the (empty) partition files in the temporary directory, or the system's one if it's null */
+	RecordSpill(String prefix, int partitions, File tempDir) throws IOException {
+		this.partitions = new Partition[partitions];
+		try {
+			for (int i = 0; i < partitions; i++) {
+				this.partitions[i] = new Partition(File.createTempFile(prefix, ".tmp", tempDir));
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/** Lists the sitemaps of some directories (*.xml and *.xml.gz, except sitemap indexes), sitemap indexes
+	 * (expanded as {@link #expandIndexes(Iterable)} does) and sitemap files */
+	static List<File> sitemaps(Iterable<File> inputs) throws IOException {
+		List<File> files = new ArrayList<File>();
+		for (File input : inputs) {
+			if (!input.isDirectory()) {
+				files.add(input);
+				continue;
+			}
+			File[] children = input.listFiles();
+			if (children == null) throw new IOException("Can't list " + input);
+			Arrays.sort(children);
+			for (File child : children) {
+				String name = child.getName();
+				if (!child.isFile() || !(name.endsWith(".xml") || name.endsWith(".xml.gz"))) continue;
+				SitemapReader reader = SitemapReader.open(child);
+				try {
+					if (!reader.isSitemapIndex()) files.add(child);
+				} finally {
+					reader.close();
+				}
+			}
+		}
+		return expandIndexes(files);
+	}
+
+	/** Replaces every sitemap index by the sitemaps it lists, which are looked up next to the index file, by the
+	 * last segment of their URL */
+	static List<File> expandIndexes(Iterable<File> files) throws IOException {
+		List<File> sitemaps = new ArrayList<File>();
+		for (File file : files) {
+			SitemapReader reader = SitemapReader.open(file);
+			try {
+				if (!reader.isSitemapIndex()) {
+					sitemaps.add(file);
+					continue;
+				}
+				for (SitemapIndexUrl sitemap = reader.nextSitemap(); sitemap != null; sitemap = reader.nextSitemap()) {
+					String path = sitemap.getUrl().getPath();
+					sitemaps.add(new File(file.getParentFile(), path.substring(path.lastIndexOf('/') + 1)));
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		return sitemaps;
+	}
+
+	int partitions() {
+		return partitions.length;
+	}
+
+	/** Reads one sitemap, on one of the threads of {@link RecordSpill#readAll} */
+	interface SitemapTask<T> {
+		/** @param dateFormat a clone of the shared one, for this thread alone */
+		T read(File sitemap, W3CDateFormat dateFormat) throws IOException;
+	}
+
+	/**
+	 * Runs a task for every sitemap on a pool of threads
+	 *
+	 * @return the result of each task, in the order of the sitemaps
+	 * @throws IOException the first failure, in the order of the sitemaps; the other tasks are then cancelled
+	 */
+	static <T> List<T> readAll(List<File> sitemaps, int threads, final W3CDateFormat dateFormat, final SitemapTask<T> task) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, sitemaps.size())));
+		try {
+			List<Future<T>> futures = new ArrayList<Future<T>>();
+			for (final File sitemap : sitemaps) {
+				futures.add(executor.submit(new Callable<T>() {
+					public T call() throws IOException {
+						return task.read(sitemap, (W3CDateFormat) dateFormat.clone());
+					}
+				}));
+			}
+			List<T> results = new ArrayList<T>(futures.size());
+			for (Future<T> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while reading sitemaps", e);
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+					throw new RuntimeException(e.getCause());
+				}
+			}
+			return results;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/** Reads every sitemap on a pool of threads, spilling its URLs into the partitions; call this once */
+	void spill(List<File> sitemaps, int threads, W3CDateFormat dateFormat) throws IOException {
+		readAll(sitemaps, threads, dateFormat, new SitemapTask<Void>() {
+			public Void read(File sitemap, W3CDateFormat dateFormat) throws IOException {
+				RecordSpill.this.read(sitemap, dateFormat);
+				return null;
+			}
+		});
+		for (Partition partition : partitions) {
+			partition.finishWriting();
+		}
+	}
+
+	private void read(File sitemap, W3CDateFormat dateFormat) throws IOException {
+		// each reader buffers its records per partition, so the partitions are locked once per batch, not per URL
+		ByteArrayOutputStream[] buffers = new ByteArrayOutputStream[partitions.length];
+		DataOutputStream[] outs = new DataOutputStream[partitions.length];
+		for (int i = 0; i < partitions.length; i++) {
+			buffers[i] = new ByteArrayOutputStream(8192);
+			outs[i] = new DataOutputStream(buffers[i]);
+		}
+		SitemapReader reader = new SitemapReader(new FileInputStream(sitemap), dateFormat, sitemap.toURI().toString());
+		try {
+			if (reader.isSitemapIndex()) throw new IOException("Nested sitemap index " + sitemap);
+			for (SitemapUrlRecord record = reader.nextRecord(); record != null; record = reader.nextRecord()) {
+				int partition = partition(record.getLoc(), partitions.length);
+				record.writeTo(outs[partition]);
+				if (buffers[partition].size() >= 8192) partitions[partition].write(buffers[partition]);
+			}
+		} finally {
+			reader.close();
+		}
+		for (int i = 0; i < partitions.length; i++) {
+			partitions[i].write(buffers[i]);
+		}
+	}
+
+	private static int partition(String loc, int partitions) {
+		int hash = loc.hashCode();
+		hash ^= hash >>> 16;
+		return (hash & 0x7fffffff) % partitions;
+	}
+
+	/** Reads a partition back, keeping the latest record for each location, sorted by location */
+	List<SitemapUrlRecord> deduplicate(int partition) throws IOException {
+		Map<String, SitemapUrlRecord> latest = new HashMap<String, SitemapUrlRecord>();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(partitions[partition].file), 65536));
+		try {
+			while (true) {
+				SitemapUrlRecord record;
+				try {
+					record = SitemapUrlRecord.readFrom(in);
+				} catch (EOFException e) {
+					break;
+				}
+				SitemapUrlRecord previous = latest.put(record.getLoc(), record);
+				if (previous != null && previous.supersedes(record)) latest.put(previous.getLoc(), previous);
+			}
+		} finally {
+			in.close();
+		}
+		List<SitemapUrlRecord> records = new ArrayList<SitemapUrlRecord>(latest.values());
+		Collections.sort(records, BY_LOC);
+		return records;
+	}
+
+	/** Deletes the partition files */
+	public void close() {
+		for (Partition partition : partitions) {
+			if (partition != null) partition.delete();
+		}
+	}
+
+	/** One spill file */
+	private static class Partition {
+		private final File file;
+		private OutputStream out;
+
+		Partition(File file) throws IOException {
+			this.file = file;
+			out = new BufferedOutputStream(new FileOutputStream(file), 65536);
+		}
+
+		synchronized void write(ByteArrayOutputStream buffer) throws IOException {
+			if (buffer.size() == 0) return;
+			buffer.writeTo(out);
+			buffer.reset();
+		}
+
+		void finishWriting() throws IOException {
+			out.close();
+		}
+
+		void delete() {
+			try {
+				out.close();
+			} catch (IOException e) {
+				// we're only cleaning up
+			}
+			file.delete();
+		}
+	}
+}
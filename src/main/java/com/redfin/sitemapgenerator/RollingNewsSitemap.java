@@ -0,0 +1,229 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Google News sitemap that lives as long as the application, holding a window of the latest articles in memory:
+ * add articles as they're published, and the ones older than the window (two days by default), or beyond the
+ * URL limit, are evicted.  The sitemap is rendered straight from the window, and only again once the window
+ * changed, so it can be written every minute without going back to the database.
+ *
+ * <pre>
+ * RollingNewsSitemap news = new RollingNewsSitemap.Options(
+ *     GoogleNewsSitemapGenerator.builder("http://www.example.com", null).build()).build();
+ * news.addAll(articlesOfTheLastTwoDays());
+ * ...
+ * news.add(new GoogleNewsSitemapUrl(url, publicationDate)); // as articles are published
+ * news.writeTo(new File(dir, "news-sitemap.xml")); // e.g. every minute; does nothing if nothing changed
+ * </pre>
+ */
+public class RollingNewsSitemap {
+	/** Newest first */
+	private static final Comparator<GoogleNewsSitemapUrl> NEWEST_FIRST = new Comparator<GoogleNewsSitemapUrl>() {
+		public int compare(GoogleNewsSitemapUrl a, GoogleNewsSitemapUrl b) {
+			int c = b.getPublicationDate().compareTo(a.getPublicationDate());
+			return c != 0 ? c : a.getUrl().toString().compareTo(b.getUrl().toString());
+		}
+	};
+
+	private final GoogleNewsSitemapGenerator generator;
+	private final long windowMillis;
+	private final int maxUrls;
+	private final TreeSet<GoogleNewsSitemapUrl> window = new TreeSet<GoogleNewsSitemapUrl>(NEWEST_FIRST);
+	private final Map<String, GoogleNewsSitemapUrl> byUrl = new HashMap<String, GoogleNewsSitemapUrl>();
+	private long version;
+	private long renderedVersion = -1;
+	private long writtenVersion = -1;
+	private byte[] rendered;
+	private long renders;
+
+	/** Options to configure a rolling sitemap */
+	public static class Options {
+		private final GoogleNewsSitemapGenerator generator;
+		private long windowMillis = TimeUnit.DAYS.toMillis(2);
+		private int maxUrls;
+
+		/** @param generator renders the sitemap; its base directory isn't used */
+		public Options(GoogleNewsSitemapGenerator generator) {
+			this.generator = generator;
+			maxUrls = generator.getMaxUrls();
+		}
+
+		/** How old an article may be before it's evicted; the default is two days, as Google News wants */
+		public Options window(long duration, TimeUnit unit) {
+			if (duration <= 0) throw new IllegalArgumentException("The window must be positive: " + duration);
+			windowMillis = unit.toMillis(duration);
+			return this;
+		}
+
+		/** How many of the newest articles to keep; by default, the maxUrls of the generator, usually 1000 */
+		public Options maxUrls(int maxUrls) {
+			if (maxUrls < 1 || maxUrls > generator.getMaxUrls()) {
+				throw new IllegalArgumentException("maxUrls must be from 1 to the maxUrls of the generator, " + generator.getMaxUrls() + ": " + maxUrls);
+			}
+			this.maxUrls = maxUrls;
+			return this;
+		}
+
+		/** Constructs a rolling sitemap configured with the options you specified */
+		public RollingNewsSitemap build() {
+			return new RollingNewsSitemap(this);
+		}
+	}
+
+	RollingNewsSitemap(Options options) {
+		generator = options.generator;
+		windowMillis = options.windowMillis;
+		maxUrls = options.maxUrls;
+	}
+
+	/**
+	 * Adds an article, or replaces the one with the same URL
+	 *
+	 * @return whether the article is in the window; one that's already too old, or older than every article of a
+	 * full window, isn't
+	 */
+	public synchronized boolean add(GoogleNewsSitemapUrl url) {
+		generator.checkUrl(url);
+		long now = currentTimeMillis();
+		int changes = evict(now);
+		String key = url.getUrl().toString();
+		GoogleNewsSitemapUrl old = byUrl.get(key);
+		boolean in = true;
+		if (old == null || !old.getPublicationDate().equals(url.getPublicationDate()) || !same(old, url)) {
+			if (old != null) {
+				window.remove(old);
+				byUrl.remove(key);
+				changes++;
+			}
+			in = url.getPublicationDate().getTime() >= now - windowMillis
+					&& (window.size() < maxUrls || NEWEST_FIRST.compare(url, window.last()) < 0);
+			if (in) {
+				window.add(url);
+				byUrl.put(key, url);
+				evict(now);
+				changes++;
+			}
+		}
+		if (changes > 0) version++;
+		return in;
+	}
+
+	/** Adds articles, e.g. the latest ones from the database when the application starts */
+	public synchronized void addAll(Iterable<? extends GoogleNewsSitemapUrl> urls) {
+		for (GoogleNewsSitemapUrl url : urls) add(url);
+	}
+
+	/** Removes an article, e.g. because it was unpublished; returns whether it was there */
+	public synchronized boolean remove(URL url) {
+		GoogleNewsSitemapUrl old = byUrl.remove(url.toString());
+		if (old == null) return false;
+		window.remove(old);
+		version++;
+		return true;
+	}
+
+	/** How many articles are in the window, after evicting the old ones */
+	public synchronized int size() {
+		if (evict(currentTimeMillis()) > 0) version++;
+		return window.size();
+	}
+
+	/** The articles in the window, newest first, after evicting the old ones */
+	public synchronized List<GoogleNewsSitemapUrl> getUrls() {
+		if (evict(currentTimeMillis()) > 0) version++;
+		return new ArrayList<GoogleNewsSitemapUrl>(window);
+	}
+
+	/**
+	 * The sitemap of the articles in the window, newest first, gzipped if the generator gzips; it's only rendered
+	 * again if the window changed.  Don't modify the array.
+	 */
+	public synchronized byte[] getSitemap() {
+		if (evict(currentTimeMillis()) > 0) version++;
+		if (renderedVersion != version) {
+			final List<GoogleNewsSitemapUrl> urls = new ArrayList<GoogleNewsSitemapUrl>(window);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try {
+				generator.writeSitemap(new SitemapSource<GoogleNewsSitemapUrl>() {
+					public long count() {
+						return urls.size();
+					}
+
+					public Iterable<GoogleNewsSitemapUrl> page(long offset, int limit) {
+						return urls;
+					}
+				}, 1, out);
+			} catch (IOException e) {
+				throw new RuntimeException("BUG", e);
+			}
+			rendered = out.toByteArray();
+			renderedVersion = version;
+			renders++;
+		}
+		return rendered;
+	}
+
+	/** Writes the sitemap */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(getSitemap());
+	}
+
+	/**
+	 * Writes the sitemap to a file, replacing it atomically, unless the window didn't change since the last time
+	 *
+	 * @return whether the file was written
+	 */
+	public synchronized boolean writeTo(File file) throws IOException {
+		byte[] sitemap = getSitemap();
+		if (writtenVersion == renderedVersion && file.isFile()) return false;
+		File tmp = new File(file.getPath() + ".tmp");
+		Files.write(tmp.toPath(), sitemap);
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		writtenVersion = renderedVersion;
+		return true;
+	}
+
+	/** How many times the sitemap was rendered */
+	public synchronized long getRenders() {
+		return renders;
+	}
+
+	/** Evicts the articles that are too old, or too many; returns how many */
+	private int evict(long now) {
+		long cutoff = now - windowMillis;
+		int evicted = 0;
+		while (!window.isEmpty() && (window.size() > maxUrls || window.last().getPublicationDate().getTime() < cutoff)) {
+			byUrl.remove(window.pollLast().getUrl().toString());
+			evicted++;
+		}
+		return evicted;
+	}
+
+	/** Whether a replacement would render the same */
+	private static boolean same(GoogleNewsSitemapUrl a, GoogleNewsSitemapUrl b) {
+		return eq(a.getKeywords(), b.getKeywords()) && eq(a.getLastMod(), b.getLastMod()) && eq(a.getChangeFreq(), b.getChangeFreq())
+				&& eq(a.getPriority(), b.getPriority());
+	}
+
+	private static boolean eq(Object a, Object b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	long currentTimeMillis() {
+		return System.currentTimeMillis();
+	}
+}
@@ -0,0 +1,19 @@
+package com.redfin.sitemapgenerator;
+
+/**
+ * Routes each URL to a named group of sitemaps, e.g. by path, so the groups are written to separate files (with
+ * their own numbering and rollover) that are all listed in one sitemap index: see
+ * {@link AbstractSitemapGeneratorOptions#partitioner(ShardPartitioner)}.  A group whose URLs didn't change
+ * gets exactly the same files from one run to the next, so, especially with content-addressed names, only the
+ * groups that change need uploading and recrawling.  {@link ShardPartitioners} has some common partitioners.
+ *
+ * @param <U> the type of URL
+ */
+public interface ShardPartitioner<U extends ISitemapUrl> {
+	/**
+	 * The group of a URL, which becomes part of the file names, e.g. "homes" gives "sitemap-homes.xml", or
+	 * "sitemap-homes-1.xml", "sitemap-homes-2.xml" and so on; it may only have letters, digits and underscores.
+	 * The same URL must always go to the same group.
+	 */
+	String getShard(U url);
+}
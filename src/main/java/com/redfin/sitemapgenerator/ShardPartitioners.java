@@ -0,0 +1,86 @@
+package com.redfin.sitemapgenerator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/** Common {@link ShardPartitioner}s */
+public final class ShardPartitioners {
+	private static final Pattern SHARD = Pattern.compile("[A-Za-z0-9_]+");
+
+	private ShardPartitioners() {}
+
+	/**
+	 * Groups URLs by the longest of the path prefixes that they start with; "/homes/" and "/for-sale/" give the
+	 * groups "homes" and "for_sale", i.e. the prefix without its slashes, and with any other character that
+	 * can't be in a group name replaced by an underscore.
+	 *
+	 * @param otherShard the group of the URLs that don't start with any of the prefixes
+	 * @param prefixes the path prefixes, e.g. "/homes/"
+	 */
+	public static ShardPartitioner<ISitemapUrl> byPathPrefix(String otherShard, String... prefixes) {
+		checkShard(otherShard);
+		final String other = otherShard;
+		final List<String> sorted = new ArrayList<String>();
+		Collections.addAll(sorted, prefixes);
+		// longest first, so the first match is the longest
+		Collections.sort(sorted, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return b.length() - a.length();
+			}
+		});
+		final List<String> shards = new ArrayList<String>();
+		for (String prefix : sorted) {
+			if (!prefix.startsWith("/")) throw new IllegalArgumentException("Path prefixes start with a slash: " + prefix);
+			String shard = prefix.replaceAll("^/+|/+$", "").replaceAll("[^A-Za-z0-9_]", "_");
+			checkShard(shard);
+			shards.add(shard);
+		}
+		return new ShardPartitioner<ISitemapUrl>() {
+			public String getShard(ISitemapUrl url) {
+				String path = url.getUrl().getPath();
+				for (int i = 0; i < sorted.size(); i++) {
+					if (path.startsWith(sorted.get(i))) return shards.get(i);
+				}
+				return other;
+			}
+		};
+	}
+
+	/**
+	 * Spreads URLs evenly over a fixed number of groups, "h0" to "h<i>n-1</i>", by a hash of the URL; the hash is
+	 * the same on any JVM, so a URL stays in its group as long as the number of groups doesn't change.
+	 */
+	public static ShardPartitioner<ISitemapUrl> byHash(final int shards) {
+		if (shards < 1) throw new IllegalArgumentException("There must be at least one shard: " + shards);
+		return new ShardPartitioner<ISitemapUrl>() {
+			public String getShard(ISitemapUrl url) {
+				// the same 64-bit hash that counts distinct URLs, so similar URLs don't land in similar groups
+				long h = HyperLogLog.hash(url.getUrl().toString());
+				return "h" + (int) ((h >>> 1) % shards);
+			}
+		};
+	}
+
+	/**
+	 * Groups URLs by their change frequency, e.g. "daily"; URLs without one, or that aren't {@link WebSitemapUrl}s,
+	 * go to the group "none".  Frequently changing groups can then be regenerated more often than the rest.
+	 */
+	public static ShardPartitioner<ISitemapUrl> byChangeFreq() {
+		return new ShardPartitioner<ISitemapUrl>() {
+			public String getShard(ISitemapUrl url) {
+				ChangeFreq changeFreq = url instanceof WebSitemapUrl ? ((WebSitemapUrl) url).getChangeFreq() : null;
+				return changeFreq == null ? "none" : changeFreq.toString();
+			}
+		};
+	}
+
+	static String checkShard(String shard) {
+		if (shard == null || !SHARD.matcher(shard).matches()) {
+			throw new IllegalArgumentException("Shard names may only have letters, digits and underscores: " + shard);
+		}
+		return shard;
+	}
+}
@@ -0,0 +1,197 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Scans a set of sitemaps and summarizes each of them, to spot bloated or stale sitemaps: see
+ * {@link SitemapStatistics}.  The sitemaps are streamed on a pool of threads, one summary per sitemap, and the
+ * summaries are merged into a total; nothing is held in memory but the summaries, so any number of URLs can be
+ * analyzed.  Duplicates, including the ones across sitemaps, are estimated from an approximate distinct count.
+ *
+ * <pre>
+ * SitemapAnalyzer.Report report = new SitemapAnalyzer.Options().baseUrl("http://www.example.com").build()
+ *     .analyze(new File("sitemaps/sitemap_index.xml"));
+ * report.writeTo(writer);
+ * </pre>
+ */
+public class SitemapAnalyzer {
+	private final int threads;
+	private final URL baseUrl;
+	private final W3CDateFormat dateFormat;
+
+	/** Options to configure an analyzer */
+	public static class Options extends AbstractSitemapReadingOptions<Options> {
+		private URL baseUrl;
+
+		/** Counts the URLs that aren't on the host of this URL as host violations; by default, none are counted */
+		public Options baseUrl(URL baseUrl) {
+			this.baseUrl = baseUrl;
+			return this;
+		}
+
+		/** Counts the URLs that aren't on the host of this URL as host violations; by default, none are counted */
+		public Options baseUrl(String baseUrl) throws MalformedURLException {
+			return baseUrl(new URL(baseUrl));
+		}
+
+		/** Constructs an analyzer configured with the options you specified */
+		public SitemapAnalyzer build() {
+			return new SitemapAnalyzer(this);
+		}
+	}
+
+	/** The summary of each sitemap, and their total */
+	public static final class Report {
+		private final List<SitemapStatistics> sitemaps;
+		private final SitemapStatistics total;
+
+		Report(List<SitemapStatistics> sitemaps, SitemapStatistics total) {
+			this.sitemaps = Collections.unmodifiableList(sitemaps);
+			this.total = total;
+		}
+
+		/** The summary of each sitemap, in the order they were listed */
+		public List<SitemapStatistics> getSitemaps() { return sitemaps; }
+		/** All the summaries merged together */
+		public SitemapStatistics getTotal() { return total; }
+
+		/** Writes one line per sitemap, then the total and its distributions; the writer is not closed */
+		public void writeTo(Writer out) throws IOException {
+			for (SitemapStatistics sitemap : sitemaps) {
+				out.write(sitemap + "\n");
+			}
+			out.write(total + " duplicates~" + total.getDuplicateUrls() + "\n");
+			out.write("lastmod");
+			for (Map.Entry<String, Long> entry : total.getLastModMonths().entrySet()) {
+				out.write(" " + entry.getKey() + "=" + entry.getValue());
+			}
+			out.write(" none=" + total.getNoLastMod() + "\nchangefreq");
+			for (Map.Entry<ChangeFreq, Long> entry : total.getChangeFreqs().entrySet()) {
+				out.write(" " + entry.getKey() + "=" + entry.getValue());
+			}
+			out.write(" none=" + total.getNoChangeFreq() + "\npriority");
+			for (Map.Entry<Double, Long> entry : total.getPriorities().entrySet()) {
+				out.write(" " + entry.getKey() + "=" + entry.getValue());
+			}
+			out.write(" none=" + total.getNoPriority() + "\n");
+		}
+	}
+
+	/** Configures an analyzer with the default options */
+	public SitemapAnalyzer() {
+		this(new Options());
+	}
+
+	SitemapAnalyzer(Options options) {
+		threads = options.threads;
+		baseUrl = options.baseUrl;
+		dateFormat = options.dateFormat;
+	}
+
+	/**
+	 * Summarizes sitemaps.  Each input is either a directory, whose sitemaps (*.xml and *.xml.gz, except sitemap
+	 * indexes) are all read, or a sitemap or a sitemap index file; the sitemaps of an index are looked up next to
+	 * the index file, by the last segment of their URL.
+	 *
+	 * @throws IOException if an input file can't be read, or isn't a sitemap
+	 */
+	public Report analyze(File... inputs) throws IOException {
+		return analyze(Arrays.asList(inputs));
+	}
+
+	/** Summarizes sitemaps
+	 * @see #analyze(File...) */
+	public Report analyze(Iterable<File> inputs) throws IOException {
+		List<SitemapStatistics> statistics = RecordSpill.readAll(RecordSpill.sitemaps(inputs), threads, dateFormat,
+				new RecordSpill.SitemapTask<SitemapStatistics>() {
+					public SitemapStatistics read(File sitemap, W3CDateFormat dateFormat) throws IOException {
+						return analyze(sitemap, dateFormat);
+					}
+				});
+		SitemapStatistics total = new SitemapStatistics(null);
+		for (SitemapStatistics sitemap : statistics) {
+			total.merge(sitemap);
+		}
+		return new Report(statistics, total);
+	}
+
+	private SitemapStatistics analyze(File sitemap, W3CDateFormat dateFormat) throws IOException {
+		SitemapStatistics statistics = new SitemapStatistics(sitemap.getName());
+		// unzip here rather than in the reader, to count the uncompressed bytes
+		BufferedInputStream buffered = new BufferedInputStream(new FileInputStream(sitemap), 65536);
+		CountingInputStream counting;
+		try {
+			buffered.mark(2);
+			int magic = buffered.read() | (buffered.read() << 8);
+			buffered.reset();
+			counting = new CountingInputStream(magic == GZIPInputStream.GZIP_MAGIC ? new GZIPInputStream(buffered, 65536) : buffered);
+		} catch (IOException e) {
+			buffered.close();
+			throw e;
+		}
+		SitemapReader reader = new SitemapReader(counting, dateFormat, sitemap.toURI().toString());
+		try {
+			if (reader.isSitemapIndex()) throw new IOException("Nested sitemap index " + sitemap);
+			for (SitemapUrlRecord record = reader.nextRecord(); record != null; record = reader.nextRecord()) {
+				statistics.add(record, baseUrl != null && isHostViolation(record.getLoc()));
+			}
+			// the parser may stop before the trailing whitespace
+			byte[] skip = new byte[8192];
+			while (counting.read(skip, 0, skip.length) >= 0) continue;
+		} finally {
+			reader.close();
+		}
+		statistics.addBytes(counting.count, sitemap.length());
+		return statistics;
+	}
+
+	private boolean isHostViolation(String loc) {
+		try {
+			return !baseUrl.getHost().equalsIgnoreCase(new URL(loc).getHost());
+		} catch (MalformedURLException e) {
+			return true;
+		}
+	}
+
+	private static class CountingInputStream extends FilterInputStream {
+		long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) count++;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) count += read;
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+}
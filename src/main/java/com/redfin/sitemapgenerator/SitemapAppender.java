@@ -0,0 +1,255 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Where a generator in append mode adds its URLs: to the last numbered sitemap in the base directory if it has
+ * room, or else to new sitemaps after it.  The sitemaps are scanned once, when the generator is built; the URLs
+ * are appended in place of the closing tag (or the gzip member with it), without rewriting the sitemap.
+ *
+ * @see AbstractSitemapGeneratorOptions#append(boolean)
+ */
+final class SitemapAppender {
+	private final File baseDir;
+	private final String fileNamePrefix;
+	private final String fileNameSuffix;
+	private final boolean gzip;
+	/** the sitemap the URLs are appended to, while they can still be */
+	private File target;
+	/** how many more URLs the target can take */
+	private int room;
+	/** how many URLs the target has */
+	private int urls;
+	/** the size of the target's XML */
+	private long bytes;
+	/** the latest lastmod of the target's URLs, or null */
+	private Date maxLastMod;
+	/** the unnumbered sitemap of an earlier run that becomes the first numbered one */
+	private String renamedSitemap;
+	/** that unnumbered sitemap, until it's copied to the first numbered one */
+	private File single;
+	/** the number of the last sitemap that exists */
+	private int lastSitemap;
+
+	/**
+	 * Scans the sitemaps in the base directory; a single unnumbered sitemap, as written by a run that wasn't in
+	 * append mode, is taken to be the first numbered one, but it's only copied there by {@link #adoptSingle()}
+	 *
+	 * @param timeZone of the lastmods that don't specify one
+	 */
+	SitemapAppender(File baseDir, String fileNamePrefix, String fileNameSuffix, boolean gzip, int maxUrls, TimeZone timeZone) {
+		this.baseDir = baseDir;
+		this.fileNamePrefix = fileNamePrefix;
+		this.fileNameSuffix = fileNameSuffix;
+		this.gzip = gzip;
+		Pattern pattern = Pattern.compile(Pattern.quote(fileNamePrefix) + "([1-9]\\d{0,8})" + Pattern.quote(fileNameSuffix));
+		String[] names = baseDir.list();
+		if (names != null) {
+			for (String name : names) {
+				Matcher matcher = pattern.matcher(name);
+				if (matcher.matches()) lastSitemap = Math.max(lastSitemap, Integer.parseInt(matcher.group(1)));
+			}
+		}
+		File single = new File(baseDir, fileNamePrefix + fileNameSuffix);
+		if (lastSitemap == 0 && single.isFile()) {
+			this.single = single;
+			renamedSitemap = single.getName();
+			lastSitemap = 1;
+		}
+		if (lastSitemap == 0) return;
+		File last = this.single != null ? single : getFile(lastSitemap);
+		try {
+			if (!endsWith(last, gzip ? AppendableGzipOutputStream.CLOSING_MEMBER : AppendableGzipOutputStream.CLOSING_TAG)) return;
+			InputStream in = new FileInputStream(last);
+			try {
+				if (gzip) in = new GZIPInputStream(in);
+				long[] counts = scan(in, timeZone);
+				if (counts[0] < maxUrls && counts[1] < SitemapValidator.MAX_SITEMAP_BYTES) {
+					target = getFile(lastSitemap);
+					room = (int) (maxUrls - counts[0]);
+					urls = (int) counts[0];
+					bytes = counts[1];
+					maxLastMod = counts[2] == Long.MIN_VALUE ? null : new Date(counts[2]);
+				}
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Problem reading sitemap file " + last, e);
+		}
+	}
+
+	/**
+	 * Copies the unnumbered sitemap of an earlier run, if there's one, to the first numbered one; call this when the
+	 * sitemaps are written.  The unnumbered one is left in place, as robots.txt or the index being served may still
+	 * point at it.
+	 */
+	void adoptSingle() {
+		if (single == null) return;
+		File first = getFile(1);
+		File tmp = new File(baseDir, first.getName() + ".tmp");
+		try {
+			Files.copy(single.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tmp.toPath(), first.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			throw new RuntimeException("Problem copying sitemap file " + single + " to " + first, e);
+		}
+		single = null;
+	}
+
+	private File getFile(int sitemap) {
+		return new File(baseDir, fileNamePrefix + sitemap + fileNameSuffix);
+	}
+
+	/** Whether there's a sitemap to append to */
+	boolean hasTarget() {
+		return target != null;
+	}
+
+	/** How many more URLs the sitemap to append to can take */
+	int getRoom() {
+		return room;
+	}
+
+	/** The number of the sitemap the next URLs go in: the one to append to, or the one after the last */
+	int getNextSitemap() {
+		return target != null ? lastSitemap : lastSitemap + 1;
+	}
+
+	/** The number of the last sitemap that exists, or 0 if there's none */
+	int getLastSitemap() {
+		return lastSitemap;
+	}
+
+	/** Records that a new sitemap was written */
+	void wrote(int sitemap) {
+		lastSitemap = sitemap;
+	}
+
+	/** The name a sitemap of an earlier run has now */
+	String getCurrentName(String fileName) {
+		return fileName.equals(renamedSitemap) ? getFile(1).getName() : fileName;
+	}
+
+	/** Where the appended entries start in the uncompressed XML: where the closing tag was */
+	long getEntriesOffset() {
+		return bytes - AppendableGzipOutputStream.CLOSING_TAG.length;
+	}
+
+	/**
+	 * Appends rendered &lt;url&gt; elements to the target, unless that would make it too big; either way, later
+	 * URLs go in new sitemaps
+	 *
+	 * @param entries the UTF-8 XML of the elements
+	 * @param count how many URLs they are
+	 * @param entriesMaxLastMod the latest lastmod of the URLs, or null
+	 * @param start when the rendering started, from {@link System#nanoTime()}
+	 * @return what the target has now, or null if it was too big to append to
+	 */
+	SitemapResult append(byte[] entries, int count, Date entriesMaxLastMod, long start) {
+		File target = this.target;
+		this.target = null;
+		if (bytes + entries.length + AppendableGzipOutputStream.CLOSING_TAG.length > SitemapValidator.MAX_SITEMAP_BYTES) return null;
+		try {
+			byte[] tail = gzip ? AppendableGzipOutputStream.CLOSING_MEMBER : AppendableGzipOutputStream.CLOSING_TAG;
+			byte[] body = gzip ? AppendableGzipOutputStream.gzip(entries, 0, entries.length) : entries;
+			FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.WRITE);
+			try {
+				channel.position(channel.size() - tail.length);
+				ByteBuffer[] buffers = { ByteBuffer.wrap(body), ByteBuffer.wrap(tail) };
+				while (buffers[1].hasRemaining()) channel.write(buffers);
+			} finally {
+				channel.close();
+			}
+			// the checksums are of the whole file, so it has to be read back
+			ChecksumOutputStream checksums = new ChecksumOutputStream(new OutputStream() {
+				public void write(int b) {}
+				public void write(byte[] b, int off, int len) {}
+			});
+			Files.copy(target.toPath(), checksums);
+			Date max = entriesMaxLastMod;
+			if (max == null || maxLastMod != null && maxLastMod.after(max)) max = maxLastMod;
+			return new SitemapResult(target, urls + count, bytes + entries.length, checksums.getCount(),
+					checksums.getCrc32c(), checksums.getSha256(), max, System.nanoTime() - start);
+		} catch (IOException e) {
+			throw new RuntimeException("Problem appending to sitemap file " + target, e);
+		}
+	}
+
+	private static boolean endsWith(File file, byte[] tail) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.length() < tail.length) return false;
+			byte[] end = new byte[tail.length];
+			raf.seek(raf.length() - tail.length);
+			raf.readFully(end);
+			return Arrays.equals(end, tail);
+		} finally {
+			raf.close();
+		}
+	}
+
+	/** The number of &lt;url&gt; elements, of bytes, and the latest lastmod in milliseconds, or Long.MIN_VALUE if none */
+	static long[] scan(InputStream in, TimeZone timeZone) throws IOException {
+		byte[] urlTag = "<url>".getBytes(StandardCharsets.UTF_8);
+		byte[] lastModTag = "<lastmod>".getBytes(StandardCharsets.UTF_8);
+		byte[] buffer = new byte[64 * 1024];
+		long urls = 0, bytes = 0, maxLastMod = Long.MIN_VALUE;
+		int urlMatched = 0, lastModMatched = 0;
+		// the text of a lastmod, while it's being read
+		StringBuilder lastMod = null;
+		for (int read; (read = in.read(buffer)) != -1;) {
+			for (int i = 0; i < read; i++) {
+				byte b = buffer[i];
+				if (lastMod != null) {
+					if (b != '<') {
+						lastMod.append((char) b);
+						continue;
+					}
+					try {
+						maxLastMod = Math.max(maxLastMod, W3CDateParser.parseMillis(lastMod.toString().trim(), timeZone));
+					} catch (ParseException e) {
+						// not ours to validate
+					}
+					lastMod = null;
+				}
+				urlMatched = match(urlTag, urlMatched, b);
+				if (urlMatched == urlTag.length) {
+					urls++;
+					urlMatched = 0;
+				}
+				lastModMatched = match(lastModTag, lastModMatched, b);
+				if (lastModMatched == lastModTag.length) {
+					lastMod = new StringBuilder(32);
+					lastModMatched = 0;
+				}
+			}
+			bytes += read;
+		}
+		return new long[] { urls, bytes, maxLastMod };
+	}
+
+	/** How much of the tag is matched after the byte, given how much was before it */
+	private static int match(byte[] tag, int matched, byte b) {
+		if (b == tag[matched]) return matched + 1;
+		return b == tag[0] ? 1 : 0;
+	}
+}
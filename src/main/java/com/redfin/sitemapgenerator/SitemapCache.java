@@ -0,0 +1,284 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps rendered sitemaps of a {@link SitemapSource} in memory, gzipped, so hot sitemaps are served without
+ * rendering them again.  The least recently used sitemaps are evicted to stay within a memory budget, and
+ * concurrent requests for a sitemap that isn't cached render it only once.  When the source changes, call
+ * {@link #invalidate()} (or {@link #invalidate(int)} if only one sitemap changed).
+ *
+ * <pre>
+ * SitemapCache&lt;WebSitemapUrl&gt; cache = new SitemapCache.Options&lt;WebSitemapUrl&gt;(wsg, source)
+ *     .maxBytes(64 * 1024 * 1024).build();
+ * SitemapCache.Entry entry = cache.getSitemap(37);
+ * if (entry == null) ... // not found
+ * response.setHeader("ETag", entry.getETag());
+ * response.setHeader("Content-Encoding", "gzip");
+ * entry.writeTo(response.getOutputStream());
+ * </pre>
+ *
+ * @param <U> the type of URL
+ */
+public class SitemapCache<U extends ISitemapUrl> {
+	/** The key of the sitemap index */
+	private static final int INDEX = 0;
+	/** What an entry takes besides its bytes, roughly */
+	private static final int ENTRY_OVERHEAD = 128;
+
+	private final SitemapGenerator<U, ?> generator;
+	private final SitemapSource<? extends U> source;
+	private final long maxBytes;
+	private final LinkedHashMap<Integer, Entry> entries = new LinkedHashMap<Integer, Entry>(16, 0.75f, true);
+	private final ConcurrentMap<Integer, FutureTask<Entry>> loading = new ConcurrentHashMap<Integer, FutureTask<Entry>>();
+	private long bytes;
+	private long generation;
+	private int sitemapCount = -1;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/** Options to configure a cache */
+	public static class Options<U extends ISitemapUrl> {
+		private final SitemapGenerator<U, ?> generator;
+		private final SitemapSource<? extends U> source;
+		private long maxBytes = 32 * 1024 * 1024;
+
+		/**
+		 * @param generator renders the sitemaps; its base directory isn't used
+		 * @param source supplies the URLs
+		 */
+		public Options(SitemapGenerator<U, ?> generator, SitemapSource<? extends U> source) {
+			this.generator = generator;
+			this.source = source;
+		}
+
+		/** How much memory the cached sitemaps may take; the default is 32MB */
+		public Options<U> maxBytes(long maxBytes) {
+			if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must not be negative: " + maxBytes);
+			this.maxBytes = maxBytes;
+			return this;
+		}
+
+		/** Constructs a cache configured with the options you specified */
+		public SitemapCache<U> build() {
+			return new SitemapCache<U>(this);
+		}
+	}
+
+	/** One rendered, gzipped sitemap or sitemap index */
+	public static final class Entry {
+		private final byte[] gzipped;
+		private final String eTag;
+		private final long lastModified;
+
+		Entry(byte[] gzipped, long lastModified) {
+			this.gzipped = gzipped;
+			this.lastModified = lastModified;
+			try {
+				eTag = "\"" + SitemapResult.hex(MessageDigest.getInstance("SHA-256").digest(gzipped), 16) + "\"";
+			} catch (NoSuchAlgorithmException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		/** A strong entity tag, quoted, derived from the content */
+		public String getETag() { return eTag; }
+		/** The size of the gzipped content */
+		public int getSize() { return gzipped.length; }
+		/** The latest lastmod of the URLs, or when the entry was rendered if none of them has one */
+		public Date getLastModified() { return new Date(lastModified); }
+
+		/** Writes the gzipped content */
+		public void writeTo(OutputStream out) throws IOException {
+			out.write(gzipped);
+		}
+
+		byte[] getGzipped() {
+			return gzipped;
+		}
+	}
+
+	SitemapCache(Options<U> options) {
+		generator = options.generator;
+		source = options.source;
+		maxBytes = options.maxBytes;
+	}
+
+	/** The number of sitemaps the index lists; the count of the source is cached until the next {@link #invalidate()} */
+	public int getSitemapCount() throws IOException {
+		long generation;
+		synchronized (this) {
+			if (sitemapCount >= 0) return sitemapCount;
+			generation = this.generation;
+		}
+		int count = generator.getSitemapCount(source);
+		synchronized (this) {
+			if (generation == this.generation) sitemapCount = count;
+		}
+		return count;
+	}
+
+	/** The number of a sitemap from its file name, or -1 if it isn't the name of a sitemap */
+	int getSitemapNumber(String fileName) {
+		return generator.getSitemapNumber(fileName);
+	}
+
+	/** Retrieves the sitemap index, rendering it if it isn't cached */
+	public Entry getIndex() throws IOException {
+		return get(INDEX);
+	}
+
+	/**
+	 * Retrieves one sitemap, rendering it if it isn't cached
+	 *
+	 * @param sitemap which sitemap, from 1
+	 * @return the sitemap, or null if the index doesn't list it
+	 */
+	public Entry getSitemap(int sitemap) throws IOException {
+		if (sitemap < 1 || sitemap > getSitemapCount()) return null;
+		return get(sitemap);
+	}
+
+	private Entry get(final int key) throws IOException {
+		final long generation;
+		synchronized (this) {
+			Entry entry = entries.get(key);
+			if (entry != null) {
+				hits.incrementAndGet();
+				return entry;
+			}
+			generation = this.generation;
+		}
+		FutureTask<Entry> task = new FutureTask<Entry>(new Callable<Entry>() {
+			public Entry call() throws IOException {
+				Entry entry = render(key);
+				// cache it before the render stops being in progress, so nobody renders it twice
+				put(key, entry, generation);
+				return entry;
+			}
+		});
+		FutureTask<Entry> existing = loading.putIfAbsent(key, task);
+		if (existing == null) {
+			// we render it; anybody asking for the same sitemap in the meantime waits for us
+			misses.incrementAndGet();
+			try {
+				task.run();
+			} finally {
+				loading.remove(key, task);
+			}
+		} else {
+			hits.incrementAndGet();
+			task = existing;
+		}
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while rendering sitemap " + key, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+			if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	private Entry render(int key) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		long lastModified;
+		if (key == INDEX) {
+			// the generator never gzips an index
+			OutputStream out = new GZIPOutputStream(buffer);
+			generator.writeSitemapIndex(source, out);
+			out.close();
+			lastModified = System.currentTimeMillis();
+		} else {
+			OutputStream out = generator.isGzip() ? buffer : new GZIPOutputStream(buffer);
+			LastModTracker tracker = new LastModTracker();
+			generator.writeSitemap(tracker, key, out);
+			out.close();
+			lastModified = tracker.lastModified == Long.MIN_VALUE ? System.currentTimeMillis() : tracker.lastModified;
+		}
+		return new Entry(buffer.toByteArray(), lastModified);
+	}
+
+	private synchronized void put(int key, Entry entry, long generation) {
+		// don't cache what was rendered from a source that changed since, nor what can never fit
+		long size = entry.getSize() + ENTRY_OVERHEAD;
+		if (generation != this.generation || size > maxBytes) return;
+		Entry previous = entries.put(key, entry);
+		if (previous != null) bytes -= previous.getSize() + ENTRY_OVERHEAD;
+		bytes += size;
+		Iterator<Entry> eldest = entries.values().iterator();
+		while (bytes > maxBytes) {
+			bytes -= eldest.next().getSize() + ENTRY_OVERHEAD;
+			eldest.remove();
+		}
+	}
+
+	/** Drops every cached sitemap and the index, and the count; call this when the source changes */
+	public synchronized void invalidate() {
+		generation++;
+		entries.clear();
+		bytes = 0;
+		sitemapCount = -1;
+		loading.clear();
+	}
+
+	/** Drops one cached sitemap; call this when only its URLs changed, not their number */
+	public synchronized void invalidate(int sitemap) {
+		// a sitemap being rendered may have read the old URLs, so don't let any render in flight be cached
+		generation++;
+		Entry previous = entries.remove(sitemap);
+		if (previous != null) bytes -= previous.getSize() + ENTRY_OVERHEAD;
+		loading.remove(sitemap);
+	}
+
+	/** How many requests were served from the cache, or joined a render already in progress */
+	public long getHits() { return hits.get(); }
+	/** How many requests had to render */
+	public long getMisses() { return misses.get(); }
+	/** How much memory the cached sitemaps take, roughly */
+	public synchronized long getBytes() { return bytes; }
+
+	/** Passes the pages of the source through, noting the latest lastmod */
+	private class LastModTracker implements SitemapSource<U> {
+		long lastModified = Long.MIN_VALUE;
+
+		public long count() throws IOException {
+			return source.count();
+		}
+
+		public Iterable<U> page(long offset, int limit) throws IOException {
+			final Iterable<? extends U> page = source.page(offset, limit);
+			return new Iterable<U>() {
+				public Iterator<U> iterator() {
+					final Iterator<? extends U> urls = page.iterator();
+					return new Iterator<U>() {
+						public boolean hasNext() {
+							return urls.hasNext();
+						}
+						public U next() {
+							U url = urls.next();
+							if (url.getLastMod() != null) lastModified = Math.max(lastModified, url.getLastMod().getTime());
+							return url;
+						}
+					};
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,183 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Compares two generations of sitemaps, e.g. yesterday's and today's output directories, and reports which URLs
+ * were added, which were removed, and which had their lastmod, changefreq or priority changed.  Both sets are read
+ * in parallel and spilled to temporary files, partitioned by a hash of the location, as {@link SitemapMerger} does;
+ * then each pair of partitions is deduplicated, sorted and merge-joined on the location.  Only one pair of
+ * partitions is ever held in memory, so use enough of them (roughly one per million URLs) for the heap you have.
+ *
+ * <p>The report has one line per difference, in order of location within each partition:</p>
+ *
+ * <pre>
+ * + http://www.example.com/new
+ * - http://www.example.com/gone
+ * ~ http://www.example.com/changed lastmod 2008-01-01 2008-02-01 priority 0.5 0.8
+ * </pre>
+ *
+ * <p>A changed line only lists the fields that changed, each followed by its old and new value ("-" when the field
+ * is missing).  Only the standard fields are compared; extensions are ignored.</p>
+ *
+ * <pre>
+ * SitemapDiff.Result result = new SitemapDiff.Options().partitions(64).build()
+ *     .diff(new File("yesterday"), new File("today"), report);
+ * </pre>
+ */
+public class SitemapDiff {
+	private final int threads;
+	private final int partitions;
+	private final File tempDir;
+	private final W3CDateFormat dateFormat;
+
+	/**
+	 * Options to configure a diff; the date format also formats the dates of the report
+	 */
+	public static class Options extends AbstractSitemapReadingOptions.Spilling<Options> {
+		/** Constructs a diff configured with the options you specified */
+		public SitemapDiff build() {
+			return new SitemapDiff(this);
+		}
+	}
+
+	/** How many URLs were added, removed, changed or left alone */
+	public static final class Result {
+		private int added, removed, changed, unchanged;
+
+		/** URLs only in the new set */
+		public int getAdded() { return added; }
+		/** URLs only in the old set */
+		public int getRemoved() { return removed; }
+		/** URLs in both sets, whose lastmod, changefreq or priority changed */
+		public int getChanged() { return changed; }
+		/** URLs in both sets, with the same lastmod, changefreq and priority */
+		public int getUnchanged() { return unchanged; }
+
+		/** Whether both sets have the same URLs, with the same fields */
+		public boolean isEmpty() {
+			return added == 0 && removed == 0 && changed == 0;
+		}
+
+		@Override
+		public String toString() {
+			return "+" + added + " -" + removed + " ~" + changed + " =" + unchanged;
+		}
+	}
+
+	/** Configures a diff with the default options */
+	public SitemapDiff() {
+		this(new Options());
+	}
+
+	SitemapDiff(Options options) {
+		threads = options.threads;
+		partitions = options.partitions;
+		tempDir = options.tempDir;
+		dateFormat = options.dateFormat;
+	}
+
+	/**
+	 * Compares two sets of sitemaps.  Each of them is either a directory, whose sitemaps (*.xml and *.xml.gz, except
+	 * sitemap indexes) are all read, or a sitemap or a sitemap index file.
+	 *
+	 * @param report where to write the differences, or null to just count them; it's not closed
+	 * @throws IOException if an input file can't be read, or isn't a sitemap, or the report can't be written
+	 */
+	public Result diff(File before, File after, Writer report) throws IOException {
+		return diff(Arrays.asList(before), Arrays.asList(after), report);
+	}
+
+	/**
+	 * Compares two sets of sitemaps, each made of several directories or files
+	 * @see #diff(File, File, Writer)
+	 */
+	public Result diff(Iterable<File> before, Iterable<File> after, Writer report) throws IOException {
+		List<File> beforeSitemaps = RecordSpill.sitemaps(before);
+		List<File> afterSitemaps = RecordSpill.sitemaps(after);
+		RecordSpill beforeSpill = new RecordSpill("sitemap-diff", partitions, tempDir);
+		try {
+			RecordSpill afterSpill = new RecordSpill("sitemap-diff", partitions, tempDir);
+			try {
+				beforeSpill.spill(beforeSitemaps, threads, dateFormat);
+				afterSpill.spill(afterSitemaps, threads, dateFormat);
+				Result result = new Result();
+				W3CDateFormat reportFormat = (W3CDateFormat) dateFormat.clone();
+				for (int i = 0; i < partitions; i++) {
+					join(beforeSpill.deduplicate(i), afterSpill.deduplicate(i), result, report, reportFormat);
+				}
+				return result;
+			} finally {
+				afterSpill.close();
+			}
+		} finally {
+			beforeSpill.close();
+		}
+	}
+
+	/** Merge-joins one pair of partitions, both sorted by location */
+	private static void join(List<SitemapUrlRecord> before, List<SitemapUrlRecord> after, Result result,
+			Writer report, W3CDateFormat dateFormat) throws IOException {
+		int i = 0, j = 0;
+		while (i < before.size() || j < after.size()) {
+			int compare;
+			if (i == before.size()) compare = 1;
+			else if (j == after.size()) compare = -1;
+			else compare = before.get(i).getLoc().compareTo(after.get(j).getLoc());
+			if (compare < 0) {
+				result.removed++;
+				if (report != null) report.write("- " + before.get(i).getLoc() + "\n");
+				i++;
+			} else if (compare > 0) {
+				result.added++;
+				if (report != null) report.write("+ " + after.get(j).getLoc() + "\n");
+				j++;
+			} else {
+				String changes = changes(before.get(i), after.get(j), dateFormat);
+				if (changes.length() == 0) {
+					result.unchanged++;
+				} else {
+					result.changed++;
+					if (report != null) report.write("~ " + after.get(j).getLoc() + changes + "\n");
+				}
+				i++;
+				j++;
+			}
+		}
+	}
+
+	/** Lists the fields that changed, each with its old and new value */
+	private static String changes(SitemapUrlRecord before, SitemapUrlRecord after, W3CDateFormat dateFormat) {
+		StringBuilder sb = new StringBuilder();
+		if (before.getLastModMillis() != after.getLastModMillis()) {
+			sb.append(" lastmod ").append(format(before.getLastMod(), dateFormat))
+				.append(' ').append(format(after.getLastMod(), dateFormat));
+		}
+		if (before.getChangeFreq() != after.getChangeFreq()) {
+			sb.append(" changefreq ").append(format(before.getChangeFreq()))
+				.append(' ').append(format(after.getChangeFreq()));
+		}
+		if (Double.compare(before.getPriority(), after.getPriority()) != 0) {
+			sb.append(" priority ").append(format(before.getPriority()))
+				.append(' ').append(format(after.getPriority()));
+		}
+		return sb.toString();
+	}
+
+	private static String format(Date date, W3CDateFormat dateFormat) {
+		return date == null ? "-" : dateFormat.format(date);
+	}
+
+	private static String format(ChangeFreq changeFreq) {
+		return changeFreq == null ? "-" : changeFreq.toString();
+	}
+
+	private static String format(double priority) {
+		return Double.isNaN(priority) ? "-" : String.valueOf(priority);
+	}
+}
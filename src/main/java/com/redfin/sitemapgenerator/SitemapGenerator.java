@@ -1,18 +1,34 @@
 package com.redfin.sitemapgenerator;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.zip.GZIPOutputStream;
 
-import org.xml.sax.SAXException;
-
 abstract class SitemapGenerator<U extends ISitemapUrl, THIS extends SitemapGenerator<U,THIS>> {
 	/** 50000 URLs per sitemap maximum */
 	public static final int MAX_URLS_PER_SITEMAP = 50000;
@@ -23,17 +39,49 @@ abstract class SitemapGenerator<U extends ISitemapUrl, THIS extends SitemapGener
 	private final String fileNameSuffix;
 	private final boolean allowEmptySitemap;
 	private final boolean allowMultipleSitemaps;
-	private final ArrayList<U> urls = new ArrayList<U>();
+	private final Map<String, Shard> shards = new LinkedHashMap<String, Shard>();
 	private final W3CDateFormat dateFormat;
 	private final int maxUrls;
 	private final boolean autoValidate;
+	private final boolean autoValidateStructure;
+	private final int validationThreads;
+	private final ValidationPolicy validationPolicy;
+	private BackgroundValidator validator;
 	private final boolean gzip;
+	private final boolean compact;
+	private final boolean contentAddressed;
+	private final boolean writeManifest;
+	private final ShardPartitioner<U> partitioner;
+	private final boolean append;
+	/** the records of the locator file, if there is one */
+	private final SitemapLocator.Builder locator;
+	/** the sitemaps this generator wrote from scratch, whose old locator records are obsolete */
+	private final Set<String> renderedFiles = new HashSet<String>();
+	/** where the URLs go in append mode */
+	private final SitemapAppender appender;
 	private final ISitemapUrlRenderer<U> renderer;
-	private int mapCount = 0;
 	private boolean finished = false;
 	
 	private final ArrayList<File> outFiles = new ArrayList<File>();
+	private final ArrayList<SitemapResult> results = new ArrayList<SitemapResult>();
+	
+	/** A group of sitemaps, with its own URLs and numbering; there's just one unless there's a partitioner */
+	private final class Shard {
+		final String fileNamePrefix;
+		/** between the prefix and the number of a sitemap */
+		final String separator;
+		final ArrayList<U> urls = new ArrayList<U>();
+		int mapCount = 0;
+		/** the sitemaps already written, if the shard is frozen */
+		List<File> frozenFiles;
+		
+		Shard(String fileNamePrefix, String separator) {
+			this.fileNamePrefix = fileNamePrefix;
+			this.separator = separator;
+		}
+	}
 	
+	@SuppressWarnings("unchecked")
 	public SitemapGenerator(AbstractSitemapGeneratorOptions<?> options, ISitemapUrlRenderer<U> renderer) {
 		baseDir = options.baseDir;
 		baseUrl = options.baseUrl;
@@ -45,8 +93,18 @@ abstract class SitemapGenerator<U extends ISitemapUrl, THIS extends SitemapGener
 		allowMultipleSitemaps = options.allowMultipleSitemaps;
 		maxUrls = options.maxUrls;
 		autoValidate = options.autoValidate;
+		autoValidateStructure = options.autoValidateStructure;
+		validationThreads = options.validationThreads;
+		validationPolicy = options.validationPolicy;
 		gzip = options.gzip;
+		compact = options.compact;
+		contentAddressed = options.contentAddressed;
+		writeManifest = options.writeManifest;
+		partitioner = (ShardPartitioner<U>) options.partitioner;
+		append = options.append;
+		locator = options.writeLocator ? new SitemapLocator.Builder() : null;
 		this.renderer = renderer;
+		if (partitioner == null) shards.put(null, new Shard(fileNamePrefix, ""));
 
 		if(options.suffixStringPattern != null && !options.suffixStringPattern.isEmpty()) {
 			fileNameSuffix = gzip ? options.suffixStringPattern + ".xml.gz" : options.suffixStringPattern + ".xml";
@@ -54,8 +112,18 @@ abstract class SitemapGenerator<U extends ISitemapUrl, THIS extends SitemapGener
 		else {
 			fileNameSuffix = gzip ? ".xml.gz" : ".xml";
 		}
-	}
 
+		if (partitioner instanceof TimeShardPartitioner && baseDir != null) findFrozenShards((TimeShardPartitioner) partitioner);
+		if (append) {
+			if (baseDir == null) throw new NullPointerException("To append to files, baseDir must not be null");
+			if (contentAddressed || partitioner != null) throw new IllegalArgumentException("Can't append to content-addressed or partitioned sitemaps");
+			appender = new SitemapAppender(baseDir, fileNamePrefix, fileNameSuffix, gzip, maxUrls, dateFormat.getTimeZone());
+			shards.get(null).mapCount = appender.getNextSitemap();
+		} else {
+			appender = null;
+		}
+	}
+	
 	/** Add one URL of the appropriate type to this sitemap.
 	 * If we have reached the maximum number of URLs, we'll throw an exception if {@link #allowMultipleSitemaps} is false,
 	 * or else write out one sitemap immediately.
@@ -65,19 +133,81 @@ abstract class SitemapGenerator<U extends ISitemapUrl, THIS extends SitemapGener
 	public THIS addUrl(U url) {
 		if (finished) throw new RuntimeException("Sitemap already printed; you must create a new generator to make more sitemaps"); 
 		UrlUtils.checkUrl(url.getUrl(), baseUrl);
-		if (urls.size() == maxUrls) {
+		Shard shard = getShard(url);
+		// a frozen shard isn't written again
+		if (shard.frozenFiles != null) return getThis();
+		if (shard.urls.size() == (appender != null && appender.hasTarget() ? appender.getRoom() : maxUrls)) {
 			if (!allowMultipleSitemaps) throw new RuntimeException("More than " + maxUrls + " urls, but allowMultipleSitemaps is false.  Enable allowMultipleSitemaps to split the sitemap into multiple files with a sitemap index.");
 			if (baseDir != null) {
-				if (mapCount == 0) mapCount++;
-				writeSiteMap();
-				mapCount++;
-				urls.clear();
+				if (shard.mapCount == 0) shard.mapCount++;
+				writeSiteMap(shard, false);
+				shard.mapCount++;
+				shard.urls.clear();
 			}
 		}
-		urls.add(url);
+		shard.urls.add(url);
 		return getThis();
 	}
 	
+	/**
+	 * Adopts the sitemaps of frozen shards that were written by earlier runs: only the ones the last index lists, so
+	 * files a shard left behind before it was complete are ignored; a shard that's missing any of its files isn't
+	 * frozen, and is rendered again
+	 */
+	private void findFrozenShards(TimeShardPartitioner partitioner) {
+		// shard names can't have a dash, so the number and the hash that may follow them can't be mistaken for it
+		Pattern pattern = Pattern.compile(Pattern.quote(fileNamePrefix + "-") + "([A-Za-z0-9_]+)(?:-\\d+)?(?:-[0-9a-f]{16})?" + Pattern.quote(fileNameSuffix));
+		Map<String, List<File>> found = new LinkedHashMap<String, List<File>>();
+		Set<String> incomplete = new HashSet<String>();
+		for (String name : indexedNames()) {
+			Matcher matcher = pattern.matcher(name);
+			if (!matcher.matches() || !partitioner.isFrozen(matcher.group(1))) continue;
+			File file = new File(baseDir, name);
+			if (!file.isFile()) incomplete.add(matcher.group(1));
+			List<File> files = found.get(matcher.group(1));
+			if (files == null) found.put(matcher.group(1), files = new ArrayList<File>());
+			files.add(file);
+		}
+		for (Map.Entry<String, List<File>> entry : found.entrySet()) {
+			if (incomplete.contains(entry.getKey())) continue;
+			Shard shard = new Shard(fileNamePrefix + "-" + entry.getKey(), "-");
+			shard.frozenFiles = entry.getValue();
+			shards.put(entry.getKey(), shard);
+		}
+	}
+	
+	/** The file names of the sitemaps the index on disk lists, in order; none if there's no index yet */
+	private List<String> indexedNames() {
+		File index = getIndexFile();
+		List<String> names = new ArrayList<String>();
+		if (!index.isFile()) return names;
+		try {
+			SitemapReader reader = SitemapReader.open(index);
+			try {
+				for (SitemapIndexUrl sitemap; (sitemap = reader.nextSitemap()) != null;) {
+					String path = sitemap.getUrl().getPath();
+					names.add(path.substring(path.lastIndexOf('/') + 1));
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			throw new RuntimeException("Problem reading sitemap index " + index, e);
+		}
+		return names;
+	}
+	
+	private Shard getShard(U url) {
+		if (partitioner == null) return shards.get(null);
+		String name = ShardPartitioners.checkShard(partitioner.getShard(url));
+		Shard shard = shards.get(name);
+		if (shard == null) {
+			shard = new Shard(fileNamePrefix + "-" + name, "-");
+			shards.put(name, shard);
+		}
+		return shard;
+	}
+	
 	/** Add multiple URLs of the appropriate type to this sitemap, one at a time.
 	 * If we have reached the maximum number of URLs, we'll throw an exception if {@link #allowMultipleSitemaps} is false,
 	 * or write out one sitemap immediately.
@@ -156,6 +286,27 @@ abstract class SitemapGenerator<U extends ISitemapUrl, THIS extends SitemapGener
 		return addUrl(sitemapUrl);
 	}
 	
+	boolean isGzip() {
+		return gzip;
+	}
+	
+	TimeZone getTimeZone() {
+		return dateFormat.getTimeZone();
+	}
+	
+	boolean isCompact() {
+		return compact;
+	}
+	
+	int getMaxUrls() {
+		return maxUrls;
+	}
+	
+	/** Throws if the URL isn't under the base URL */
+	void checkUrl(U url) {
+		UrlUtils.checkUrl(url.getUrl(), baseUrl);
+	}
+	
 	@SuppressWarnings("unchecked")
 	THIS getThis() {
 		return (THIS)this;
@@ -163,16 +314,178 @@ abstract class SitemapGenerator<U extends ISitemapUrl, THIS extends SitemapGener
 	
 	/** Write out remaining URLs; this method can only be called once.  This is necessary so we can keep an accurate count for {@link #writeSitemapsWithIndex()}.
 	 * 
-	 * @return a list of files we wrote out to disk
+	 * @return a list of files we wrote out to disk, including those of frozen shards (see {@link TimeShardPartitioner})
 	 */
 	public List<File> write() {
 		if (finished) throw new RuntimeException("Sitemap already printed; you must create a new generator to make more sitemaps");
-		if (!allowEmptySitemap && urls.isEmpty() && mapCount == 0) throw new RuntimeException("No URLs added, sitemap would be empty; you must add some URLs with addUrls");
-		writeSiteMap();
+		if (!allowEmptySitemap && isEmpty()) throw new RuntimeException("No URLs added, sitemap would be empty; you must add some URLs with addUrls");
+		for (Shard shard : shards.values()) {
+			if (shard.frozenFiles != null) {
+				outFiles.addAll(shard.frozenFiles);
+			} else {
+				writeSiteMap(shard, true);
+			}
+		}
 		finished = true;
+		if (validator != null) validator.finish();
+		if (writeManifest) writeManifest();
+		if (locator != null) writeLocator();
 		return outFiles;
 	}
 	
+	/** The locator file {@link #write()} writes when {@link AbstractSitemapGeneratorOptions#writeLocator(boolean)} is on */
+	public File getLocatorFile() {
+		return new File(baseDir, fileNamePrefix + "_locator.bin");
+	}
+	
+	private void writeLocator() {
+		File file = getLocatorFile();
+		try {
+			// the sitemaps that were appended to or frozen keep their records from the last run
+			if (file.isFile() && (append || partitioner != null)) {
+				SitemapLocator old = SitemapLocator.read(file);
+				// old name -> current name
+				Map<String, String> kept = new HashMap<String, String>();
+				for (String name : append ? old.getFileNames() : names(outFiles)) {
+					String current = append ? appender.getCurrentName(name) : name;
+					if (!renderedFiles.contains(current) && new File(baseDir, current).isFile()) kept.put(name, current);
+				}
+				locator.addFrom(old, kept);
+			}
+			locator.write(file);
+		} catch (IOException e) {
+			throw new RuntimeException("Problem writing sitemap locator " + file, e);
+		}
+	}
+	
+	private static List<String> names(List<File> files) {
+		List<String> names = new ArrayList<String>(files.size());
+		for (File file : files) {
+			names.add(file.getName());
+		}
+		return names;
+	}
+	
+	/**
+	 * Updates or removes a few URLs in place, using the locator file of an earlier run (see
+	 * {@link AbstractSitemapGeneratorOptions#writeLocator(boolean)}): only the sitemaps that hold them are rewritten,
+	 * each URL replacing its old &lt;url&gt; element, and the locator is brought up to date.  The generator must be
+	 * configured like the one that wrote the sitemaps; don't add URLs to it.  Each rewritten sitemap gets a
+	 * {@link #getSitemapResults() result}, and its entries in the manifest (when
+	 * {@link AbstractSitemapGeneratorOptions#writeManifest(boolean) writeManifest} is on) and in the sitemap index,
+	 * if there's one, are brought up to date too; the index gives it the current time as its lastmod.
+	 *
+	 * @param updated new versions of URLs that are in the sitemaps, e.g. with a new lastmod
+	 * @param removed URLs to take out of the sitemaps; the ones that aren't there are ignored
+	 * @return the sitemaps that were rewritten
+	 * @throws IllegalArgumentException if an updated URL isn't in the sitemaps; add it with append mode instead
+	 */
+	public List<File> updateUrls(Iterable<? extends U> updated, Iterable<URL> removed) throws IOException {
+		if (contentAddressed) throw new IllegalStateException("Content-addressed sitemaps can't be updated in place");
+		List<SitemapResult> rewritten = new SitemapUpdater<U>(this, baseDir).update(updated, removed);
+		results.addAll(rewritten);
+		if (!rewritten.isEmpty()) {
+			if (writeManifest) updateManifest(rewritten);
+			if (getIndexFile().isFile()) updateIndex(rewritten);
+		}
+		List<File> files = new ArrayList<File>(rewritten.size());
+		for (SitemapResult result : rewritten) {
+			files.add(result.getFile());
+		}
+		return files;
+	}
+	
+	/** Replaces the manifest's entries of the rewritten sitemaps, keeping the others */
+	private void updateManifest(List<SitemapResult> rewritten) throws IOException {
+		File manifest = getManifestFile();
+		// file name -> JSON
+		Map<String, String> entries = new LinkedHashMap<String, String>();
+		if (manifest.isFile()) {
+			for (String line : Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8)) {
+				if (line.endsWith(",")) line = line.substring(0, line.length() - 1);
+				String file = SitemapResult.fileOf(line);
+				if (file != null) entries.put(file, line);
+			}
+		}
+		for (SitemapResult result : rewritten) {
+			entries.put(result.getFile().getName(), result.toJson(dateFormat));
+		}
+		writeManifest(entries.values());
+	}
+	
+	/** Rewrites the sitemap index with the current time as the lastmod of the rewritten sitemaps */
+	private void updateIndex(List<SitemapResult> rewritten) throws IOException {
+		File index = getIndexFile();
+		Set<String> names = new HashSet<String>();
+		for (SitemapResult result : rewritten) {
+			names.add(result.getFile().getName());
+		}
+		Date now = new Date();
+		SitemapIndexGenerator sig = new SitemapIndexGenerator.Options(baseUrl, index).dateFormat(dateFormat)
+				.autoValidate(autoValidate).compact(compact).build();
+		SitemapReader reader = SitemapReader.open(index);
+		try {
+			for (SitemapIndexUrl sitemap; (sitemap = reader.nextSitemap()) != null;) {
+				String path = sitemap.getUrl().getPath();
+				boolean changed = names.contains(path.substring(path.lastIndexOf('/') + 1));
+				sig.addUrl(sitemap.getUrl(), changed ? now : sitemap.getLastMod());
+			}
+		} finally {
+			reader.close();
+		}
+		sig.write();
+	}
+	
+	/** Gzips what's written to a sitemap file, if the generator gzips */
+	OutputStream compress(OutputStream out) throws IOException {
+		if (!gzip) return out;
+		return append ? new AppendableGzipOutputStream(out) : new GZIPOutputStream(out);
+	}
+	
+	private boolean isEmpty() {
+		for (Shard shard : shards.values()) {
+			if (!shard.urls.isEmpty() || shard.mapCount > 0 || shard.frozenFiles != null) return false;
+		}
+		return appender == null || appender.getLastSitemap() == 0;
+	}
+	
+	/**
+	 * What was written to each sitemap file so far: its size, checksums, URL count and so on, all measured while
+	 * the file was written.
+	 */
+	public List<SitemapResult> getSitemapResults() {
+		return Collections.unmodifiableList(results);
+	}
+	
+	/** The manifest {@link #write()} writes when {@link AbstractSitemapGeneratorOptions#writeManifest(boolean)} is on */
+	public File getManifestFile() {
+		return new File(baseDir, fileNamePrefix + "_manifest.json");
+	}
+	
+	private void writeManifest() {
+		List<String> entries = new ArrayList<String>(results.size());
+		for (SitemapResult result : results) {
+			entries.add(result.toJson(dateFormat));
+		}
+		writeManifest(entries);
+	}
+	
+	private void writeManifest(Collection<String> entries) {
+		File manifest = getManifestFile();
+		StringBuilder sb = new StringBuilder("{\"sitemaps\":[");
+		String separator = "\n";
+		for (String entry : entries) {
+			sb.append(separator).append(entry);
+			separator = ",\n";
+		}
+		sb.append("\n]}\n");
+		try {
+			Files.write(manifest.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			throw new RuntimeException("Problem writing sitemap manifest " + manifest, e);
+		}
+	}
+	
 	/**
 	 * Writes out the sitemaps as a list of strings.
 	 * Each string in the list is a formatted list of URLs.
@@ -182,30 +495,145 @@ abstract class SitemapGenerator<U extends ISitemapUrl, THIS extends SitemapGener
 	 */
 	public List<String> writeAsStrings() {
 		List<String> listOfSiteMapStrings = new ArrayList<String>();
-		for (int start = 0; start < urls.size(); start += maxUrls) {
-			int end = start + maxUrls;
-			if (end > urls.size()) {
-				end = urls.size();
+		for (Shard shard : shards.values()) {
+			List<U> urls = shard.urls;
+			for (int start = 0; start < urls.size(); start += maxUrls) {
+				int end = start + maxUrls;
+				if (end > urls.size()) {
+					end = urls.size();
+				}
+				StringBuilder sb = new StringBuilder();
+				try {
+					writeSiteMap(XmlSink.of(sb, compact), urls.subList(start, end), null, dateFormat);
+				} catch (IOException e) {
+					throw new RuntimeException("BUG", e);
+				}
+				listOfSiteMapStrings.add(sb.toString());
 			}
-			StringBuilder sb = new StringBuilder();
-			writeSiteMapAsString(sb, urls.subList(start, end));
-			listOfSiteMapStrings.add(sb.toString());
 		}
 		return listOfSiteMapStrings;
 	}
 	
-	private void writeSiteMapAsString(StringBuilder sb, List<U> urls) {
-		sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-		sb.append("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\" ");
-		if (renderer.getXmlNamespaces() != null) {
-			sb.append(renderer.getXmlNamespaces());
-			sb.append(' ');
+	private void writeSiteMap(XmlSink out, Iterable<? extends U> urls, long[] offsets, W3CDateFormat dateFormat) throws IOException {
+		if (compact) {
+			out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			out.append("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\"");
+			if (renderer.getXmlNamespaces() != null) {
+				out.append(' ');
+				out.append(renderer.getXmlNamespaces().trim());
+			}
+			out.append('>');
+		} else {
+			out.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+			out.append("<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\" ");
+			if (renderer.getXmlNamespaces() != null) {
+				out.append(renderer.getXmlNamespaces());
+				out.append(' ');
+			}
+			out.append(">\n");
 		}
-		sb.append(">\n");
-		for (U url : urls) {
-			renderer.render(url, sb, dateFormat);
+		writeUrls(out, urls, offsets, dateFormat);
+		out.append("</urlset>");
+	}
+	
+	/** Renders URLs with the generator's own date format, e.g. in place of old ones */
+	void writeUrls(XmlSink out, List<? extends U> urls) throws IOException {
+		writeUrls(out, urls, null, dateFormat);
+	}
+	
+	@SuppressWarnings("unchecked")
+	/**
+	 * @param offsets if not null, gets where each URL starts; the sink must then be a {@link Utf8XmlSink}
+	 * @param dateFormat the generator's own, or a clone of it if other threads may be rendering too
+	 */
+	private void writeUrls(XmlSink out, Iterable<? extends U> urls, long[] offsets, W3CDateFormat dateFormat) throws IOException {
+		Utf8XmlSink positioned = offsets == null ? null : (Utf8XmlSink) out;
+		int i = 0;
+		if (renderer instanceof ISitemapUrlStreamRenderer) {
+			ISitemapUrlStreamRenderer<U> streamRenderer = (ISitemapUrlStreamRenderer<U>) renderer;
+			for (U url : urls) {
+				if (positioned != null) offsets[i++] = positioned.position();
+				streamRenderer.render(url, out, dateFormat);
+			}
+		} else {
+			StringBuilder sb = new StringBuilder();
+			for (U url : urls) {
+				if (positioned != null) offsets[i++] = positioned.position();
+				sb.setLength(0);
+				renderer.render(url, sb, dateFormat);
+				out.append(sb.toString());
+			}
 		}
-		sb.append("</urlset>");
+	}
+	
+	/** How many sitemaps it takes to list all the URLs of a source, at least one */
+	public int getSitemapCount(SitemapSource<?> source) throws IOException {
+		long count = source.count();
+		return (int) Math.max(1, (count + maxUrls - 1) / maxUrls);
+	}
+	
+	/** The file name of one of the numbered sitemaps, e.g. "sitemap37.xml.gz" */
+	public String getSitemapFileName(int sitemap) {
+		return fileNamePrefix + sitemap + fileNameSuffix;
+	}
+	
+	/** The number of a sitemap from its file name, as given by {@link #getSitemapFileName(int)}, or -1 if it isn't one */
+	int getSitemapNumber(String fileName) {
+		if (!fileName.startsWith(fileNamePrefix) || !fileName.endsWith(fileNameSuffix)) return -1;
+		String number = fileName.substring(fileNamePrefix.length(), fileName.length() - fileNameSuffix.length());
+		if (number.isEmpty() || number.length() > 9 || number.charAt(0) == '0') return -1;
+		for (int i = 0; i < number.length(); i++) {
+			if (number.charAt(i) < '0' || number.charAt(i) > '9') return -1;
+		}
+		return Integer.parseInt(number);
+	}
+	
+	/**
+	 * Renders one sitemap of a source, fetching only its page of URLs, e.g. to serve it over HTTP; the memory this
+	 * takes is proportional to one sitemap, not to the whole site.  The sitemap is gzipped if the generator is
+	 * configured to gzip.  This doesn't touch the URLs added with addUrl, nor the files in the base directory, so it
+	 * may be called from several threads at once.
+	 *
+	 * @param sitemap which sitemap, from 1 to {@link #getSitemapCount(SitemapSource)}; with an overestimated count,
+	 * the last ones may be empty
+	 * @param out where to write the sitemap; it's not closed
+	 */
+	public void writeSitemap(SitemapSource<? extends U> source, int sitemap, OutputStream out) throws IOException {
+		if (sitemap < 1) throw new IllegalArgumentException("sitemaps are numbered from 1: " + sitemap);
+		List<U> page = new ArrayList<U>(maxUrls);
+		for (U url : source.page((long) (sitemap - 1) * maxUrls, maxUrls)) {
+			if (page.size() == maxUrls) throw new RuntimeException("Source returned more than " + maxUrls + " urls");
+			UrlUtils.checkUrl(url.getUrl(), baseUrl);
+			page.add(url);
+		}
+		// the gzip stream can't be closed, as that would close out, so its deflater is freed explicitly
+		AppendableGzipOutputStream.MemberOutputStream gzipStream = gzip ? new AppendableGzipOutputStream.MemberOutputStream(out) : null;
+		try {
+			XmlSink sink = new Utf8XmlSink(gzip ? gzipStream : out, compact);
+			// several threads may render sitemaps of a source at once, and a date format isn't thread-safe
+			writeSiteMap(sink, page, null, (W3CDateFormat) dateFormat.clone());
+			sink.flush();
+			if (gzipStream != null) gzipStream.finish();
+		} finally {
+			if (gzipStream != null) gzipStream.end();
+		}
+	}
+	
+	/**
+	 * Writes a sitemap index listing the numbered sitemaps of a source, as named by {@link #getSitemapFileName(int)}
+	 * under the base URL; only the count of the source is needed.  Like {@link #writeSitemap}, it may be called from
+	 * several threads at once.
+	 *
+	 * @param out where to write the index; it's not closed
+	 */
+	public void writeSitemapIndex(SitemapSource<?> source, OutputStream out) throws IOException {
+		SitemapIndexGenerator sig = new SitemapIndexGenerator.Options(baseUrl, null).dateFormat((W3CDateFormat) dateFormat.clone()).compact(compact).build();
+		sig.addUrls(fileNamePrefix, fileNameSuffix, getSitemapCount(source)).write(out);
+	}
+	
+	/** The sitemap index {@link #writeSitemapsWithIndex()} writes */
+	public File getIndexFile() {
+		return new File(baseDir, "sitemap_index.xml");
 	}
 	
 	/** After you've called {@link #write()}, call this to generate a sitemap index of all sitemaps you generated.  
@@ -213,49 +641,185 @@ abstract class SitemapGenerator<U extends ISitemapUrl, THIS extends SitemapGener
 	 */
 	public void writeSitemapsWithIndex() {
 		if (!finished) throw new RuntimeException("Sitemaps not generated yet; call write() first");
-		File outFile = new File(baseDir, "sitemap_index.xml");
+		File outFile = getIndexFile();
+		// what the index being replaced lists is kept for one more run, for the crawlers and caches that still have it
+		List<String> previous = contentAddressed ? indexedNames() : null;
 		SitemapIndexGenerator sig;		
-		sig = new SitemapIndexGenerator.Options(baseUrl, outFile).dateFormat(dateFormat).autoValidate(autoValidate).build();		
-		sig.addUrls(fileNamePrefix, fileNameSuffix, mapCount).write();
+		sig = new SitemapIndexGenerator.Options(baseUrl, outFile).dateFormat(dateFormat).autoValidate(autoValidate).compact(compact).build();		
+		if (contentAddressed || partitioner != null) {
+			for (File file : outFiles) {
+				try {
+					sig.addUrl(new URL(baseUrl, file.getName()));
+				} catch (MalformedURLException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		} else {
+			sig.addUrls(fileNamePrefix, fileNameSuffix, append ? appender.getLastSitemap() : shards.get(null).mapCount);
+		}
+		sig.write();
+		if (contentAddressed) deleteStaleSitemaps(previous);
 	}
 	
-	private void writeSiteMap() {
+	/**
+	 * Deletes the content-addressed sitemaps of earlier runs that neither the new index nor the one it replaced
+	 * lists; they're only deleted once the new index is written
+	 */
+	private void deleteStaleSitemaps(List<String> previous) {
+		Pattern pattern;
+		if (partitioner == null) {
+			pattern = Pattern.compile(Pattern.quote(fileNamePrefix) + "\\d*-[0-9a-f]{16}" + Pattern.quote(fileNameSuffix));
+		} else {
+			pattern = Pattern.compile(Pattern.quote(fileNamePrefix + "-") + "[A-Za-z0-9_]+(?:-\\d+)?-[0-9a-f]{16}" + Pattern.quote(fileNameSuffix));
+		}
+		Set<String> current = new HashSet<String>(names(outFiles));
+		current.addAll(previous);
+		File[] files = baseDir.listFiles();
+		if (files == null) return;
+		for (File file : files) {
+			if (pattern.matcher(file.getName()).matches() && !current.contains(file.getName()) && !file.delete()) {
+				throw new RuntimeException("Problem deleting stale sitemap " + file);
+			}
+		}
+	}
+	
+	private void writeSiteMap(Shard shard, boolean last) {
 		if (baseDir == null) {
 			throw new NullPointerException("To write to files, baseDir must not be null");
 		}
-		if (urls.isEmpty() && (mapCount > 0 || !allowEmptySitemap)) return;
+		if (appender != null) appender.adoptSingle();
+		List<U> urls = shard.urls;
+		if (urls.isEmpty() && (shard.mapCount > 0 || !allowEmptySitemap)) return;
+		if (appender != null && appender.hasTarget()) {
+			if (appendSiteMap(urls)) return;
+			// too big to append to; start a new sitemap instead
+			shard.mapCount++;
+		}
 		String fileNamePrefix;
-		if (mapCount > 0) {
-			fileNamePrefix = this.fileNamePrefix + mapCount;
+		if (shard.mapCount > 0) {
+			fileNamePrefix = shard.fileNamePrefix + shard.separator + shard.mapCount;
 		} else {
-			fileNamePrefix = this.fileNamePrefix;
+			fileNamePrefix = shard.fileNamePrefix;
 		}
 		File outFile = new File(baseDir, fileNamePrefix+fileNameSuffix);
-		outFiles.add(outFile);
+		boolean validate = (autoValidate || autoValidateStructure) && validationPolicy.shouldValidate(outFiles.size(), last);
+		// a content-addressed sitemap is renamed once its hash is known
+		File writeFile = contentAddressed ? new File(baseDir, outFile.getName() + ".tmp") : outFile;
+		long start = System.nanoTime();
 		try {
-			OutputStreamWriter out;
-			if (gzip) {
-				FileOutputStream fileStream = new FileOutputStream(outFile);
-				GZIPOutputStream gzipStream = new GZIPOutputStream(fileStream);
-				out = new OutputStreamWriter(gzipStream, Charset.forName("UTF-8").newEncoder());
-			} else {
-				out = new OutputStreamWriter(new FileOutputStream(outFile), Charset.forName("UTF-8").newEncoder());
-			}
+			ChecksumOutputStream fileStream = new ChecksumOutputStream(new FileOutputStream(writeFile));
+			OutputStream out = fileStream;
+			out = compress(out);
 			
-			writeSiteMap(out);
-			if (autoValidate) SitemapValidator.validateWebSitemap(outFile);
+			if (validate) {
+				if (validator == null) validator = new BackgroundValidator(validationThreads, autoValidate && autoValidateStructure ? 2 : 1);
+				if (autoValidate) out = validator.validate(outFile, out, SitemapValidator.webSitemapValidators());
+				if (autoValidateStructure) {
+					out = validator.validate(outFile, out, new SitemapStructureValidator(baseUrl, SitemapValidator.MAX_SITEMAP_BYTES));
+				}
+			}
+			MessageDigest digest = null;
+			if (contentAddressed) out = new DigestOutputStream(out, digest = sha256());
+			CountingOutputStream xml = gzip ? new CountingOutputStream(out) : null;
+			long[] offsets = locator == null ? null : new long[urls.size()];
+			writeSiteMap(xml == null ? out : xml, urls, offsets);
+			if (digest != null) {
+				outFile = new File(baseDir, fileNamePrefix + "-" + hex(digest.digest(), 8) + fileNameSuffix);
+				Files.move(writeFile.toPath(), outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			outFiles.add(outFile);
+			if (append) appender.wrote(shard.mapCount);
+			if (locator != null) {
+				renderedFiles.add(outFile.getName());
+				locate(outFile, urls, offsets, 0);
+			}
+			long bytes = fileStream.getCount();
+			results.add(new SitemapResult(outFile, urls.size(), xml == null ? bytes : xml.count, bytes,
+					fileStream.getCrc32c(), fileStream.getSha256(), maxLastMod(urls), System.nanoTime() - start));
 		} catch (IOException e) {
 			throw new RuntimeException("Problem writing sitemap file " + outFile, e);
-		} catch (SAXException e) {
-			throw new RuntimeException("Sitemap file failed to validate (bug?)", e);
 		}
 	}
 	
-	private void writeSiteMap(OutputStreamWriter out) throws IOException {
-		StringBuilder sb = new StringBuilder();
-		writeSiteMapAsString(sb, urls);
-		out.write(sb.toString());
-		out.close();
+	/** Appends URLs to the sitemap the appender has, unless that would make it too big */
+	private boolean appendSiteMap(List<U> urls) {
+		long start = System.nanoTime();
+		ByteArrayOutputStream entries = new ByteArrayOutputStream();
+		Utf8XmlSink sink = new Utf8XmlSink(entries, compact);
+		long[] offsets = locator == null ? null : new long[urls.size()];
+		try {
+			writeUrls(sink, urls, offsets, dateFormat);
+			sink.flush();
+		} catch (IOException e) {
+			throw new RuntimeException("Problem rendering the URLs to append", e);
+		}
+		long entriesOffset = appender.getEntriesOffset();
+		SitemapResult result = appender.append(entries.toByteArray(), urls.size(), maxLastMod(urls), start);
+		if (result == null) return false;
+		outFiles.add(result.getFile());
+		if (locator != null) locate(result.getFile(), urls, offsets, entriesOffset);
+		results.add(result);
+		return true;
+	}
+	
+	private void locate(File file, List<U> urls, long[] offsets, long base) {
+		int sitemap = locator.file(file.getName());
+		for (int i = 0; i < offsets.length; i++) {
+			locator.add(urls.get(i).getUrl().toString(), sitemap, base + offsets[i]);
+		}
+	}
+	
+	private static Date maxLastMod(List<? extends ISitemapUrl> urls) {
+		Date max = null;
+		for (ISitemapUrl url : urls) {
+			Date lastMod = url.getLastMod();
+			if (lastMod != null && (max == null || lastMod.after(max))) max = lastMod;
+		}
+		return max;
+	}
+	
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	/** The first bytes of the hash, in hexadecimal */
+	private static String hex(byte[] hash, int bytes) {
+		return SitemapResult.hex(hash, bytes);
+	}
+	
+	/** Counts the XML on its way into the gzip stream */
+	private static final class CountingOutputStream extends FilterOutputStream {
+		long count;
+		
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+		
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+	
+	private void writeSiteMap(OutputStream out, List<U> urls, long[] offsets) throws IOException {
+		try {
+			XmlSink sink = new Utf8XmlSink(out, compact);
+			writeSiteMap(sink, urls, offsets, dateFormat);
+			sink.flush();
+		} finally {
+			out.close();
+		}
 	}
 	
 }
@@ -1,9 +1,9 @@
 package com.redfin.sitemapgenerator;
 
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -25,6 +25,15 @@ public class SitemapIndexGenerator {
 	private final W3CDateFormat dateFormat;
 	private final Date defaultLastMod;
 	private final boolean autoValidate;
+	private final boolean compact;
+	private static final XmlFragment XML_DECLARATION = XmlFragment.of("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+	private static final XmlFragment SITEMAPINDEX_OPEN = XmlFragment.of("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+	private static final XmlFragment SITEMAP_OPEN = XmlFragment.of("  <sitemap>\n");
+	private static final XmlFragment SITEMAP_CLOSE = XmlFragment.of("  </sitemap>\n");
+	private static final XmlFragment LOC_OPEN = XmlFragment.of("    <loc>");
+	private static final XmlFragment LOC_CLOSE = XmlFragment.of("</loc>\n");
+	private static final XmlFragment LASTMOD_OPEN = XmlFragment.of("    <lastmod>");
+	private static final XmlFragment LASTMOD_CLOSE = XmlFragment.of("</lastmod>\n");
 	/** Maximum 50,000 sitemaps per index allowed */
 	public static final int MAX_SITEMAPS_PER_INDEX = 50000;
 	
@@ -37,6 +46,7 @@ public class SitemapIndexGenerator {
 		private int maxUrls = MAX_SITEMAPS_PER_INDEX;
 		private Date defaultLastMod = new Date();
 		private boolean autoValidate = false;
+		private boolean compact = false;
 		// TODO GZIP?  Is that legal for a sitemap index?
 
 		/**Configures the generator with a base URL and destination to write the sitemap index file.
@@ -103,6 +113,15 @@ public class SitemapIndexGenerator {
 			return this;
 		}
 		
+		/**
+		 * Write compact XML, without indentation or newlines between elements.
+		 * By default, the output is indented.
+		 */
+		public Options compact(boolean compact) {
+			this.compact = compact;
+			return this;
+		}
+		
 		/** Constructs a sitemap index generator configured with the options you specified */
 		public SitemapIndexGenerator build() {
 			return new SitemapIndexGenerator(this);
@@ -137,6 +156,7 @@ public class SitemapIndexGenerator {
 		this.dateFormat = dateFormat;
 		this.defaultLastMod = options.defaultLastMod;
 		this.autoValidate = options.autoValidate;
+		this.compact = options.compact;
 	}
 	
 	/** Adds a single sitemap to the index */
@@ -224,9 +244,11 @@ public class SitemapIndexGenerator {
 		if (!allowEmptyIndex && urls.isEmpty()) throw new RuntimeException("No URLs added, sitemap index would be empty; you must add some URLs with addUrls");
 		try {
 			// TODO gzip? is that legal for a sitemap index?
-			FileWriter out = new FileWriter(outFile);
+			OutputStream out = new FileOutputStream(outFile);
+			ValidatingOutputStream validator = null;
+			if (autoValidate) out = validator = new ValidatingOutputStream(out, SitemapValidator.sitemapIndexValidators());
 			writeSiteMap(out);
-			if (autoValidate) SitemapValidator.validateSitemapIndex(outFile);
+			if (validator != null) validator.finish();
 		} catch (IOException e) {
 			throw new RuntimeException("Problem writing sitemap index file " + outFile, e);
 		} catch (SAXException e) {
@@ -234,27 +256,47 @@ public class SitemapIndexGenerator {
 		}
 	}
 	
-	private void writeSiteMap(OutputStreamWriter out) throws IOException {
-		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"); 
-		out.write("<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+	/** Writes out the sitemap index to a stream, e.g. an HTTP response, rather than to the file
+	 * 
+	 * @param out where to write the index; it's not closed
+	 */
+	public void write(OutputStream out) throws IOException {
+		if (!allowEmptyIndex && urls.isEmpty()) throw new RuntimeException("No URLs added, sitemap index would be empty; you must add some URLs with addUrls");
+		XmlSink sink = new Utf8XmlSink(out, compact);
+		writeSiteMap(sink);
+		sink.flush();
+	}
+	
+	private void writeSiteMap(OutputStream out) throws IOException {
+		try {
+			XmlSink sink = new Utf8XmlSink(out, compact);
+			writeSiteMap(sink);
+			sink.flush();
+		} finally {
+			out.close();
+		}
+	}
+	
+	private void writeSiteMap(XmlSink out) throws IOException {
+		out.append(XML_DECLARATION); 
+		out.append(SITEMAPINDEX_OPEN);
 		for (SitemapIndexUrl url : urls) {
-			out.write("  <sitemap>\n");
-			out.write("    <loc>");
-			out.write(UrlUtils.escapeXml(url.url.toString()));
-			out.write("</loc>\n");
+			out.append(SITEMAP_OPEN);
+			out.append(LOC_OPEN);
+			out.text(url.url.toString());
+			out.append(LOC_CLOSE);
 			Date lastMod = url.lastMod;
 			
 			if (lastMod == null) lastMod = defaultLastMod;
 			
 			if (lastMod != null) {
-				out.write("    <lastmod>");
-				out.write(dateFormat.format(lastMod));
-				out.write("</lastmod>\n");
+				out.append(LASTMOD_OPEN);
+				out.append(dateFormat.format(lastMod));
+				out.append(LASTMOD_CLOSE);
 			}
-			out.write("  </sitemap>\n");
+			out.append(SITEMAP_CLOSE);
 		}
-		out.write("</sitemapindex>");
-		out.close();
+		out.append("</sitemapindex>");
 	}
 
 }
@@ -32,4 +32,9 @@ public class SitemapIndexUrl {
 	public SitemapIndexUrl(String url) throws MalformedURLException {
 		this(new URL(url));
 	}
+	
+	/** Retrieves the url of the sitemap */
+	public URL getUrl() { return url; }
+	/** Retrieves the lastMod, or null if none was specified */
+	public Date getLastMod() { return lastMod; }
 }
@@ -0,0 +1,336 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds which sitemap holds a URL, and where, from the locator file a generator writes next to its sitemaps with
+ * {@link AbstractSitemapGeneratorOptions#writeLocator(boolean)}.  The file maps a 64-bit fingerprint of each URL to
+ * its sitemap and to the offset of its &lt;url&gt; element in the uncompressed XML, sorted by fingerprint, and is
+ * memory-mapped, so a lookup is a binary search that only touches a few pages.  Two different URLs have the same
+ * fingerprint with negligible probability; {@link SitemapGenerator#updateUrls(Iterable, Iterable)} checks the
+ * sitemap anyway.
+ *
+ * <pre>
+ * SitemapLocator locator = SitemapLocator.open(new File(dir, "sitemap_locator.bin"));
+ * SitemapLocator.Location location = locator.find("http://www.example.com/homes/123");
+ * if (location != null) System.out.println(location.getFile() + " at byte " + location.getOffset());
+ * </pre>
+ */
+public final class SitemapLocator {
+	private static final int MAGIC = 0x534d4c31; // "SML1"
+	private static final int RECORD_BYTES = 16;
+
+	private final File dir;
+	private final List<String> fileNames;
+	private final ByteBuffer records;
+	private final int size;
+
+	/** Where a URL is */
+	public static final class Location {
+		private final File file;
+		private final int sitemap;
+		private final long offset;
+
+		Location(File file, int sitemap, long offset) {
+			this.file = file;
+			this.sitemap = sitemap;
+			this.offset = offset;
+		}
+
+		/** The sitemap file */
+		public File getFile() { return file; }
+		/** The position of the sitemap in {@link SitemapLocator#getFileNames()} */
+		public int getSitemap() { return sitemap; }
+		/** The offset of the URL's &lt;url&gt; element (with its indentation) in the uncompressed sitemap */
+		public long getOffset() { return offset; }
+
+		@Override
+		public String toString() {
+			return file.getName() + "@" + offset;
+		}
+	}
+
+	private SitemapLocator(File dir, List<String> fileNames, ByteBuffer records, int size) {
+		this.dir = dir;
+		this.fileNames = fileNames;
+		this.records = records;
+		this.size = size;
+	}
+
+	/** Memory-maps a locator file; the mapping lasts until the locator is garbage collected */
+	public static SitemapLocator open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return parse(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads a locator file into memory, without mapping it, so the file can be replaced while the locator is in
+	 * use (a mapped file can't be, on Windows)
+	 */
+	static SitemapLocator read(File file) throws IOException {
+		return parse(file, ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+	}
+
+	private static SitemapLocator parse(File file, ByteBuffer buffer) throws IOException {
+		if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) throw new IOException("Not a sitemap locator: " + file);
+		int files = buffer.getInt();
+		List<String> fileNames = new ArrayList<String>(files);
+		for (int i = 0; i < files; i++) {
+			byte[] name = new byte[buffer.getShort() & 0xffff];
+			buffer.get(name);
+			fileNames.add(new String(name, StandardCharsets.UTF_8));
+		}
+		int size = buffer.getInt();
+		if (buffer.remaining() != (long) size * RECORD_BYTES) throw new IOException("Truncated sitemap locator: " + file);
+		return new SitemapLocator(file.getAbsoluteFile().getParentFile(), Collections.unmodifiableList(fileNames), buffer.slice(), size);
+	}
+
+	/** The 64-bit fingerprint of a URL */
+	static long fingerprint(String url) {
+		return HyperLogLog.hash(url);
+	}
+
+	/** Finds a URL, or returns null if it's not in any sitemap */
+	public Location find(URL url) {
+		return find(url.toString());
+	}
+
+	/** Finds a URL, or returns null if it's not in any sitemap */
+	public Location find(String url) {
+		long fingerprint = fingerprint(url);
+		int low = 0, high = size - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			long found = getFingerprint(mid);
+			if (found < fingerprint) {
+				low = mid + 1;
+			} else if (found > fingerprint) {
+				high = mid - 1;
+			} else {
+				return getLocation(mid);
+			}
+		}
+		return null;
+	}
+
+	/** How many URLs there are */
+	public int size() {
+		return size;
+	}
+
+	/** The names of the sitemap files, which are in the same directory as the locator */
+	public List<String> getFileNames() {
+		return fileNames;
+	}
+
+	private long getFingerprint(int record) {
+		return records.getLong(record * RECORD_BYTES);
+	}
+
+	private Location getLocation(int record) {
+		int sitemap = records.getInt(record * RECORD_BYTES + 8);
+		long offset = records.getInt(record * RECORD_BYTES + 12) & 0xffffffffL;
+		return new Location(new File(dir, fileNames.get(sitemap)), sitemap, offset);
+	}
+
+	private static final byte[] URL_OPEN = "<url>".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] URL_CLOSE = "</url>".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] LOC_OPEN = "<loc>".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] LOC_CLOSE = "</loc>".getBytes(StandardCharsets.UTF_8);
+
+	/**
+	 * Where the &lt;url&gt; element that starts at an offset (with its indentation) ends, including its line break,
+	 * or -1 if there's no element for the URL there
+	 */
+	static int entryEnd(byte[] xml, int start, String url) {
+		int open = start;
+		while (open < xml.length && (xml[open] == ' ' || xml[open] == '\t')) open++;
+		if (!startsWith(xml, open, URL_OPEN)) return -1;
+		int close = indexOf(xml, URL_CLOSE, open);
+		if (close < 0) return -1;
+		int loc = indexOf(xml, LOC_OPEN, open);
+		if (loc < 0 || loc > close || !startsWith(xml, loc + LOC_OPEN.length, (escape(url) + "</loc>").getBytes(StandardCharsets.UTF_8))) {
+			return -1;
+		}
+		int end = close + URL_CLOSE.length;
+		if (end < xml.length && xml[end] == '\n') end++;
+		return end;
+	}
+
+	/** Adds a record for each &lt;url&gt; element of a sitemap */
+	static void addEntries(Builder builder, int sitemap, byte[] xml) {
+		for (int open = indexOf(xml, URL_OPEN, 0); open >= 0; open = indexOf(xml, URL_OPEN, open + 1)) {
+			int start = open;
+			while (start > 0 && (xml[start - 1] == ' ' || xml[start - 1] == '\t')) start--;
+			int loc = indexOf(xml, LOC_OPEN, open) + LOC_OPEN.length;
+			int end = indexOf(xml, LOC_CLOSE, loc);
+			String url = unescape(new String(xml, loc, end - loc, StandardCharsets.UTF_8));
+			builder.add(url, sitemap, start);
+		}
+	}
+
+	private static boolean startsWith(byte[] b, int offset, byte[] prefix) {
+		if (offset + prefix.length > b.length) return false;
+		for (int i = 0; i < prefix.length; i++) {
+			if (b[offset + i] != prefix[i]) return false;
+		}
+		return true;
+	}
+
+	private static int indexOf(byte[] b, byte[] target, int from) {
+		for (int i = from; i <= b.length - target.length; i++) {
+			if (b[i] == target[0] && startsWith(b, i, target)) return i;
+		}
+		return -1;
+	}
+
+	private static String escape(String text) {
+		StringBuilder sb = new StringBuilder(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			String entity = XmlSink.entity(text.charAt(i));
+			if (entity == null) {
+				sb.append(text.charAt(i));
+			} else {
+				sb.append(entity);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String unescape(String xml) {
+		if (xml.indexOf('&') < 0) return xml;
+		return xml.replace("&lt;", "<").replace("&gt;", ">").replace("&quot;", "\"").replace("&apos;", "'").replace("&amp;", "&");
+	}
+
+	/** Collects the records of a locator as it's written */
+	static final class Builder {
+		private final List<String> fileNames = new ArrayList<String>();
+		private final Map<String, Integer> fileIndexes = new HashMap<String, Integer>();
+		private long[] fingerprints = new long[1024];
+		private int[] sitemaps = new int[1024];
+		private int[] offsets = new int[1024];
+		private int size;
+
+		/** The number of a sitemap file, adding it if it's new */
+		int file(String fileName) {
+			Integer index = fileIndexes.get(fileName);
+			if (index == null) {
+				index = fileNames.size();
+				fileNames.add(fileName);
+				fileIndexes.put(fileName, index);
+			}
+			return index;
+		}
+
+		void add(String url, int sitemap, long offset) {
+			add(fingerprint(url), sitemap, offset);
+		}
+
+		void add(long fingerprint, int sitemap, long offset) {
+			if (offset > 0xffffffffL) throw new IllegalArgumentException("Sitemap too big to locate URLs in: " + fileNames.get(sitemap));
+			if (size == fingerprints.length) {
+				fingerprints = Arrays.copyOf(fingerprints, size * 2);
+				sitemaps = Arrays.copyOf(sitemaps, size * 2);
+				offsets = Arrays.copyOf(offsets, size * 2);
+			}
+			fingerprints[size] = fingerprint;
+			sitemaps[size] = sitemap;
+			offsets[size] = (int) offset;
+			size++;
+		}
+
+		/** Adds the records of an existing locator for the given sitemap files */
+		void addFrom(SitemapLocator locator, Set<String> fileNames) {
+			Map<String, String> same = new HashMap<String, String>();
+			for (String fileName : fileNames) same.put(fileName, fileName);
+			addFrom(locator, same);
+		}
+
+		/** Adds the records of an existing locator for the given sitemap files, which may have been renamed
+		 *
+		 * @param fileNames the name of each file in the locator to the name it has now
+		 */
+		void addFrom(SitemapLocator locator, Map<String, String> fileNames) {
+			int[] mapped = new int[locator.fileNames.size()];
+			for (int i = 0; i < mapped.length; i++) {
+				String fileName = fileNames.get(locator.fileNames.get(i));
+				mapped[i] = fileName != null ? file(fileName) : -1;
+			}
+			for (int i = 0; i < locator.size; i++) {
+				int sitemap = mapped[locator.records.getInt(i * RECORD_BYTES + 8)];
+				if (sitemap >= 0) {
+					add(locator.getFingerprint(i), sitemap, locator.records.getInt(i * RECORD_BYTES + 12) & 0xffffffffL);
+				}
+			}
+		}
+
+		/** The records in order of fingerprint; a bottom-up merge sort, to avoid boxing millions of indexes */
+		private int[] sortByFingerprint() {
+			int[] order = new int[size];
+			for (int i = 0; i < size; i++) order[i] = i;
+			int[] merged = new int[size];
+			for (int width = 1; width < size; width *= 2) {
+				for (int low = 0; low < size; low += 2 * width) {
+					int mid = Math.min(low + width, size), high = Math.min(low + 2 * width, size);
+					int i = low, j = mid, k = low;
+					while (i < mid && j < high) {
+						merged[k++] = fingerprints[order[j]] < fingerprints[order[i]] ? order[j++] : order[i++];
+					}
+					while (i < mid) merged[k++] = order[i++];
+					while (j < high) merged[k++] = order[j++];
+				}
+				int[] swap = order;
+				order = merged;
+				merged = swap;
+			}
+			return order;
+		}
+
+		/** Sorts the records by fingerprint and writes them, replacing the file atomically */
+		void write(File file) throws IOException {
+			int[] order = sortByFingerprint();
+			File tmp = new File(file.getPath() + ".tmp");
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(fileNames.size());
+				for (String name : fileNames) {
+					byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+					out.writeShort(bytes.length);
+					out.write(bytes);
+				}
+				out.writeInt(size);
+				for (int i : order) {
+					out.writeLong(fingerprints[i]);
+					out.writeInt(sitemaps[i]);
+					out.writeInt(offsets[i]);
+				}
+			} finally {
+				out.close();
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
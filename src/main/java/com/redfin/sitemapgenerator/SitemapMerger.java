@@ -0,0 +1,94 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Merges several sets of existing sitemaps into one.  Every input file (sitemap or sitemap index, gzipped or not)
+ * is read in parallel, and the URLs are spilled to temporary files, partitioned by a hash of their location; the
+ * partitions are then deduplicated one at a time, keeping the entry with the latest lastmod for each location,
+ * and fed into a generator, which cuts fresh sitemaps as it goes.  Only one partition is ever held in memory, so
+ * with enough partitions there's no limit to the number of URLs you can merge.
+ *
+ * <p>Only the standard fields (loc, lastmod, changefreq and priority) are merged; extensions are dropped.</p>
+ *
+ * <pre>
+ * WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com", outDir).build();
+ * new SitemapMerger.Options().threads(4).build()
+ *     .add(new File("legacy1/sitemap_index.xml"), new File("legacy2/sitemap.xml.gz"))
+ *     .mergeInto(wsg);
+ * wsg.write();
+ * wsg.writeSitemapsWithIndex();
+ * </pre>
+ */
+public class SitemapMerger {
+	private final int threads;
+	private final int partitions;
+	private final File tempDir;
+	private final W3CDateFormat dateFormat;
+	private final List<File> inputs = new ArrayList<File>();
+
+	/** Options to configure a merge */
+	public static class Options extends AbstractSitemapReadingOptions.Spilling<Options> {
+		/** Constructs a merger configured with the options you specified */
+		public SitemapMerger build() {
+			return new SitemapMerger(this);
+		}
+	}
+
+	/** Configures a merger with the default options */
+	public SitemapMerger() {
+		this(new Options());
+	}
+
+	SitemapMerger(Options options) {
+		threads = options.threads;
+		partitions = options.partitions;
+		tempDir = options.tempDir;
+		dateFormat = options.dateFormat;
+	}
+
+	/**
+	 * Adds sitemaps or sitemap indexes to merge.  The sitemaps of an index are looked up next to the index file,
+	 * by the last segment of their URL.
+	 */
+	public SitemapMerger add(File... files) {
+		inputs.addAll(Arrays.asList(files));
+		return this;
+	}
+
+	/** Adds sitemaps or sitemap indexes to merge
+	 * @see #add(File...) */
+	public SitemapMerger add(Iterable<File> files) {
+		for (File file : files) inputs.add(file);
+		return this;
+	}
+
+	/**
+	 * Adds every distinct URL of the input files to the generator; you still have to call
+	 * {@link WebSitemapGenerator#write()} afterwards.  Within a partition, URLs are added in order of location.
+	 *
+	 * @return the number of distinct URLs
+	 * @throws IOException if an input file can't be read, or isn't a sitemap
+	 */
+	public int mergeInto(WebSitemapGenerator generator) throws IOException {
+		List<File> sitemaps = RecordSpill.expandIndexes(inputs);
+		RecordSpill spill = new RecordSpill("sitemap-merge", partitions, tempDir);
+		try {
+			spill.spill(sitemaps, threads, dateFormat);
+			int count = 0;
+			for (int i = 0; i < partitions; i++) {
+				for (SitemapUrlRecord record : spill.deduplicate(i)) {
+					generator.addUrl(record.toWebSitemapUrl());
+					count++;
+				}
+			}
+			return count;
+		} finally {
+			spill.close();
+		}
+	}
+}
@@ -0,0 +1,15 @@
+package com.redfin.sitemapgenerator;
+
+/** The XML namespaces of sitemaps and of the Google extensions this library generates */
+final class SitemapNamespaces {
+	static final String SITEMAP = "http://www.sitemaps.org/schemas/sitemap/0.9";
+	static final String IMAGE = "http://www.google.com/schemas/sitemap-image/1.1";
+	static final String VIDEO = "http://www.google.com/schemas/sitemap-video/1.1";
+	static final String NEWS = "http://www.google.com/schemas/sitemap-news/0.9";
+	static final String MOBILE = "http://www.google.com/schemas/sitemap-mobile/1.0";
+	static final String GEO = "http://www.google.com/geo/schemas/sitemap/1.0";
+	static final String CODE = "http://www.google.com/codesearch/schemas/sitemap/1.0";
+	static final String XHTML = "http://www.w3.org/1999/xhtml";
+
+	private SitemapNamespaces() {}
+}
@@ -0,0 +1,293 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Publishes sets of sitemaps atomically, so nobody ever sees an index that refers to half-written or stale
+ * sitemaps.  Each run writes into a new version directory; once it's complete, {@link #publish(File)} switches
+ * the "current" symbolic link (and the CURRENT pointer file) over to it, by renaming a new link or file over the
+ * old one.  Serve the sitemaps from root/current, or from {@link #getCurrent()}.
+ *
+ * <p>The last few versions are kept, so you can {@link #rollback()} instantly; older ones, and versions that were
+ * never published, are deleted in the background.  Only one publisher should manage a root directory.</p>
+ *
+ * <pre>
+ * SitemapPublisher publisher = new SitemapPublisher.Options(new File("/var/www/sitemaps")).keep(3).build();
+ * File dir = publisher.newVersion();
+ * WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com/sitemaps/current/", dir).build();
+ * ...
+ * wsg.write();
+ * wsg.writeSitemapsWithIndex();
+ * publisher.publish(dir);
+ * </pre>
+ */
+public class SitemapPublisher {
+	/** The name of the symbolic link to the current version */
+	public static final String CURRENT_LINK = "current";
+	/** The name of the file that holds the name of the current version */
+	public static final String CURRENT_FILE = "CURRENT";
+	private static final Pattern VERSION = Pattern.compile("v(\\d{6,})(\\.staging)?");
+	private static final String STAGING = ".staging";
+
+	private final File root;
+	private final int keep;
+	private final boolean symlink;
+	private final Executor executor;
+	private final Set<String> staging = new HashSet<String>();
+	private boolean symlinkFailed;
+	private volatile IOException garbageCollectionFailure;
+
+	/** Options to configure a publisher */
+	public static class Options {
+		private final File root;
+		private int keep = 3;
+		private boolean symlink = true;
+		private Executor executor;
+
+		/** @param root the directory the versions go in */
+		public Options(File root) {
+			this.root = root;
+		}
+
+		/** How many published versions to keep, including the current one; the default is 3 */
+		public Options keep(int keep) {
+			if (keep < 1) throw new IllegalArgumentException("keep must be at least 1: " + keep);
+			this.keep = keep;
+			return this;
+		}
+
+		/** Whether to maintain the "current" symbolic link as well as the pointer file; the default is true, but
+		 * only the pointer file is maintained where symbolic links aren't supported */
+		public Options symlink(boolean symlink) {
+			this.symlink = symlink;
+			return this;
+		}
+
+		/**
+		 * Runs the garbage collection of old versions; by default, a daemon thread of the publisher's own.  A failure
+		 * is thrown to the executor, as an {@link UncheckedIOException}, and kept for
+		 * {@link SitemapPublisher#getGarbageCollectionFailure()}.
+		 */
+		public Options executor(Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		/** Constructs a publisher configured with the options you specified */
+		public SitemapPublisher build() {
+			return new SitemapPublisher(this);
+		}
+	}
+
+	/** Configures a publisher with the default options */
+	public SitemapPublisher(File root) {
+		this(new Options(root));
+	}
+
+	SitemapPublisher(Options options) {
+		root = options.root;
+		keep = options.keep;
+		symlink = options.symlink;
+		Executor executor = options.executor;
+		if (executor == null) {
+			executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "sitemap-publisher-gc");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		this.executor = executor;
+	}
+
+	/** Creates a new, empty version directory to write a set of sitemaps into */
+	public synchronized File newVersion() throws IOException {
+		if (!root.isDirectory() && !root.mkdirs()) throw new IOException("Can't create " + root);
+		long next = 1;
+		for (String name : list()) {
+			Matcher matcher = VERSION.matcher(name);
+			if (matcher.matches()) next = Math.max(next, Long.parseLong(matcher.group(1)) + 1);
+		}
+		String name = String.format("v%06d", next) + STAGING;
+		File dir = new File(root, name);
+		if (!dir.mkdir()) throw new IOException("Can't create " + dir);
+		staging.add(name);
+		return dir;
+	}
+
+	/**
+	 * Makes a complete version the current one
+	 *
+	 * @param version a directory from {@link #newVersion()}, or a version that was published before
+	 * @return the published version directory (a new version is renamed when it's published)
+	 */
+	public synchronized File publish(File version) throws IOException {
+		String name = version.getName();
+		if (!root.getCanonicalFile().equals(version.getCanonicalFile().getParentFile()) || !VERSION.matcher(name).matches()) {
+			throw new IllegalArgumentException("Not a version of " + root + ": " + version);
+		}
+		if (name.endsWith(STAGING)) {
+			String published = name.substring(0, name.length() - STAGING.length());
+			File target = new File(root, published);
+			Files.move(version.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			staging.remove(name);
+			name = published;
+			version = target;
+		} else if (!version.isDirectory()) {
+			throw new IOException("No such version: " + version);
+		}
+		point(name);
+		collectGarbageInBackground();
+		return version;
+	}
+
+	/** Deletes a new version that won't be published, e.g. because the run failed */
+	public synchronized void discard(File version) {
+		if (!version.getName().endsWith(STAGING)) throw new IllegalArgumentException("Not a new version: " + version);
+		staging.remove(version.getName());
+		try {
+			delete(version);
+		} catch (IOException e) {
+			// it's no longer being written, so the garbage collection will try again
+		}
+	}
+
+	/** The current version directory, or null if nothing was published yet */
+	public File getCurrent() throws IOException {
+		File pointer = new File(root, CURRENT_FILE);
+		if (!pointer.isFile()) return null;
+		String name = new String(Files.readAllBytes(pointer.toPath()), StandardCharsets.UTF_8).trim();
+		return new File(root, name);
+	}
+
+	/** The published versions that are still there, oldest first */
+	public synchronized List<File> getVersions() {
+		List<String> names = new ArrayList<String>();
+		for (String name : list()) {
+			if (!name.endsWith(STAGING) && VERSION.matcher(name).matches()) names.add(name);
+		}
+		Collections.sort(names, VERSION_ORDER);
+		List<File> versions = new ArrayList<File>();
+		for (String name : names) {
+			versions.add(new File(root, name));
+		}
+		return versions;
+	}
+
+	/**
+	 * Goes back to the latest version before the current one
+	 *
+	 * @return the version that's now current
+	 * @throws IllegalStateException if there's no earlier version left
+	 */
+	public synchronized File rollback() throws IOException {
+		File current = getCurrent();
+		File previous = null;
+		for (File version : getVersions()) {
+			if (current != null && VERSION_ORDER.compare(version.getName(), current.getName()) >= 0) break;
+			previous = version;
+		}
+		if (previous == null) throw new IllegalStateException("No version to roll back to before " + current);
+		point(previous.getName());
+		return previous;
+	}
+
+	/** Deletes the versions that aren't kept, and the new versions that this publisher isn't writing */
+	public synchronized void collectGarbage() throws IOException {
+		File current = getCurrent();
+		List<File> versions = getVersions();
+		for (int i = 0; i < versions.size() - keep; i++) {
+			File version = versions.get(i);
+			if (!version.equals(current)) delete(version);
+		}
+		for (String name : list()) {
+			Matcher matcher = VERSION.matcher(name);
+			if (matcher.matches() && matcher.group(2) != null && !staging.contains(name)) delete(new File(root, name));
+		}
+	}
+
+	private void collectGarbageInBackground() {
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					collectGarbage();
+					garbageCollectionFailure = null;
+				} catch (IOException e) {
+					// we'll try again after the next publish, but the versions pile up until then
+					garbageCollectionFailure = e;
+					throw new UncheckedIOException("Problem collecting the old versions of " + root, e);
+				}
+			}
+		});
+	}
+
+	/** Why the last garbage collection in the background failed, or null if it didn't */
+	public IOException getGarbageCollectionFailure() {
+		return garbageCollectionFailure;
+	}
+
+	/** Switches the pointer file, and the link, to the version */
+	private void point(String name) throws IOException {
+		Path pointer = new File(root, CURRENT_FILE).toPath();
+		Path tmp = new File(root, CURRENT_FILE + ".tmp").toPath();
+		Files.write(tmp, name.getBytes(StandardCharsets.UTF_8));
+		Files.move(tmp, pointer, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		if (!symlink || symlinkFailed) return;
+		Path link = new File(root, CURRENT_LINK).toPath();
+		Path tmpLink = new File(root, CURRENT_LINK + ".tmp").toPath();
+		try {
+			Files.deleteIfExists(tmpLink);
+			Files.createSymbolicLink(tmpLink, new File(name).toPath());
+		} catch (UnsupportedOperationException e) {
+			symlinkFailed = true;
+			return;
+		} catch (FileSystemException e) {
+			// e.g. Windows without the privilege to create links
+			symlinkFailed = true;
+			return;
+		}
+		Files.move(tmpLink, link, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	private String[] list() {
+		String[] names = root.list();
+		return names == null ? new String[0] : names;
+	}
+
+	private static void delete(File file) throws IOException {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) delete(child);
+		}
+		Files.deleteIfExists(file.toPath());
+	}
+
+	private static final Comparator<String> VERSION_ORDER = new Comparator<String>() {
+		public int compare(String a, String b) {
+			Matcher ma = VERSION.matcher(a);
+			Matcher mb = VERSION.matcher(b);
+			ma.matches();
+			mb.matches();
+			return Long.compare(Long.parseLong(ma.group(1)), Long.parseLong(mb.group(1)));
+		}
+	};
+}
@@ -0,0 +1,438 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads a sitemap or a sitemap index back, one entry at a time, so memory use doesn't depend on the size of the
+ * file.  Gzipped files are recognized by their content and unzipped on the fly.
+ *
+ * <p>Entries of a sitemap can be read as typed URLs with {@link #nextUrl()}: a {@link GoogleNewsSitemapUrl},
+ * {@link GoogleVideoSitemapUrl} or {@link GoogleImageSitemapUrl} if the entry has news, a video or an image
+ * (only the first video or image of an entry is kept), or else a {@link WebSitemapUrl}.  Entries of a sitemap
+ * index can be read with {@link #nextSitemap()}.  Either kind can be read in the compact {@link SitemapUrlRecord}
+ * form with {@link #nextRecord()}, which skips the extensions altogether.</p>
+ *
+ * <p>A reader isn't thread-safe, but readers don't share anything, so several files can be read in parallel,
+ * one reader per thread.</p>
+ *
+ * <pre>
+ * SitemapReader reader = SitemapReader.open(new File("sitemap1.xml.gz"));
+ * try {
+ *     for (WebSitemapUrl url = reader.nextUrl(); url != null; url = reader.nextUrl()) {
+ *         ...
+ *     }
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ */
+public final class SitemapReader implements Closeable {
+	private final InputStream in;
+	private final XMLStreamReader xml;
+	private final W3CDateFormat dateFormat;
+	private final boolean index;
+	private boolean done;
+
+	/** Opens a sitemap or sitemap index file, gzipped or not; dates without a time zone are in the default time zone */
+	public static SitemapReader open(File file) throws IOException {
+		return new SitemapReader(new FileInputStream(file), new W3CDateFormat(), file.toURI().toString());
+	}
+
+	/** Reads a sitemap or sitemap index from a stream, gzipped or not; dates without a time zone are in the default time zone */
+	public SitemapReader(InputStream in) throws IOException {
+		this(in, new W3CDateFormat(), null);
+	}
+
+	/**
+	 * Reads a sitemap or sitemap index from a stream, gzipped or not
+	 *
+	 * @param in the stream; closing the reader closes it
+	 * @param dateFormat parses the dates, typically in AUTO mode with the time zone of dates that don't specify one
+	 * @param systemId where the document comes from, for error messages; may be null
+	 */
+	public SitemapReader(InputStream in, W3CDateFormat dateFormat, String systemId) throws IOException {
+		this.dateFormat = dateFormat;
+		try {
+			this.in = unzip(in);
+			XMLInputFactory factory = XMLInputFactory.newInstance();
+			factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+			xml = systemId == null ? factory.createXMLStreamReader(this.in) : factory.createXMLStreamReader(systemId, this.in);
+			xml.nextTag();
+			if (!SitemapNamespaces.SITEMAP.equals(xml.getNamespaceURI())) {
+				throw new IOException("Not a sitemap: root element must be in the namespace " + SitemapNamespaces.SITEMAP);
+			}
+			if ("sitemapindex".equals(xml.getLocalName())) {
+				index = true;
+			} else if ("urlset".equals(xml.getLocalName())) {
+				index = false;
+			} else {
+				throw new IOException("Not a sitemap: root element must be urlset or sitemapindex, not " + xml.getLocalName());
+			}
+		} catch (XMLStreamException e) {
+			in.close();
+			throw new IOException(e);
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	private static InputStream unzip(InputStream in) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(in, 65536);
+		buffered.mark(2);
+		int magic = buffered.read() | (buffered.read() << 8);
+		buffered.reset();
+		if (magic == GZIPInputStream.GZIP_MAGIC) return new BufferedInputStream(new GZIPInputStream(buffered, 65536), 65536);
+		return buffered;
+	}
+
+	/** Whether this is a sitemap index, rather than a sitemap */
+	public boolean isSitemapIndex() {
+		return index;
+	}
+
+	/** Reads the next URL of a sitemap
+	 *
+	 * @return the URL, or null at the end of the sitemap
+	 * @throws IllegalStateException if this is a sitemap index
+	 */
+	public WebSitemapUrl nextUrl() throws IOException {
+		if (index) throw new IllegalStateException("This is a sitemap index; use nextSitemap()");
+		try {
+			if (!nextEntry("url")) return null;
+			return readUrl();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/** Reads the next sitemap of a sitemap index
+	 *
+	 * @return the sitemap, or null at the end of the index
+	 * @throws IllegalStateException if this is a sitemap, rather than an index
+	 */
+	public SitemapIndexUrl nextSitemap() throws IOException {
+		if (!index) throw new IllegalStateException("This is a sitemap, not an index; use nextUrl()");
+		SitemapUrlRecord record = nextRecord();
+		if (record == null) return null;
+		return new SitemapIndexUrl(record.getLoc(), record.getLastMod());
+	}
+
+	/** Reads the standard fields of the next entry, of a sitemap or a sitemap index, skipping any extensions
+	 *
+	 * @return the entry, or null at the end of the file
+	 */
+	public SitemapUrlRecord nextRecord() throws IOException {
+		try {
+			if (!nextEntry(index ? "sitemap" : "url")) return null;
+			String loc = null;
+			long lastMod = SitemapUrlRecord.NO_LAST_MOD;
+			ChangeFreq changeFreq = null;
+			double priority = Double.NaN;
+			while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				String name = xml.getLocalName();
+				if (!SitemapNamespaces.SITEMAP.equals(xml.getNamespaceURI())) {
+					skip();
+				} else if ("loc".equals(name)) {
+					loc = text();
+				} else if ("lastmod".equals(name)) {
+					lastMod = date(text()).getTime();
+				} else if ("changefreq".equals(name)) {
+					changeFreq = changeFreq(text());
+				} else if ("priority".equals(name)) {
+					priority = priority(text());
+				} else {
+					skip();
+				}
+			}
+			if (loc == null) throw error("Entry without a loc");
+			return new SitemapUrlRecord(loc, lastMod, changeFreq, priority);
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/** Moves to the start of the next entry, if there is one */
+	private boolean nextEntry(String name) throws XMLStreamException, IOException {
+		if (done) return false;
+		if (xml.nextTag() == XMLStreamConstants.END_ELEMENT) {
+			done = true;
+			return false;
+		}
+		if (!name.equals(xml.getLocalName()) || !SitemapNamespaces.SITEMAP.equals(xml.getNamespaceURI())) {
+			throw error("Expected " + name + " but found " + xml.getLocalName());
+		}
+		return true;
+	}
+
+	private WebSitemapUrl readUrl() throws XMLStreamException, IOException {
+		URL loc = null;
+		Date lastMod = null;
+		ChangeFreq changeFreq = null;
+		Double priority = null;
+		Video video = null;
+		Image image = null;
+		News news = null;
+		while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String namespace = xml.getNamespaceURI();
+			String name = xml.getLocalName();
+			if (SitemapNamespaces.SITEMAP.equals(namespace)) {
+				if ("loc".equals(name)) {
+					loc = url(text());
+				} else if ("lastmod".equals(name)) {
+					lastMod = date(text());
+				} else if ("changefreq".equals(name)) {
+					changeFreq = changeFreq(text());
+				} else if ("priority".equals(name)) {
+					priority = priority(text());
+				} else {
+					skip();
+				}
+			} else if (SitemapNamespaces.NEWS.equals(namespace) && "news".equals(name) && news == null) {
+				news = readNews();
+			} else if (SitemapNamespaces.VIDEO.equals(namespace) && "video".equals(name) && video == null) {
+				video = readVideo();
+			} else if (SitemapNamespaces.IMAGE.equals(namespace) && "image".equals(name) && image == null) {
+				image = readImage();
+			} else {
+				skip();
+			}
+		}
+		if (loc == null) throw error("URL without a loc");
+
+		// the options check the limits of the extensions, e.g. the length of a video title, by throwing
+		try {
+			if (news != null && news.publicationDate != null) {
+				GoogleNewsSitemapUrl.Options options = new GoogleNewsSitemapUrl.Options(loc, news.publicationDate);
+				if (news.keywords != null) options.keywords(news.keywords);
+				standard(options, lastMod, changeFreq, priority);
+				return new GoogleNewsSitemapUrl(options);
+			}
+			if (video != null && (video.contentUrl != null || video.playerUrl != null)) {
+				GoogleVideoSitemapUrl.Options options = video.toOptions(loc);
+				standard(options, lastMod, changeFreq, priority);
+				return new GoogleVideoSitemapUrl(options);
+			}
+			if (image != null && image.imageUrl != null) {
+				GoogleImageSitemapUrl.Options options = new GoogleImageSitemapUrl.Options(loc, image.imageUrl)
+					.caption(image.caption).geoLocation(image.geoLocation).title(image.title).licenseUrl(image.licenseUrl);
+				standard(options, lastMod, changeFreq, priority);
+				return new GoogleImageSitemapUrl(options);
+			}
+		} catch (RuntimeException e) {
+			IOException error = error("Invalid extension of " + loc + " (" + e.getMessage() + ")");
+			error.initCause(e);
+			throw error;
+		}
+		WebSitemapUrl.Options options = new WebSitemapUrl.Options(loc);
+		standard(options, lastMod, changeFreq, priority);
+		return new WebSitemapUrl(options);
+	}
+
+	private static void standard(AbstractSitemapUrlOptions<?, ?> options, Date lastMod, ChangeFreq changeFreq, Double priority) {
+		options.lastMod(lastMod).changeFreq(changeFreq);
+		if (priority != null) options.priority(priority);
+	}
+
+	private News readNews() throws XMLStreamException, IOException {
+		News news = new News();
+		while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = xml.getLocalName();
+			if (!SitemapNamespaces.NEWS.equals(xml.getNamespaceURI())) {
+				skip();
+			} else if ("publication_date".equals(name)) {
+				news.publicationDate = date(text());
+			} else if ("keywords".equals(name)) {
+				news.keywords = text();
+			} else {
+				skip();
+			}
+		}
+		return news;
+	}
+
+	private Image readImage() throws XMLStreamException, IOException {
+		Image image = new Image();
+		while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = xml.getLocalName();
+			if (!SitemapNamespaces.IMAGE.equals(xml.getNamespaceURI())) {
+				skip();
+			} else if ("loc".equals(name)) {
+				image.imageUrl = url(text());
+			} else if ("caption".equals(name)) {
+				image.caption = text();
+			} else if ("geo_location".equals(name)) {
+				image.geoLocation = text();
+			} else if ("title".equals(name)) {
+				image.title = text();
+			} else if ("license".equals(name)) {
+				image.licenseUrl = url(text());
+			} else {
+				skip();
+			}
+		}
+		return image;
+	}
+
+	private Video readVideo() throws XMLStreamException, IOException {
+		Video video = new Video();
+		while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String name = xml.getLocalName();
+			if (!SitemapNamespaces.VIDEO.equals(xml.getNamespaceURI())) {
+				skip();
+			} else if ("content_loc".equals(name)) {
+				video.contentUrl = url(text());
+			} else if ("player_loc".equals(name)) {
+				String allowEmbed = xml.getAttributeValue(null, "allow_embed");
+				video.allowEmbed = allowEmbed == null || yes(allowEmbed);
+				video.playerUrl = url(text());
+			} else if ("thumbnail_loc".equals(name)) {
+				video.thumbnailUrl = url(text());
+			} else if ("title".equals(name)) {
+				video.title = text();
+			} else if ("description".equals(name)) {
+				video.description = text();
+			} else if ("rating".equals(name)) {
+				video.rating = number(text());
+			} else if ("view_count".equals(name)) {
+				video.viewCount = (int) number(text());
+			} else if ("publication_date".equals(name)) {
+				video.publicationDate = date(text());
+			} else if ("tag".equals(name)) {
+				video.tags.add(text());
+			} else if ("category".equals(name)) {
+				video.category = text();
+			} else if ("family_friendly".equals(name)) {
+				video.familyFriendly = yes(text());
+			} else if ("duration".equals(name)) {
+				video.duration = (int) number(text());
+			} else {
+				skip();
+			}
+		}
+		return video;
+	}
+
+	private String text() throws XMLStreamException {
+		return xml.getElementText().trim();
+	}
+
+	/** Skips the current element, and everything in it */
+	private void skip() throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT) depth++;
+			else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+		}
+	}
+
+	/** Google uses "yes" and "no", but XML schema booleans are "true" and "false" */
+	private static boolean yes(String value) {
+		return "yes".equalsIgnoreCase(value) || "true".equals(value) || "1".equals(value);
+	}
+
+	private URL url(String url) throws IOException {
+		try {
+			return new URL(url);
+		} catch (MalformedURLException e) {
+			throw error("Invalid URL " + url);
+		}
+	}
+
+	private Date date(String date) throws IOException {
+		try {
+			return dateFormat.parse(date);
+		} catch (ParseException e) {
+			throw error("Invalid date " + date);
+		}
+	}
+
+	private ChangeFreq changeFreq(String changeFreq) throws IOException {
+		for (ChangeFreq value : ChangeFreq.values()) {
+			if (value.toString().equals(changeFreq)) return value;
+		}
+		throw error("Invalid changefreq " + changeFreq);
+	}
+
+	private double priority(String priority) throws IOException {
+		double value = number(priority);
+		if (value < 0.0 || value > 1.0) throw error("Priority must be between 0.0 and 1.0: " + priority);
+		return value;
+	}
+
+	private double number(String number) throws IOException {
+		try {
+			return Double.parseDouble(number);
+		} catch (NumberFormatException e) {
+			throw error("Invalid number " + number);
+		}
+	}
+
+	private IOException error(String message) {
+		return new IOException(message + " at line " + xml.getLocation().getLineNumber());
+	}
+
+	/** Closes the reader and the underlying stream */
+	public void close() throws IOException {
+		try {
+			xml.close();
+		} catch (XMLStreamException e) {
+			throw new IOException(e);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static class News {
+		Date publicationDate;
+		String keywords;
+	}
+
+	private static class Image {
+		URL imageUrl, licenseUrl;
+		String caption, geoLocation, title;
+	}
+
+	private static class Video {
+		URL contentUrl, playerUrl, thumbnailUrl;
+		boolean allowEmbed;
+		String title, description, category;
+		Double rating;
+		Integer viewCount, duration;
+		Date publicationDate;
+		Boolean familyFriendly;
+		final List<String> tags = new ArrayList<String>();
+
+		GoogleVideoSitemapUrl.Options toOptions(URL loc) {
+			GoogleVideoSitemapUrl.Options options = contentUrl != null ? new GoogleVideoSitemapUrl.Options(loc, contentUrl)
+					: new GoogleVideoSitemapUrl.Options(loc, playerUrl, allowEmbed);
+			if (contentUrl != null && playerUrl != null) options.playerUrl(playerUrl, allowEmbed);
+			options.thumbnailUrl(thumbnailUrl).title(title).description(description).rating(rating)
+				.publicationDate(publicationDate).category(category);
+			if (viewCount != null) options.viewCount(viewCount);
+			if (duration != null) options.durationInSeconds(duration);
+			if (familyFriendly != null) options.familyFriendly(familyFriendly);
+			if (!tags.isEmpty()) options.tags(tags);
+			return options;
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.File;
+import java.util.Date;
+
+/**
+ * What a generator wrote to one sitemap file, all measured as the file was written, so uploaders and HTTP layers
+ * don't need to read it back: see {@link WebSitemapGenerator#getSitemapResults()}.  The sizes and checksums are
+ * of the file as written, i.e. gzipped if the generator gzips.
+ */
+public final class SitemapResult {
+	private final File file;
+	private final int urls;
+	private final long uncompressedBytes;
+	private final long bytes;
+	private final long crc32c;
+	private final byte[] sha256;
+	private final Date maxLastMod;
+	private final long renderNanos;
+
+	SitemapResult(File file, int urls, long uncompressedBytes, long bytes, long crc32c, byte[] sha256, Date maxLastMod, long renderNanos) {
+		this.file = file;
+		this.urls = urls;
+		this.uncompressedBytes = uncompressedBytes;
+		this.bytes = bytes;
+		this.crc32c = crc32c;
+		this.sha256 = sha256;
+		this.maxLastMod = maxLastMod;
+		this.renderNanos = renderNanos;
+	}
+
+	/** The sitemap file */
+	public File getFile() { return file; }
+	/** How many URLs the sitemap has */
+	public int getUrls() { return urls; }
+	/** The size of the XML */
+	public long getUncompressedBytes() { return uncompressedBytes; }
+	/** The size of the file */
+	public long getBytes() { return bytes; }
+	/** The CRC-32C of the file, as an unsigned 32-bit value */
+	public long getCrc32c() { return crc32c; }
+	/** The SHA-256 of the file */
+	public byte[] getSha256() { return sha256.clone(); }
+	/** The SHA-256 of the file, in hexadecimal */
+	public String getSha256Hex() { return hex(sha256, sha256.length); }
+	/** A strong entity tag for the file, quoted, derived from its SHA-256 */
+	public String getETag() { return "\"" + hex(sha256, 16) + "\""; }
+	/** The latest lastmod of the URLs, or null if none of them has one */
+	public Date getMaxLastMod() { return maxLastMod == null ? null : new Date(maxLastMod.getTime()); }
+	/** How long it took to render and write the sitemap, in milliseconds */
+	public long getRenderMillis() { return renderNanos / 1000000; }
+
+	/** The result as a JSON object, with dates in W3C format */
+	public String toJson(W3CDateFormat dateFormat) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("{\"file\":\"").append(escape(file.getName())).append('"');
+		sb.append(",\"urls\":").append(urls);
+		sb.append(",\"uncompressedBytes\":").append(uncompressedBytes);
+		sb.append(",\"bytes\":").append(bytes);
+		sb.append(",\"crc32c\":\"").append(String.format("%08x", crc32c)).append('"');
+		sb.append(",\"sha256\":\"").append(getSha256Hex()).append('"');
+		if (maxLastMod != null) sb.append(",\"maxLastMod\":\"").append(dateFormat.format(maxLastMod)).append('"');
+		sb.append(",\"renderMillis\":").append(getRenderMillis());
+		return sb.append('}').toString();
+	}
+
+	@Override
+	public String toString() {
+		return toJson(new W3CDateFormat());
+	}
+
+	private static String escape(String string) {
+		StringBuilder sb = new StringBuilder(string.length());
+		for (int i = 0; i < string.length(); i++) {
+			char c = string.charAt(i);
+			if (c == '"' || c == '\\') {
+				sb.append('\\').append(c);
+			} else if (c < 0x20) {
+				sb.append(String.format("\\u%04x", (int) c));
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/** The file name of a JSON object written by {@link #toJson(W3CDateFormat)}, or null if it isn't one */
+	static String fileOf(String json) {
+		String prefix = "{\"file\":\"";
+		if (!json.startsWith(prefix)) return null;
+		StringBuilder sb = new StringBuilder();
+		for (int i = prefix.length(); i < json.length(); i++) {
+			char c = json.charAt(i);
+			if (c == '"') return sb.toString();
+			if (c == '\\' && ++i < json.length()) {
+				c = json.charAt(i);
+				if (c == 'u' && i + 4 < json.length()) {
+					c = (char) Integer.parseInt(json.substring(i + 1, i + 5), 16);
+					i += 4;
+				}
+			}
+			sb.append(c);
+		}
+		return null;
+	}
+
+	static String hex(byte[] hash, int bytes) {
+		StringBuilder sb = new StringBuilder(bytes * 2);
+		for (int i = 0; i < bytes; i++) {
+			sb.append(Character.forDigit((hash[i] >> 4) & 0xf, 16)).append(Character.forDigit(hash[i] & 0xf, 16));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,346 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves sitemaps over HTTP with the JDK's built-in server, either from a directory the generators wrote to (or
+ * the current version of a {@link SitemapPublisher}), or rendered on demand through a {@link SitemapCache}.
+ * Gzipped content is sent as-is to clients that accept gzip (and decompressed on the fly for the others), and
+ * requests with a matching If-None-Match or If-Modified-Since get a 304.  Files are copied to the connection with
+ * {@link FileChannel#transferTo}.
+ *
+ * <p>Only the sitemap files at the root of the context are served: in a directory, *.xml and *.xml.gz files (a
+ * request for x.xml is answered with x.xml.gz, gzip-encoded, if that's all there is or if the client prefers it);
+ * from a cache, sitemap_index.xml and the sitemaps named by {@link SitemapGenerator#getSitemapFileName(int)}.</p>
+ *
+ * <pre>
+ * SitemapServer server = new SitemapServer.Options(new InetSocketAddress(8080)).directory(outDir).build();
+ * server.start();
+ * ...
+ * server.close();
+ * </pre>
+ */
+public class SitemapServer implements Closeable {
+	/** The file name of the sitemap index, as written by {@link WebSitemapGenerator#writeSitemapsWithIndex()} */
+	static final String INDEX_FILE_NAME = "sitemap_index.xml";
+	private static final String XML = "application/xml; charset=UTF-8";
+	private static final String GZIP = "application/x-gzip";
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final String contextPath;
+	private final File directory;
+	private final SitemapPublisher publisher;
+	private final SitemapCache<?> cache;
+
+	/** Options to configure a server */
+	public static class Options {
+		private final InetSocketAddress address;
+		private String contextPath = "/";
+		private File directory;
+		private SitemapPublisher publisher;
+		private SitemapCache<?> cache;
+		private int threads = 4;
+
+		/** @param address where to listen; port 0 picks a free port (see {@link SitemapServer#getAddress()}) */
+		public Options(InetSocketAddress address) {
+			this.address = address;
+		}
+
+		/** Listens on the loopback interface, on a free port */
+		public Options() {
+			this(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+		}
+
+		/** Where the sitemaps are served; the default is "/" */
+		public Options contextPath(String contextPath) {
+			if (!contextPath.startsWith("/")) throw new IllegalArgumentException("contextPath must start with /: " + contextPath);
+			this.contextPath = contextPath.endsWith("/") ? contextPath : contextPath + "/";
+			return this;
+		}
+
+		/** Serves the sitemaps in this directory */
+		public Options directory(File directory) {
+			this.directory = directory;
+			return this;
+		}
+
+		/** Serves the sitemaps of the current version of this publisher; a new version is served as soon as it's published */
+		public Options publisher(SitemapPublisher publisher) {
+			this.publisher = publisher;
+			return this;
+		}
+
+		/** Serves the sitemaps of this cache, rendering them on demand */
+		public Options cache(SitemapCache<?> cache) {
+			this.cache = cache;
+			return this;
+		}
+
+		/** How many requests to serve at once; the default is 4 */
+		public Options threads(int threads) {
+			if (threads < 1) throw new IllegalArgumentException("threads must be at least 1: " + threads);
+			this.threads = threads;
+			return this;
+		}
+
+		/** Constructs a server configured with the options you specified; call {@link SitemapServer#start()} to serve */
+		public SitemapServer build() throws IOException {
+			int sources = (directory == null ? 0 : 1) + (publisher == null ? 0 : 1) + (cache == null ? 0 : 1);
+			if (sources != 1) throw new IllegalStateException("Specify one of a directory, a publisher or a cache");
+			return new SitemapServer(this);
+		}
+	}
+
+	SitemapServer(Options options) throws IOException {
+		contextPath = options.contextPath;
+		directory = options.directory;
+		publisher = options.publisher;
+		cache = options.cache;
+		server = HttpServer.create(options.address, 0);
+		executor = Executors.newFixedThreadPool(options.threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "sitemap-server-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		server.setExecutor(executor);
+		server.createContext(contextPath, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					SitemapServer.this.handle(exchange);
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+	}
+
+	/** Starts serving in the background */
+	public void start() {
+		server.start();
+	}
+
+	/** The address the server listens on */
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	/** Stops serving, without waiting for the requests in progress */
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		String method = exchange.getRequestMethod();
+		if (!"GET".equals(method) && !"HEAD".equals(method)) {
+			exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+			exchange.sendResponseHeaders(405, -1);
+			return;
+		}
+		String path = exchange.getRequestURI().getPath();
+		String name = path.startsWith(contextPath) ? path.substring(contextPath.length()) : "";
+		boolean found = false;
+		if (name.indexOf('/') < 0 && (name.endsWith(".xml") || name.endsWith(".xml.gz"))) {
+			found = cache != null ? serveCached(exchange, name) : serveFile(exchange, name);
+		}
+		if (!found) exchange.sendResponseHeaders(404, -1);
+	}
+
+	private boolean serveFile(HttpExchange exchange, String name) throws IOException {
+		// resolve the version once, so the whole response comes from the same one
+		File directory = publisher != null ? publisher.getCurrent() : this.directory;
+		if (directory == null) return false;
+		File file = new File(directory, name);
+		if (name.endsWith(".gz")) {
+			if (!file.isFile()) return false;
+			serve(exchange, file, GZIP, false);
+			return true;
+		}
+		File gzipped = new File(directory, name + ".gz");
+		exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+		if (gzipped.isFile() && (acceptsGzip(exchange) || !file.isFile())) {
+			serve(exchange, gzipped, XML, true);
+		} else if (file.isFile()) {
+			serve(exchange, file, XML, false);
+		} else {
+			return false;
+		}
+		return true;
+	}
+
+	private boolean serveCached(HttpExchange exchange, String name) throws IOException {
+		SitemapCache.Entry entry;
+		if (INDEX_FILE_NAME.equals(name)) {
+			entry = cache.getIndex();
+		} else {
+			int sitemap = cache.getSitemapNumber(name);
+			if (sitemap < 0) return false;
+			entry = cache.getSitemap(sitemap);
+			if (entry == null) return false;
+		}
+		final byte[] bytes = entry.getGzipped();
+		boolean gzipFile = name.endsWith(".gz");
+		if (!gzipFile) exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+		if (gzipFile || acceptsGzip(exchange)) {
+			if (!gzipFile) exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			respond(exchange, gzipFile ? GZIP : XML, entry.getETag(), entry.getLastModified().getTime(), bytes.length, new Body() {
+				public void writeTo(OutputStream out) throws IOException {
+					out.write(bytes);
+				}
+			});
+		} else {
+			respond(exchange, XML, identityETag(entry.getETag()), entry.getLastModified().getTime(), 0, new Body() {
+				public void writeTo(OutputStream out) throws IOException {
+					copy(new GZIPInputStream(new ByteArrayInputStream(bytes)), out);
+				}
+			});
+		}
+		return true;
+	}
+
+	/**
+	 * Sends a file: as-is, or gzip-encoded, or decompressed if it's gzipped and the client doesn't accept gzip
+	 *
+	 * @param gzipped whether the file is the gzipped form of an XML resource
+	 */
+	private void serve(HttpExchange exchange, final File file, String contentType, boolean gzipped) throws IOException {
+		final FileInputStream in = new FileInputStream(file);
+		try {
+			final FileChannel channel = in.getChannel();
+			final long size = channel.size();
+			String eTag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(file.lastModified()) + "\"";
+			if (gzipped && !acceptsGzip(exchange)) {
+				respond(exchange, contentType, identityETag(eTag), file.lastModified(), 0, new Body() {
+					public void writeTo(OutputStream out) throws IOException {
+						copy(new GZIPInputStream(in), out);
+					}
+				});
+				return;
+			}
+			if (gzipped) exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+			respond(exchange, contentType, eTag, file.lastModified(), size, new Body() {
+				public void writeTo(OutputStream out) throws IOException {
+					WritableByteChannel target = Channels.newChannel(out);
+					for (long position = 0; position < size;) {
+						position += channel.transferTo(position, size - position, target);
+					}
+				}
+			});
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Sends a 304 if the client's copy is current, or else the headers and (unless it's a HEAD request) the body
+	 *
+	 * @param length the length of the body, or 0 if it's not known in advance
+	 */
+	private void respond(HttpExchange exchange, String contentType, String eTag, long lastModified, long length, Body body) throws IOException {
+		Headers headers = exchange.getResponseHeaders();
+		headers.set("ETag", eTag);
+		headers.set("Last-Modified", httpDateFormat().format(new Date(lastModified)));
+		if (notModified(exchange.getRequestHeaders(), eTag, lastModified)) {
+			headers.remove("Content-Encoding");
+			exchange.sendResponseHeaders(304, -1);
+			return;
+		}
+		headers.set("Content-Type", contentType);
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			if (length > 0) headers.set("Content-Length", Long.toString(length));
+			exchange.sendResponseHeaders(200, -1);
+			return;
+		}
+		exchange.sendResponseHeaders(200, length);
+		OutputStream out = exchange.getResponseBody();
+		body.writeTo(out);
+		out.close();
+	}
+
+	private static boolean notModified(Headers request, String eTag, long lastModified) {
+		String ifNoneMatch = request.getFirst("If-None-Match");
+		if (ifNoneMatch != null) {
+			// If-Modified-Since is ignored when there's an If-None-Match
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if (tag.startsWith("W/")) tag = tag.substring(2);
+				if (tag.equals(eTag) || tag.equals("*")) return true;
+			}
+			return false;
+		}
+		String ifModifiedSince = request.getFirst("If-Modified-Since");
+		if (ifModifiedSince == null) return false;
+		try {
+			return lastModified / 1000 <= httpDateFormat().parse(ifModifiedSince).getTime() / 1000;
+		} catch (ParseException e) {
+			return false;
+		}
+	}
+
+	private static boolean acceptsGzip(HttpExchange exchange) {
+		String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+		if (acceptEncoding == null) return false;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.split(";");
+			String name = parts[0].trim();
+			if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) continue;
+			for (int i = 1; i < parts.length; i++) {
+				String parameter = parts[i].trim();
+				if (parameter.startsWith("q=") && parameter.substring(2).trim().matches("0(\\.0*)?")) return false;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/** The entity tag of the decompressed form of a gzipped resource */
+	private static String identityETag(String eTag) {
+		return eTag.substring(0, eTag.length() - 1) + "-identity\"";
+	}
+
+	private static SimpleDateFormat httpDateFormat() {
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+		format.setTimeZone(W3CDateFormat.ZULU);
+		return format;
+	}
+
+	private static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = new byte[8192];
+		for (int read; (read = in.read(buffer)) != -1;) {
+			out.write(buffer, 0, read);
+		}
+	}
+
+	private interface Body {
+		void writeTo(OutputStream out) throws IOException;
+	}
+}
@@ -0,0 +1,27 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.IOException;
+
+/**
+ * Supplies the URLs of a site a page at a time, so a generator can render any one sitemap on demand instead of
+ * having every URL pushed through addUrl: see {@link WebSitemapGenerator#writeSitemap(SitemapSource, int,
+ * java.io.OutputStream)}.  Sitemap number n (from 1) is the page at offset (n - 1) * maxUrls; a source backed by a
+ * database can fetch it with LIMIT/OFFSET, or with a keyset query from the first key of that sitemap.
+ *
+ * @param <U> the type of URL
+ */
+public interface SitemapSource<U extends ISitemapUrl> {
+	/**
+	 * How many URLs there are, or an estimate; this decides how many sitemaps the index lists.  An overestimate
+	 * just gives empty sitemaps at the end, but the URLs past an underestimate are left out.
+	 */
+	long count() throws IOException;
+
+	/**
+	 * Retrieves a page of URLs, in a stable order
+	 *
+	 * @param offset how many URLs to skip
+	 * @param limit the most URLs to return; fewer (or none) past the end
+	 */
+	Iterable<? extends U> page(long offset, int limit) throws IOException;
+}
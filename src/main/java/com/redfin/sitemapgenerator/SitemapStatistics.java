@@ -0,0 +1,158 @@
+package com.redfin.sitemapgenerator;
+
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.GregorianCalendar;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A summary of one sitemap, or of several of them merged together: how many URLs and bytes, how the lastmods,
+ * changefreqs and priorities are distributed, how many URLs are on the wrong host, and roughly how many distinct
+ * URLs there are.  Summaries are small and mergeable, so big sets can be summarized one sitemap at a time.
+ *
+ * @see SitemapAnalyzer
+ */
+public final class SitemapStatistics {
+	private final String name;
+	private long urls;
+	private long uncompressedBytes;
+	private long compressedBytes;
+	private long hostViolations;
+	private long oldestLastMod = Long.MAX_VALUE;
+	private long newestLastMod = Long.MIN_VALUE;
+	private long noLastMod;
+	private long noChangeFreq;
+	private long noPriority;
+	private final SortedMap<String, Long> lastModMonths = new TreeMap<String, Long>();
+	private final Map<ChangeFreq, Long> changeFreqs = new EnumMap<ChangeFreq, Long>(ChangeFreq.class);
+	private final long[] priorities = new long[11];
+	private final HyperLogLog distinct = new HyperLogLog();
+	private final Calendar calendar = new GregorianCalendar(W3CDateFormat.ZULU);
+
+	SitemapStatistics(String name) {
+		this.name = name;
+	}
+
+	void add(SitemapUrlRecord record, boolean hostViolation) {
+		urls++;
+		distinct.add(record.getLoc());
+		if (hostViolation) hostViolations++;
+		if (record.hasLastMod()) {
+			long lastMod = record.getLastModMillis();
+			oldestLastMod = Math.min(oldestLastMod, lastMod);
+			newestLastMod = Math.max(newestLastMod, lastMod);
+			calendar.setTimeInMillis(lastMod);
+			int month = calendar.get(Calendar.MONTH) + 1;
+			increment(lastModMonths, calendar.get(Calendar.YEAR) + (month < 10 ? "-0" : "-") + month, 1);
+		} else {
+			noLastMod++;
+		}
+		if (record.getChangeFreq() != null) {
+			increment(changeFreqs, record.getChangeFreq(), 1);
+		} else {
+			noChangeFreq++;
+		}
+		if (record.hasPriority()) {
+			priorities[(int) Math.round(Math.max(0.0, Math.min(1.0, record.getPriority())) * 10)]++;
+		} else {
+			noPriority++;
+		}
+	}
+
+	void addBytes(long uncompressedBytes, long compressedBytes) {
+		this.uncompressedBytes += uncompressedBytes;
+		this.compressedBytes += compressedBytes;
+	}
+
+	/** Adds the other summary into this one */
+	void merge(SitemapStatistics other) {
+		urls += other.urls;
+		uncompressedBytes += other.uncompressedBytes;
+		compressedBytes += other.compressedBytes;
+		hostViolations += other.hostViolations;
+		oldestLastMod = Math.min(oldestLastMod, other.oldestLastMod);
+		newestLastMod = Math.max(newestLastMod, other.newestLastMod);
+		noLastMod += other.noLastMod;
+		noChangeFreq += other.noChangeFreq;
+		noPriority += other.noPriority;
+		for (Map.Entry<String, Long> entry : other.lastModMonths.entrySet()) {
+			increment(lastModMonths, entry.getKey(), entry.getValue());
+		}
+		for (Map.Entry<ChangeFreq, Long> entry : other.changeFreqs.entrySet()) {
+			increment(changeFreqs, entry.getKey(), entry.getValue());
+		}
+		for (int i = 0; i < priorities.length; i++) {
+			priorities[i] += other.priorities[i];
+		}
+		distinct.merge(other.distinct);
+	}
+
+	private static <K> void increment(Map<K, Long> counts, K key, long count) {
+		Long previous = counts.get(key);
+		counts.put(key, previous == null ? count : previous + count);
+	}
+
+	/** The file name of the sitemap, or null for merged summaries */
+	public String getName() { return name; }
+	/** How many URLs, including duplicates */
+	public long getUrls() { return urls; }
+	/** An estimate of how many distinct URLs, within about 1% */
+	public long getDistinctUrls() { return Math.min(urls, distinct.estimate()); }
+	/** An estimate of how many URLs are duplicates of another one: {@link #getUrls()} - {@link #getDistinctUrls()} */
+	public long getDuplicateUrls() { return urls - getDistinctUrls(); }
+	/** The size of the XML */
+	public long getUncompressedBytes() { return uncompressedBytes; }
+	/** The size of the files; the same as {@link #getUncompressedBytes()} unless they're gzipped */
+	public long getCompressedBytes() { return compressedBytes; }
+	/** How many URLs aren't on the host of the base URL; always 0 if the analyzer had no base URL */
+	public long getHostViolations() { return hostViolations; }
+	/** The oldest lastmod, or null if no URL has one */
+	public Date getOldestLastMod() { return oldestLastMod == Long.MAX_VALUE ? null : new Date(oldestLastMod); }
+	/** The newest lastmod, or null if no URL has one */
+	public Date getNewestLastMod() { return newestLastMod == Long.MIN_VALUE ? null : new Date(newestLastMod); }
+	/** How many URLs have no lastmod */
+	public long getNoLastMod() { return noLastMod; }
+	/** How many URLs have no changefreq */
+	public long getNoChangeFreq() { return noChangeFreq; }
+	/** How many URLs have no priority */
+	public long getNoPriority() { return noPriority; }
+
+	/** How many URLs were last modified each month (in UTC, as "yyyy-MM"), oldest first */
+	public SortedMap<String, Long> getLastModMonths() {
+		return Collections.unmodifiableSortedMap(lastModMonths);
+	}
+
+	/** How many URLs have each changefreq */
+	public Map<ChangeFreq, Long> getChangeFreqs() {
+		return Collections.unmodifiableMap(changeFreqs);
+	}
+
+	/** How many URLs have each priority, rounded to 0.1; priorities no URL has are left out */
+	public SortedMap<Double, Long> getPriorities() {
+		SortedMap<Double, Long> result = new TreeMap<Double, Long>();
+		for (int i = 0; i < priorities.length; i++) {
+			if (priorities[i] > 0) result.put(i / 10.0, priorities[i]);
+		}
+		return result;
+	}
+
+	/** One line with the counts and sizes, for reports */
+	@Override
+	public String toString() {
+		W3CDateFormat dateFormat = new W3CDateFormat(W3CDateFormat.Pattern.DAY);
+		dateFormat.setTimeZone(W3CDateFormat.ZULU);
+		StringBuilder sb = new StringBuilder(name == null ? "total" : name);
+		sb.append(" urls=").append(urls).append(" distinct~").append(getDistinctUrls())
+			.append(" bytes=").append(uncompressedBytes).append(" compressed=").append(compressedBytes);
+		if (hostViolations > 0) sb.append(" hostViolations=").append(hostViolations);
+		if (newestLastMod != Long.MIN_VALUE) {
+			sb.append(" lastmod=").append(dateFormat.format(new Date(oldestLastMod)))
+				.append("..").append(dateFormat.format(new Date(newestLastMod)));
+		}
+		return sb.toString();
+	}
+}
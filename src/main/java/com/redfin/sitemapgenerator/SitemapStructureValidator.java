@@ -0,0 +1,406 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Checks the structure of a sitemap or sitemap index in a single pass over a StAX stream, without loading a
+ * schema.  Besides the rules of the sitemap protocol (at most 50,000 URLs, no more than a given number of
+ * bytes, absolute URLs of at most 2,048 characters on a single host, well-formed lastmod, changefreq and
+ * priority), it knows the Google extensions this library generates.  A URL may be on another host if it's one of
+ * the xhtml:link alternates of its entry and another of them is on the host, as with one subdomain per language.  A sitemap that declares an extension
+ * namespace on its root element is treated as that kind of sitemap:
+ *
+ * <ul>
+ * <li>mobile: every URL is marked &lt;mobile:mobile/&gt;</li>
+ * <li>news: at most 1,000 URLs, each with a news:publication_date from the last three days</li>
+ * <li>video: every URL has a video, and every video a title and a player_loc or content_loc</li>
+ * <li>image: every image has a loc, and no URL has more than 1,000 images</li>
+ * <li>geo: every URL has a geo:geo with a format</li>
+ * <li>code: every URL has a codesearch:codesearch with a filetype</li>
+ * </ul>
+ *
+ * <p>Elements in other namespaces are skipped.  Instances hold no state between documents, so one can check
+ * several documents at once.</p>
+ */
+final class SitemapStructureValidator implements DocumentValidator {
+	static final int MAX_URL_LENGTH = 2048;
+	static final int MAX_NEWS_URLS = 1000;
+	static final int MAX_IMAGES_PER_URL = 1000;
+	static final long MAX_NEWS_AGE = TimeUnit.DAYS.toMillis(3);
+
+	private final String host;
+	private final long maxBytes;
+	private final long now;
+
+	/**
+	 * @param baseUrl every URL must be on the host of this one; if null, on the host of the first URL
+	 * @param maxBytes the largest a document may be, uncompressed
+	 * @param now the current time, in milliseconds, for the age of news
+	 */
+	SitemapStructureValidator(URL baseUrl, long maxBytes, long now) {
+		this.host = baseUrl == null ? null : baseUrl.getHost();
+		this.maxBytes = maxBytes;
+		this.now = now;
+	}
+
+	SitemapStructureValidator(URL baseUrl, long maxBytes) {
+		this(baseUrl, maxBytes, System.currentTimeMillis());
+	}
+
+	public void validate(InputStream in, String systemId) throws SAXException, IOException {
+		CountingInputStream counted = new CountingInputStream(in, maxBytes);
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+		try {
+			XMLStreamReader xml = systemId == null ? factory.createXMLStreamReader(counted)
+					: factory.createXMLStreamReader(systemId, counted);
+			try {
+				new Document(xml, systemId).read();
+			} finally {
+				xml.close();
+			}
+		} catch (XMLStreamException e) {
+			if (e.getNestedException() instanceof SizeLimitExceededException) throw tooLarge(systemId);
+			if (e.getNestedException() instanceof IOException) throw (IOException) e.getNestedException();
+			Location location = e.getLocation();
+			SAXParseException parseException = location == null ? new SAXParseException(e.getMessage(), null, systemId, -1, -1)
+					: new SAXParseException(e.getMessage(), null, systemId, location.getLineNumber(), location.getColumnNumber());
+			parseException.initCause(e);
+			throw parseException;
+		}
+	}
+
+	private SAXException tooLarge(String systemId) {
+		return new SAXException("Sitemap is larger than " + maxBytes + " bytes" + (systemId == null ? "" : ": " + systemId));
+	}
+
+	/** The state of one document being checked */
+	private class Document {
+		private final XMLStreamReader xml;
+		private final String systemId;
+		private String host = SitemapStructureValidator.this.host;
+		private boolean mobile, news, video, geo, code;
+		private int count;
+
+		Document(XMLStreamReader xml, String systemId) {
+			this.xml = xml;
+			this.systemId = systemId;
+		}
+
+		void read() throws XMLStreamException, SAXException {
+			xml.nextTag();
+			String root = xml.getLocalName();
+			if (!SitemapNamespaces.SITEMAP.equals(xml.getNamespaceURI())) {
+				throw fail("Root element must be in the namespace " + SitemapNamespaces.SITEMAP);
+			}
+			if ("urlset".equals(root)) {
+				for (int i = 0; i < xml.getNamespaceCount(); i++) {
+					String namespace = xml.getNamespaceURI(i);
+					mobile |= SitemapNamespaces.MOBILE.equals(namespace);
+					news |= SitemapNamespaces.NEWS.equals(namespace);
+					video |= SitemapNamespaces.VIDEO.equals(namespace);
+					geo |= SitemapNamespaces.GEO.equals(namespace);
+					code |= SitemapNamespaces.CODE.equals(namespace);
+				}
+				while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+					expect(SitemapNamespaces.SITEMAP, "url");
+					url();
+				}
+			} else if ("sitemapindex".equals(root)) {
+				while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+					expect(SitemapNamespaces.SITEMAP, "sitemap");
+					sitemap();
+				}
+			} else {
+				throw fail("Root element must be urlset or sitemapindex, not " + root);
+			}
+			while (xml.hasNext()) xml.next();
+		}
+
+		private void url() throws XMLStreamException, SAXException {
+			count();
+			if (news && count > MAX_NEWS_URLS) throw fail("News sitemaps may not have more than " + MAX_NEWS_URLS + " URLs");
+			boolean hasLoc = false, hasMobile = false, hasNews = false, hasVideo = false, hasGeo = false, hasCode = false;
+			int images = 0;
+			URL loc = null;
+			List<URL> alternates = new ArrayList<URL>();
+			while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				String namespace = xml.getNamespaceURI();
+				String name = xml.getLocalName();
+				if (SitemapNamespaces.SITEMAP.equals(namespace)) {
+					if ("loc".equals(name)) {
+						if (hasLoc) throw fail("More than one loc");
+						loc = absoluteUrl(text());
+						if (host == null) host = loc.getHost();
+						hasLoc = true;
+					} else if ("lastmod".equals(name)) {
+						date(text());
+					} else if ("changefreq".equals(name)) {
+						changeFreq(text());
+					} else if ("priority".equals(name)) {
+						priority(text());
+					} else {
+						throw fail("Unexpected element " + name);
+					}
+				} else if (SitemapNamespaces.MOBILE.equals(namespace) && "mobile".equals(name)) {
+					skip();
+					hasMobile = true;
+				} else if (SitemapNamespaces.NEWS.equals(namespace) && "news".equals(name)) {
+					news();
+					hasNews = true;
+				} else if (SitemapNamespaces.VIDEO.equals(namespace) && "video".equals(name)) {
+					video();
+					hasVideo = true;
+				} else if (SitemapNamespaces.IMAGE.equals(namespace) && "image".equals(name)) {
+					if (++images > MAX_IMAGES_PER_URL) throw fail("More than " + MAX_IMAGES_PER_URL + " images for one URL");
+					image();
+				} else if (SitemapNamespaces.GEO.equals(namespace) && "geo".equals(name)) {
+					requireChild(SitemapNamespaces.GEO, "format");
+					hasGeo = true;
+				} else if (SitemapNamespaces.CODE.equals(namespace) && "codesearch".equals(name)) {
+					requireChild(SitemapNamespaces.CODE, "filetype");
+					hasCode = true;
+				} else if (SitemapNamespaces.XHTML.equals(namespace) && "link".equals(name)) {
+					alternates.add(link());
+				} else {
+					skip();
+				}
+			}
+			if (!hasLoc) throw fail("URL without a loc");
+			if (!onHost(loc) && !isAlternate(loc, alternates)) throw fail("URL " + loc + " isn't on the host " + host);
+			if (mobile && !hasMobile) throw fail("URL without mobile:mobile in a mobile sitemap");
+			if (news && !hasNews) throw fail("URL without news:news in a news sitemap");
+			if (video && !hasVideo) throw fail("URL without video:video in a video sitemap");
+			if (geo && !hasGeo) throw fail("URL without geo:geo in a geo sitemap");
+			if (code && !hasCode) throw fail("URL without codesearch:codesearch in a code sitemap");
+		}
+
+		private void sitemap() throws XMLStreamException, SAXException {
+			count();
+			boolean hasLoc = false;
+			while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				String name = xml.getLocalName();
+				if (!SitemapNamespaces.SITEMAP.equals(xml.getNamespaceURI())) {
+					skip();
+				} else if ("loc".equals(name)) {
+					if (hasLoc) throw fail("More than one loc");
+					loc(text());
+					hasLoc = true;
+				} else if ("lastmod".equals(name)) {
+					date(text());
+				} else {
+					throw fail("Unexpected element " + name);
+				}
+			}
+			if (!hasLoc) throw fail("Sitemap without a loc");
+		}
+
+		private void news() throws XMLStreamException, SAXException {
+			boolean hasPublicationDate = false;
+			while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				if (SitemapNamespaces.NEWS.equals(xml.getNamespaceURI()) && "publication_date".equals(xml.getLocalName())) {
+					long publicationDate = date(text());
+					if (now - publicationDate > MAX_NEWS_AGE) throw fail("News article published more than 3 days ago");
+					hasPublicationDate = true;
+				} else {
+					skip();
+				}
+			}
+			if (!hasPublicationDate) throw fail("News without a publication_date");
+		}
+
+		private void video() throws XMLStreamException, SAXException {
+			boolean hasTitle = false, hasLocation = false;
+			while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				String name = xml.getLocalName();
+				if (!SitemapNamespaces.VIDEO.equals(xml.getNamespaceURI())) {
+					skip();
+				} else if ("title".equals(name)) {
+					hasTitle = !text().isEmpty();
+				} else if ("player_loc".equals(name) || "content_loc".equals(name)) {
+					absoluteUrl(text());
+					hasLocation = true;
+				} else {
+					skip();
+				}
+			}
+			if (!hasTitle) throw fail("Video without a title");
+			if (!hasLocation) throw fail("Video without a player_loc or content_loc");
+		}
+
+		private void image() throws XMLStreamException, SAXException {
+			boolean hasLoc = false;
+			while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				if (SitemapNamespaces.IMAGE.equals(xml.getNamespaceURI()) && "loc".equals(xml.getLocalName())) {
+					absoluteUrl(text());
+					hasLoc = true;
+				} else {
+					skip();
+				}
+			}
+			if (!hasLoc) throw fail("Image without a loc");
+		}
+
+		private URL link() throws XMLStreamException, SAXException {
+			if (xml.getAttributeValue(null, "rel") == null || xml.getAttributeValue(null, "hreflang") == null) {
+				throw fail("xhtml:link without rel or hreflang");
+			}
+			String href = xml.getAttributeValue(null, "href");
+			if (href == null) throw fail("xhtml:link without href");
+			// alternates may well be on other hosts (e.g. one subdomain per language)
+			URL url = absoluteUrl(href);
+			skip();
+			return url;
+		}
+
+		/** Whether a URL on another host is one of the alternates of a page on the host */
+		private boolean isAlternate(URL loc, List<URL> alternates) {
+			boolean listed = false, pageOnHost = false;
+			for (URL alternate : alternates) {
+				listed |= alternate.toString().equals(loc.toString());
+				pageOnHost |= onHost(alternate);
+			}
+			return listed && pageOnHost;
+		}
+
+		private void requireChild(String namespace, String name) throws XMLStreamException, SAXException {
+			String parent = xml.getLocalName();
+			boolean found = false;
+			while (xml.nextTag() == XMLStreamConstants.START_ELEMENT) {
+				found |= namespace.equals(xml.getNamespaceURI()) && name.equals(xml.getLocalName());
+				skip();
+			}
+			if (!found) throw fail(parent + " without a " + name);
+		}
+
+		private void count() throws SAXException {
+			if (++count > SitemapGenerator.MAX_URLS_PER_SITEMAP) {
+				throw fail("More than " + SitemapGenerator.MAX_URLS_PER_SITEMAP + " URLs");
+			}
+		}
+
+		private void loc(String loc) throws SAXException {
+			URL url = absoluteUrl(loc);
+			if (host == null) host = url.getHost();
+			if (!onHost(url)) throw fail("URL " + loc + " isn't on the host " + host);
+		}
+
+		private boolean onHost(URL url) {
+			return host.equalsIgnoreCase(url.getHost());
+		}
+
+		private URL absoluteUrl(String string) throws SAXException {
+			if (string.length() > MAX_URL_LENGTH) throw fail("URL longer than " + MAX_URL_LENGTH + " characters");
+			URL url;
+			try {
+				url = new URL(string);
+			} catch (MalformedURLException e) {
+				throw fail("Invalid URL " + string);
+			}
+			if (url.getHost().isEmpty()) throw fail("URL without a host " + string);
+			return url;
+		}
+
+		private long date(String date) throws SAXException {
+			try {
+				return W3CDateParser.parseMillis(date);
+			} catch (ParseException e) {
+				throw fail("Invalid date " + date);
+			}
+		}
+
+		private void changeFreq(String changeFreq) throws SAXException {
+			for (ChangeFreq value : ChangeFreq.values()) {
+				if (value.toString().equals(changeFreq)) return;
+			}
+			throw fail("Invalid changefreq " + changeFreq);
+		}
+
+		private void priority(String priority) throws SAXException {
+			double value;
+			try {
+				value = Double.parseDouble(priority);
+			} catch (NumberFormatException e) {
+				throw fail("Invalid priority " + priority);
+			}
+			if (!(value >= 0.0 && value <= 1.0)) throw fail("Priority must be between 0.0 and 1.0: " + priority);
+		}
+
+		private String text() throws XMLStreamException {
+			return xml.getElementText().trim();
+		}
+
+		/** Skips the current element, and everything in it */
+		private void skip() throws XMLStreamException {
+			int depth = 1;
+			while (depth > 0) {
+				int event = xml.next();
+				if (event == XMLStreamConstants.START_ELEMENT) depth++;
+				else if (event == XMLStreamConstants.END_ELEMENT) depth--;
+			}
+		}
+
+		private void expect(String namespace, String name) throws SAXException {
+			if (!namespace.equals(xml.getNamespaceURI()) || !name.equals(xml.getLocalName())) {
+				throw fail("Expected " + name + " but found " + xml.getLocalName());
+			}
+		}
+
+		private SAXParseException fail(String message) {
+			Location location = xml.getLocation();
+			return new SAXParseException(message, null, systemId, location.getLineNumber(), location.getColumnNumber());
+		}
+	}
+
+	private static class SizeLimitExceededException extends IOException {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/** Fails as soon as more than the maximum number of bytes have been read */
+	private static class CountingInputStream extends FilterInputStream {
+		private final long maxBytes;
+		private long count;
+
+		CountingInputStream(InputStream in, long maxBytes) {
+			super(in);
+			this.maxBytes = maxBytes;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) count(1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) count(read);
+			return read;
+		}
+
+		private void count(int read) throws SizeLimitExceededException {
+			count += read;
+			if (count > maxBytes) throw new SizeLimitExceededException();
+		}
+	}
+}
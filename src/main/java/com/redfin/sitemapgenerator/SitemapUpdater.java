@@ -0,0 +1,127 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Updates or removes URLs in place, for {@link SitemapGenerator#updateUrls(Iterable, Iterable)}: the
+ * {@link SitemapLocator} of an earlier run says which sitemaps hold them and where, so only those sitemaps are
+ * rewritten, each URL replacing its old &lt;url&gt; element, and the locator is brought up to date.  The locator
+ * is read into memory rather than mapped, as it's replaced while it's in use.
+ */
+final class SitemapUpdater<U extends ISitemapUrl> {
+	private final SitemapGenerator<U, ?> generator;
+	private final File baseDir;
+
+	SitemapUpdater(SitemapGenerator<U, ?> generator, File baseDir) {
+		this.generator = generator;
+		this.baseDir = baseDir;
+	}
+
+	/**
+	 * @return what each rewritten sitemap has now
+	 * @throws IllegalArgumentException if an updated URL isn't in the sitemaps
+	 */
+	List<SitemapResult> update(Iterable<? extends U> updated, Iterable<URL> removed) throws IOException {
+		File locatorFile = generator.getLocatorFile();
+		SitemapLocator old = SitemapLocator.read(locatorFile);
+		// sitemap -> offset -> the new version, or null to remove it
+		Map<Integer, TreeMap<Long, Object>> edits = new TreeMap<Integer, TreeMap<Long, Object>>();
+		for (U url : updated) {
+			generator.checkUrl(url);
+			SitemapLocator.Location location = old.find(url.getUrl());
+			if (location == null) throw new IllegalArgumentException("Not in the sitemaps: " + url.getUrl());
+			edit(edits, location).put(location.getOffset(), url);
+		}
+		for (URL url : removed) {
+			SitemapLocator.Location location = old.find(url);
+			if (location != null) edit(edits, location).put(location.getOffset(), url);
+		}
+		SitemapLocator.Builder records = new SitemapLocator.Builder();
+		Set<String> rewritten = new HashSet<String>();
+		List<SitemapResult> results = new ArrayList<SitemapResult>();
+		for (Map.Entry<Integer, TreeMap<Long, Object>> entry : edits.entrySet()) {
+			long start = System.nanoTime();
+			String name = old.getFileNames().get(entry.getKey());
+			File file = new File(baseDir, name);
+			byte[] xml = rewrite(readSitemap(file), entry.getValue());
+			File tmp = new File(baseDir, name + ".tmp");
+			ChecksumOutputStream fileStream = new ChecksumOutputStream(new FileOutputStream(tmp));
+			OutputStream out = generator.compress(fileStream);
+			try {
+				out.write(xml);
+			} finally {
+				out.close();
+			}
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			SitemapLocator.addEntries(records, records.file(name), xml);
+			rewritten.add(name);
+			long[] counts = SitemapAppender.scan(new ByteArrayInputStream(xml), generator.getTimeZone());
+			results.add(new SitemapResult(file, (int) counts[0], xml.length, fileStream.getCount(), fileStream.getCrc32c(),
+					fileStream.getSha256(), counts[2] == Long.MIN_VALUE ? null : new Date(counts[2]), System.nanoTime() - start));
+		}
+		Set<String> kept = new HashSet<String>(old.getFileNames());
+		kept.removeAll(rewritten);
+		records.addFrom(old, kept);
+		records.write(locatorFile);
+		return results;
+	}
+
+	private static TreeMap<Long, Object> edit(Map<Integer, TreeMap<Long, Object>> edits, SitemapLocator.Location location) {
+		TreeMap<Long, Object> edit = edits.get(location.getSitemap());
+		if (edit == null) edits.put(location.getSitemap(), edit = new TreeMap<Long, Object>());
+		return edit;
+	}
+
+	/** Replaces (with a U) or removes (for a URL) the &lt;url&gt; elements at the offsets */
+	@SuppressWarnings("unchecked")
+	private byte[] rewrite(byte[] xml, TreeMap<Long, Object> edits) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(xml.length + 1024);
+		XmlSink sink = new Utf8XmlSink(out, generator.isCompact());
+		int position = 0;
+		for (Map.Entry<Long, Object> edit : edits.entrySet()) {
+			int start = (int) (long) edit.getKey();
+			URL url = edit.getValue() instanceof URL ? (URL) edit.getValue() : ((U) edit.getValue()).getUrl();
+			int end = SitemapLocator.entryEnd(xml, start, url.toString());
+			if (end < 0) throw new IllegalStateException("The sitemap locator is out of date: " + url + " isn't where it says");
+			sink.flush();
+			out.write(xml, position, start - position);
+			if (!(edit.getValue() instanceof URL)) generator.writeUrls(sink, Collections.singletonList((U) edit.getValue()));
+			position = end;
+		}
+		sink.flush();
+		out.write(xml, position, xml.length - position);
+		return out.toByteArray();
+	}
+
+	private byte[] readSitemap(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			if (generator.isGzip()) in = new GZIPInputStream(in);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[64 * 1024];
+			for (int read; (read = in.read(buffer)) != -1;) out.write(buffer, 0, read);
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+}
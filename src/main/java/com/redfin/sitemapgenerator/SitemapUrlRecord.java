@@ -0,0 +1,116 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.Date;
+
+/**
+ * The standard fields of one &lt;url&gt; (or &lt;sitemap&gt;) entry, in a compact form: the location is kept as a
+ * string, and the dates and priority as primitives, so reading a record costs a couple of small objects at most.
+ * Use {@link SitemapReader#nextRecord()} to read them.
+ */
+public final class SitemapUrlRecord {
+	/** The value of {@link #getLastModMillis()} when there's no lastmod */
+	public static final long NO_LAST_MOD = Long.MIN_VALUE;
+	private static final ChangeFreq[] CHANGE_FREQS = ChangeFreq.values();
+
+	private final String loc;
+	private final long lastMod;
+	private final ChangeFreq changeFreq;
+	private final double priority;
+
+	/**
+	 * @param loc the location of the page
+	 * @param lastMod the time of the last modification in milliseconds, or {@link #NO_LAST_MOD}
+	 * @param changeFreq how often the page changes, or null
+	 * @param priority the priority of the page, or NaN
+	 */
+	public SitemapUrlRecord(String loc, long lastMod, ChangeFreq changeFreq, double priority) {
+		if (loc == null) throw new NullPointerException("loc may not be null");
+		this.loc = loc;
+		this.lastMod = lastMod;
+		this.changeFreq = changeFreq;
+		this.priority = priority;
+	}
+
+	/** Retrieves the location of the page */
+	public String getLoc() { return loc; }
+	/** Retrieves the lastmod in milliseconds, or {@link #NO_LAST_MOD} */
+	public long getLastModMillis() { return lastMod; }
+	/** Retrieves the lastmod, or null */
+	public Date getLastMod() { return lastMod == NO_LAST_MOD ? null : new Date(lastMod); }
+	/** Retrieves the changefreq, or null */
+	public ChangeFreq getChangeFreq() { return changeFreq; }
+	/** Retrieves the priority, or NaN */
+	public double getPriority() { return priority; }
+
+	/** Whether there's a lastmod */
+	public boolean hasLastMod() { return lastMod != NO_LAST_MOD; }
+	/** Whether there's a priority */
+	public boolean hasPriority() { return !Double.isNaN(priority); }
+
+	/** Converts this record to an URL you can add to a {@link WebSitemapGenerator} */
+	public WebSitemapUrl toWebSitemapUrl() throws MalformedURLException {
+		WebSitemapUrl.Options options = new WebSitemapUrl.Options(loc).changeFreq(changeFreq);
+		if (hasLastMod()) options.lastMod(new Date(lastMod));
+		if (hasPriority()) options.priority(priority);
+		return new WebSitemapUrl(options);
+	}
+
+	/** Whether this record should win over another one for the same location: the latest lastmod wins, and
+	 * ties are broken on the other fields, so the choice doesn't depend on which one was read first */
+	boolean supersedes(SitemapUrlRecord other) {
+		if (lastMod != other.lastMod) return lastMod > other.lastMod;
+		int compare = Double.compare(priority, other.priority);
+		if (compare != 0) return compare > 0;
+		int changeFreq = this.changeFreq == null ? -1 : this.changeFreq.ordinal();
+		int otherChangeFreq = other.changeFreq == null ? -1 : other.changeFreq.ordinal();
+		return changeFreq > otherChangeFreq;
+	}
+
+	/** Writes this record in a compact binary form, for spilling to disk */
+	void writeTo(DataOutput out) throws IOException {
+		out.writeUTF(loc);
+		out.writeLong(lastMod);
+		out.writeByte(changeFreq == null ? -1 : changeFreq.ordinal());
+		out.writeDouble(priority);
+	}
+
+	/** Reads a record written by {@link #writeTo(DataOutput)} */
+	static SitemapUrlRecord readFrom(DataInput in) throws IOException {
+		String loc = in.readUTF();
+		long lastMod = in.readLong();
+		int changeFreq = in.readByte();
+		double priority = in.readDouble();
+		return new SitemapUrlRecord(loc, lastMod, changeFreq < 0 ? null : CHANGE_FREQS[changeFreq], priority);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) return true;
+		if (!(obj instanceof SitemapUrlRecord)) return false;
+		SitemapUrlRecord other = (SitemapUrlRecord) obj;
+		return loc.equals(other.loc) && lastMod == other.lastMod && changeFreq == other.changeFreq
+				&& Double.compare(priority, other.priority) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = loc.hashCode();
+		hash = 31 * hash + (int) (lastMod ^ (lastMod >>> 32));
+		hash = 31 * hash + (changeFreq == null ? 0 : changeFreq.ordinal() + 1);
+		long bits = Double.doubleToLongBits(priority);
+		return 31 * hash + (int) (bits ^ (bits >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(loc);
+		if (hasLastMod()) sb.append(" lastmod=").append(lastMod);
+		if (changeFreq != null) sb.append(" changefreq=").append(changeFreq);
+		if (hasPriority()) sb.append(" priority=").append(priority);
+		return sb.toString();
+	}
+}
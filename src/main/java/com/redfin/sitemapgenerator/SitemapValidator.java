@@ -1,18 +1,21 @@
 package com.redfin.sitemapgenerator;
 
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.GZIPInputStream;
 
 import javax.xml.XMLConstants;
-import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.Source;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 
-import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 /** Validates sitemaps and sitemap indexes
@@ -22,59 +25,109 @@ import org.xml.sax.SAXException;
  */
 public class SitemapValidator {
 	
-	//TODO support gzip
-	//TODO confirm < 10MB
-	//TODO confirm single host
-	//TODO confirm correct host
 	//TODO confirm UTF-8
 	
-	//TODO support Mobile/Geo/Video/Code/News (sitemap.xsd doesn't support them)
-		//TODO confirm mobile restrictions: no non-mobile urls
-		//TODO confirm news restrictions: 3 days, 1000 URLs
-		//TODO video restrictions: title, player_loc/content_loc, no non-video urls
-		//IMO news should have no non-news urls, geo should have no non-geo urls, code should have no non-code urls
+	/** The most a sitemap may weigh, uncompressed: 50MB */
+	public static final long MAX_SITEMAP_BYTES = 50L * 1024 * 1024;
 	
-	private static Schema sitemapSchema, sitemapIndexSchema;
+	/** The limit on the size of a sitemap before the protocol raised it to {@link #MAX_SITEMAP_BYTES}: 10MB */
+	public static final long LEGACY_MAX_SITEMAP_BYTES = 10L * 1024 * 1024;
 	
-	private synchronized static void lazyLoad() {
-		if (sitemapSchema != null)  return;
-		SchemaFactory factory =
-            SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
-		try {
-			InputStream stream = SitemapValidator.class.getResourceAsStream("sitemap.xsd");
-			if (stream == null) throw new RuntimeException("BUG Couldn't load sitemap.xsd");
-			StreamSource source = new StreamSource(stream);
-			sitemapSchema = factory.newSchema(source);
-			
-			stream = SitemapValidator.class.getResourceAsStream("siteindex.xsd");
-			if (stream == null) throw new RuntimeException("BUG Couldn't load siteindex.xsd");
-			source = new StreamSource(stream);
-			sitemapIndexSchema = factory.newSchema(source);
-		} catch (SAXException e) {
-			throw new RuntimeException("BUG", e);
+	/** The compiled schemas, loaded the first time they're needed; a {@link Schema} is thread-safe, so one is shared by everybody */
+	private static class Schemas {
+		static final ValidatorPool SITEMAP, SITEMAP_INDEX;
+		static {
+			SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+			SITEMAP = new ValidatorPool(load(factory, "sitemap.xsd"));
+			SITEMAP_INDEX = new ValidatorPool(load(factory, "siteindex.xsd"));
+		}
+		
+		private static Schema load(SchemaFactory factory, String name) {
+			InputStream stream = SitemapValidator.class.getResourceAsStream(name);
+			if (stream == null) throw new RuntimeException("BUG Couldn't load " + name);
+			try {
+				return factory.newSchema(new StreamSource(stream));
+			} catch (SAXException e) {
+				throw new RuntimeException("BUG", e);
+			}
+		}
+	}
+	
+	/** Validators for one schema.  A {@link Validator} isn't thread-safe, but it can be reused once it's been reset, so
+	 * we keep the idle ones around instead of creating a new one for every file */
+	static final class ValidatorPool implements DocumentValidator {
+		private final Schema schema;
+		private final Queue<Validator> idle = new ConcurrentLinkedQueue<Validator>();
+		
+		ValidatorPool(Schema schema) {
+			this.schema = schema;
+		}
+		
+		public void validate(InputStream in, String systemId) throws SAXException, IOException {
+			validate(new StreamSource(in, systemId));
+		}
+		
+		void validate(Source source) throws SAXException, IOException {
+			Validator validator = idle.poll();
+			if (validator == null) validator = schema.newValidator();
+			validator.validate(source);
+			// only reuse validators that finished cleanly
+			validator.reset();
+			idle.offer(validator);
 		}
 	}
 	
 	/** Validates an ordinary web sitemap file (NOT a Google-specific sitemap) */
 	public static void validateWebSitemap(File sitemap) throws SAXException {
-		lazyLoad();
-		validateXml(sitemap, sitemapSchema);
+		validateXml(sitemap, Schemas.SITEMAP);
 	}
 	
 	/** Validates a sitemap index file  */
 	public static void validateSitemapIndex(File sitemap) throws SAXException {
-		lazyLoad();
-		validateXml(sitemap, sitemapIndexSchema);
+		validateXml(sitemap, Schemas.SITEMAP_INDEX);
+	}
+	
+	/** Checks the structure of a sitemap or sitemap index file, including the rules of the Google extensions
+	 * (mobile, news, video, image, geo and code sitemaps), without a schema; this is much faster than
+	 * {@link #validateWebSitemap(File)}.  The file may be gzipped.
+	 * 
+	 * @param baseUrl every URL must be on the same host as this one; if null, on the same host as the first one
+	 * @param maxBytes the largest the file may be, uncompressed; usually {@link #MAX_SITEMAP_BYTES}
+	 */
+	public static void validateStructure(File sitemap, URL baseUrl, long maxBytes) throws SAXException {
+		validateXml(sitemap, new SitemapStructureValidator(baseUrl, maxBytes));
+	}
+	
+	/** Checks the structure of a sitemap or sitemap index file, with every URL on the same host, and at most {@link #MAX_SITEMAP_BYTES}
+	 * @see #validateStructure(File, URL, long) */
+	public static void validateStructure(File sitemap) throws SAXException {
+		validateStructure(sitemap, null, MAX_SITEMAP_BYTES);
+	}
+	
+	static ValidatorPool webSitemapValidators() {
+		return Schemas.SITEMAP;
+	}
+	
+	static ValidatorPool sitemapIndexValidators() {
+		return Schemas.SITEMAP_INDEX;
 	}
 
-	private static void validateXml(File sitemap, Schema schema) throws SAXException {
-		Validator validator = schema.newValidator();
+	private static void validateXml(File sitemap, DocumentValidator validator) throws SAXException {
+		InputStream stream = null;
 		try {
-			FileReader reader = new FileReader(sitemap);
-			SAXSource source = new SAXSource(new InputSource(reader));
-			validator.validate(source);
+			stream = new FileInputStream(sitemap);
+			if (sitemap.getName().endsWith(".gz")) stream = new GZIPInputStream(stream);
+			validator.validate(stream, sitemap.toURI().toString());
 		} catch (IOException e) {
 			throw new RuntimeException(e);
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException e) {
+					// ignore; we only read from it
+				}
+			}
 		}
 	}
 
@@ -0,0 +1,113 @@
+package com.redfin.sitemapgenerator;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Groups URLs by the month ("m2024_03") or the ISO week ("w2024_09") of their lastmod, for sites where most URLs
+ * stop changing soon after they're created.  Once a period is over (plus a grace period, one day by default), its
+ * group is frozen: a generator that finds the sitemaps of a frozen group in the sitemap index of the last run
+ * lists them in the index as they are, drops any URLs added to the group, and doesn't render it again.  So each run
+ * only needs to add, and render, the URLs of the current period, and of periods not yet frozen.
+ *
+ * <p>URLs without a lastmod go to the group "undated", which never freezes.  A URL whose lastmod is changed
+ * moves to the current period; one that's backdated into a frozen period is left out.  Freezing only works
+ * when the sitemaps stay in the same directory from one run to the next, and every run writes the index with
+ * {@link SitemapGenerator#writeSitemapsWithIndex()}; a group whose sitemaps aren't all there is rendered again.</p>
+ *
+ * <pre>
+ * WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com", dir)
+ *     .partitioner(TimeShardPartitioner.byMonth()).build();
+ * wsg.addUrls(urlsModifiedSince(lastMonth));
+ * wsg.write();
+ * wsg.writeSitemapsWithIndex();
+ * </pre>
+ */
+public class TimeShardPartitioner implements ShardPartitioner<ISitemapUrl> {
+	/** The group of the URLs without a lastmod */
+	public static final String UNDATED = "undated";
+	private static final Pattern SHARD = Pattern.compile("([mw])(\\d{4})_(\\d{2})");
+
+	private final boolean weekly;
+	private TimeZone timeZone = TimeZone.getTimeZone("UTC");
+	private long graceMillis = TimeUnit.DAYS.toMillis(1);
+	private Date now;
+
+	private TimeShardPartitioner(boolean weekly) {
+		this.weekly = weekly;
+	}
+
+	/** One group per calendar month */
+	public static TimeShardPartitioner byMonth() {
+		return new TimeShardPartitioner(false);
+	}
+
+	/** One group per ISO week, which starts on Monday */
+	public static TimeShardPartitioner byWeek() {
+		return new TimeShardPartitioner(true);
+	}
+
+	/** The time zone the periods are in; the default is UTC */
+	public TimeShardPartitioner timeZone(TimeZone timeZone) {
+		this.timeZone = timeZone;
+		return this;
+	}
+
+	/**
+	 * How long after its end a period is frozen, so the run after the end of a period still picks up its last
+	 * changes; it should be at least the time between runs.  The default is one day.
+	 */
+	public TimeShardPartitioner grace(long duration, TimeUnit unit) {
+		if (duration < 0) throw new IllegalArgumentException("The grace period can't be negative: " + duration);
+		this.graceMillis = unit.toMillis(duration);
+		return this;
+	}
+
+	/** The current time, for deciding which periods are frozen; by default, the actual time */
+	public TimeShardPartitioner now(Date now) {
+		this.now = now;
+		return this;
+	}
+
+	public String getShard(ISitemapUrl url) {
+		Date lastMod = url.getLastMod();
+		if (lastMod == null) return UNDATED;
+		Calendar calendar = newCalendar();
+		calendar.setTime(lastMod);
+		if (weekly) {
+			return String.format("w%04d_%02d", calendar.getWeekYear(), calendar.get(Calendar.WEEK_OF_YEAR));
+		}
+		return String.format("m%04d_%02d", calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH) + 1);
+	}
+
+	/** Whether a group is over, including its grace period, so its sitemaps won't change any more */
+	public boolean isFrozen(String shard) {
+		Matcher matcher = SHARD.matcher(shard);
+		if (!matcher.matches() || matcher.group(1).equals("w") != weekly) return false;
+		int year = Integer.parseInt(matcher.group(2));
+		int period = Integer.parseInt(matcher.group(3));
+		Calendar end = newCalendar();
+		end.clear();
+		if (weekly) {
+			end.setWeekDate(year, period, Calendar.MONDAY);
+			end.add(Calendar.DAY_OF_MONTH, 7);
+		} else {
+			end.set(year, period - 1, 1);
+			end.add(Calendar.MONTH, 1);
+		}
+		long current = now == null ? System.currentTimeMillis() : now.getTime();
+		return end.getTimeInMillis() + graceMillis <= current;
+	}
+
+	private Calendar newCalendar() {
+		GregorianCalendar calendar = new GregorianCalendar(timeZone);
+		calendar.setFirstDayOfWeek(Calendar.MONDAY);
+		calendar.setMinimalDaysInFirstWeek(4);
+		return calendar;
+	}
+}
@@ -0,0 +1,135 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.MalformedInputException;
+
+/** An {@link XmlSink} that encodes straight to UTF-8 bytes in its own buffer.  Constant
+ * {@link XmlFragment}s are copied with {@link System#arraycopy}; only dynamic values are encoded (and escaped).
+ */
+final class Utf8XmlSink extends XmlSink {
+	private static final XmlFragment AMP = XmlFragment.of("&amp;");
+	private static final XmlFragment APOS = XmlFragment.of("&apos;");
+	private static final XmlFragment QUOT = XmlFragment.of("&quot;");
+	private static final XmlFragment GT = XmlFragment.of("&gt;");
+	private static final XmlFragment LT = XmlFragment.of("&lt;");
+	
+	private final OutputStream out;
+	private final byte[] buffer;
+	private int count;
+	/** how many bytes were written to out */
+	private long flushed;
+	
+	Utf8XmlSink(OutputStream out) {
+		this(out, false);
+	}
+	
+	Utf8XmlSink(OutputStream out, boolean compact) {
+		this(out, compact, 8192);
+	}
+	
+	Utf8XmlSink(OutputStream out, boolean compact, int bufferSize) {
+		super(compact);
+		this.out = out;
+		this.buffer = new byte[bufferSize];
+	}
+	
+	XmlSink append(XmlFragment fragment) throws IOException {
+		return appendUtf8(compact ? fragment.compactUtf8 : fragment.utf8);
+	}
+	
+	XmlSink appendUtf8(byte[] bytes) throws IOException {
+		if (bytes.length > buffer.length - count) {
+			flushBuffer();
+			if (bytes.length > buffer.length) {
+				out.write(bytes);
+				flushed += bytes.length;
+				return this;
+			}
+		}
+		System.arraycopy(bytes, 0, buffer, count, bytes.length);
+		count += bytes.length;
+		return this;
+	}
+	
+	XmlSink append(String markup) throws IOException {
+		append(markup, 0, markup.length());
+		return this;
+	}
+	
+	XmlSink append(char c) throws IOException {
+		if (c < 0x80) {
+			if (count == buffer.length) flushBuffer();
+			buffer[count++] = (byte) c;
+		} else {
+			append(String.valueOf(c));
+		}
+		return this;
+	}
+	
+	void append(String string, int start, int end) throws IOException {
+		for (int i = start; i < end; i++) {
+			i = encode(string, i, end);
+		}
+	}
+	
+	XmlSink text(String value) throws IOException {
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '&': append(AMP); break;
+			case '\'': append(APOS); break;
+			case '"': append(QUOT); break;
+			case '>': append(GT); break;
+			case '<': append(LT); break;
+			default: i = encode(value, i, length);
+			}
+		}
+		return this;
+	}
+	
+	void flush() throws IOException {
+		flushBuffer();
+		out.flush();
+	}
+	
+	/** How many bytes were appended so far */
+	long position() {
+		return flushed + count;
+	}
+	
+	private void flushBuffer() throws IOException {
+		if (count > 0) {
+			out.write(buffer, 0, count);
+			flushed += count;
+			count = 0;
+		}
+	}
+	
+	/** Encodes the character at string[i] (two characters for a surrogate pair) and returns the index of the last one consumed */
+	private int encode(String string, int i, int end) throws IOException {
+		if (buffer.length - count < 4) flushBuffer();
+		char c = string.charAt(i);
+		if (c < 0x80) {
+			buffer[count++] = (byte) c;
+		} else if (c < 0x800) {
+			buffer[count++] = (byte) (0xc0 | (c >> 6));
+			buffer[count++] = (byte) (0x80 | (c & 0x3f));
+		} else if (Character.isSurrogate(c)) {
+			if (!Character.isHighSurrogate(c) || i + 1 >= end || !Character.isLowSurrogate(string.charAt(i + 1))) {
+				throw new MalformedInputException(1);
+			}
+			int codePoint = Character.toCodePoint(c, string.charAt(++i));
+			buffer[count++] = (byte) (0xf0 | (codePoint >> 18));
+			buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+			buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+			buffer[count++] = (byte) (0x80 | (codePoint & 0x3f));
+		} else {
+			buffer[count++] = (byte) (0xe0 | (c >> 12));
+			buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+			buffer[count++] = (byte) (0x80 | (c & 0x3f));
+		}
+		return i;
+	}
+}
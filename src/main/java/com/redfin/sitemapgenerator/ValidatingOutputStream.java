@@ -0,0 +1,160 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.xml.sax.SAXException;
+
+/** Tees the XML written to a sitemap into a schema validator, so the file never has to be read back.  Wrap
+ * it around the stream that receives the uncompressed XML (i.e. outside the {@link java.util.zip.GZIPOutputStream},
+ * if any); the validator runs on another thread, consuming chunks as they are written.  Once the stream is
+ * closed, call {@link #finish()} to wait for the validator and find out whether the document was valid.
+ */
+final class ValidatingOutputStream extends OutputStream {
+	private static final byte[] END = new byte[0];
+	private static final Executor NEW_THREAD = new Executor() {
+		public void execute(Runnable command) {
+			Thread thread = new Thread(command, "sitemap-validator");
+			thread.setDaemon(true);
+			thread.start();
+		}
+	};
+
+	private final OutputStream out;
+	private final BlockingQueue<byte[]> chunks;
+	private final CountDownLatch done = new CountDownLatch(1);
+	private volatile Exception failure;
+	private boolean closed;
+
+	/** Validates on a new thread, which keeps pace with the writer */
+	ValidatingOutputStream(OutputStream out, DocumentValidator validator) {
+		this(out, validator, NEW_THREAD, 16);
+	}
+
+	/**
+	 * @param executor runs the validation; if it's busy, the chunks wait in memory
+	 * @param capacity how many chunks may be waiting before the writer blocks, or {@link Integer#MAX_VALUE} to
+	 * never block (buffering the whole document if need be)
+	 */
+	ValidatingOutputStream(OutputStream out, final DocumentValidator validator, Executor executor, int capacity) {
+		this.out = out;
+		chunks = new LinkedBlockingQueue<byte[]>(capacity);
+		executor.execute(new Runnable() {
+			public void run() {
+				validate(validator);
+			}
+		});
+	}
+
+	private void validate(DocumentValidator validator) {
+		try {
+			validator.validate(new ChunkInputStream(), null);
+		} catch (Exception e) {
+			failure = e;
+			// nobody will read the rest of the document, so make sure the writer can't block on a full queue
+			chunks.clear();
+		} finally {
+			done.countDown();
+		}
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		if (len == 0 || failure != null) return;
+		byte[] chunk = new byte[len];
+		System.arraycopy(b, off, chunk, 0, len);
+		put(chunk);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) return;
+		closed = true;
+		try {
+			out.close();
+		} finally {
+			if (failure == null) put(END);
+		}
+	}
+
+	/** Waits for the validator to read the whole document; call this after {@link #close()}
+	 *
+	 * @throws SAXException if the document was not valid
+	 */
+	void finish() throws SAXException {
+		if (!closed) throw new IllegalStateException("Stream not closed yet");
+		try {
+			done.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while validating", e);
+		}
+		Exception failure = this.failure;
+		if (failure == null) return;
+		if (failure instanceof SAXException) throw (SAXException) failure;
+		throw new RuntimeException(failure);
+	}
+
+	private void put(byte[] chunk) throws IOException {
+		try {
+			chunks.put(chunk);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while validating");
+		}
+		if (failure != null) chunks.clear();
+	}
+
+	/** Reads back the chunks, in order, until the end marker */
+	private class ChunkInputStream extends InputStream {
+		private byte[] chunk;
+		private int pos;
+
+		@Override
+		public int read() throws IOException {
+			if (!next()) return -1;
+			return chunk[pos++] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) return 0;
+			if (!next()) return -1;
+			int count = Math.min(len, chunk.length - pos);
+			System.arraycopy(chunk, pos, b, off, count);
+			pos += count;
+			return count;
+		}
+
+		private boolean next() throws IOException {
+			if (chunk == END) return false;
+			while (chunk == null || pos == chunk.length) {
+				try {
+					chunk = chunks.take();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+				pos = 0;
+				if (chunk == END) return false;
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package com.redfin.sitemapgenerator;
+
+/**
+ * Decides which sitemaps get validated, when {@link AbstractSitemapGeneratorOptions#autoValidate(boolean)} or
+ * {@link AbstractSitemapGeneratorOptions#autoValidateStructure(boolean)} is on.  Validating a sample of the
+ * sitemaps of a very large run still catches most rendering bugs, for a fraction of the cost.  The sitemap
+ * index is always validated.
+ *
+ * @see AbstractSitemapGeneratorOptions#validationPolicy(ValidationPolicy)
+ */
+public interface ValidationPolicy {
+
+	/** Validate every sitemap; this is the default */
+	ValidationPolicy ALL = new ValidationPolicy() {
+		public boolean shouldValidate(int sitemap, boolean last) {
+			return true;
+		}
+	};
+
+	/** Validate only the first and the last sitemap */
+	ValidationPolicy FIRST_AND_LAST = new ValidationPolicy() {
+		public boolean shouldValidate(int sitemap, boolean last) {
+			return sitemap == 0 || last;
+		}
+	};
+
+	/**
+	 * @param sitemap the number of the sitemap, counting from 0
+	 * @param last whether this is the last sitemap the generator will write
+	 * @return whether to validate it
+	 */
+	boolean shouldValidate(int sitemap, boolean last);
+
+	/** Validate the first sitemap, and every nth one after it */
+	static ValidationPolicy everyNth(final int n) {
+		if (n < 1) throw new IllegalArgumentException("n must be at least 1: " + n);
+		return new ValidationPolicy() {
+			public boolean shouldValidate(int sitemap, boolean last) {
+				return sitemap % n == 0;
+			}
+		};
+	}
+
+	/**
+	 * Validate a random sample of the sitemaps.  The choice for each sitemap only depends on the seed and on
+	 * the number of the sitemap, so a run with the same seed validates the same sitemaps again.
+	 *
+	 * @param fraction the probability that a sitemap is validated, from 0.0 to 1.0
+	 * @param seed the seed of the random choice
+	 */
+	static ValidationPolicy fraction(final double fraction, final long seed) {
+		if (!(fraction >= 0.0 && fraction <= 1.0)) throw new IllegalArgumentException("fraction must be between 0.0 and 1.0: " + fraction);
+		return new ValidationPolicy() {
+			public boolean shouldValidate(int sitemap, boolean last) {
+				// SplitMix64, so that consecutive sitemaps get independent choices
+				long z = seed + (sitemap + 1) * 0x9E3779B97F4A7C15L;
+				z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+				z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+				z = z ^ (z >>> 31);
+				return (z >>> 11) * 0x1.0p-53 < fraction;
+			}
+		};
+	}
+}
@@ -10,6 +10,7 @@ import static java.util.Calendar.SECOND;
 
 import java.text.DateFormat;
 import java.text.FieldPosition;
+import java.text.ParseException;
 import java.text.ParsePosition;
 import java.text.SimpleDateFormat;
 import java.util.Date;
@@ -36,8 +37,8 @@ import java.util.TimeZone;
  * RFC 822 timezones generated by SimpleDateFormat, which omit the ":" like this: "+0030" or "-0800".</p>
  * 
  * <p>This class allows you to either specify which format pattern to use, or (by default) to
- * automatically guess which pattern to use (AUTO mode).  When parsing in AUTO mode, we'll try parsing using each pattern
- * until we find one that works.  When formatting in AUTO mode, we'll use this algorithm:
+ * automatically guess which pattern to use (AUTO mode).  When parsing in AUTO mode, we'll detect the pattern from the
+ * length and separators of the string (see {@link W3CDateParser}).  When formatting in AUTO mode, we'll use this algorithm:
  * 
  * <ol><li>If the date has fractional milliseconds (e.g. 2009-06-06T19:49:04.45Z) we'll use the MILLISECOND pattern
  * <li>Otherwise, if the date has non-zero seconds (e.g. 2009-06-06T19:49:04Z) we'll use the SECOND pattern
@@ -45,7 +46,8 @@ import java.util.TimeZone;
  * <li>Otherwise, we'll use the DAY pattern.  If you want to format using the MONTH or YEAR pattern, you must declare it explicitly.
  * </ol>
  * 
- * Finally note that, like all classes that inherit from DateFormat, <b>this class is not thread-safe</b>.  Also note that you
+ * Finally note that, like all classes that inherit from DateFormat, <b>this class is not thread-safe</b>; if you only need
+ * to parse, {@link W3CDateParser} is stateless and can be shared across threads.  Also note that you
  * can explicitly specify the timezone to use for formatting using the {@link #setTimeZone(TimeZone)} method.
  * 
  * @author Dan Fabulich
@@ -133,21 +135,15 @@ public class W3CDateFormat extends SimpleDateFormat {
 	/** This is what you override when you extend DateFormat; use {@link DateFormat#parse(String)} instead */
 	@Override
 	public Date parse(String text, ParsePosition pos) {
-		text = convertW3cTimeZoneToRfc822(text); 
-		if (pattern == Pattern.AUTO) {
-			return autoParse(text, pos);
-		}
-		return super.parse(text, pos);
-	}
-	
-	private Date autoParse(String text, ParsePosition pos) {
-		for (Pattern pattern : Pattern.values()) {
-			if (pattern == Pattern.AUTO) continue;
-			applyPattern(pattern);
-			Date out = super.parse(text, pos);
-			if (out != null) return out;
+		int start = pos.getIndex();
+		try {
+			long millis = W3CDateParser.parse(text, start, text.length(), pattern, getTimeZone());
+			pos.setIndex(text.length());
+			return new Date(millis);
+		} catch (ParseException e) {
+			pos.setErrorIndex(e.getErrorOffset());
+			return null; // this will force a ParseException
 		}
-		return null; // this will force a ParseException
 	}
 	
 	private void convertRfc822TimeZoneToW3c(StringBuffer toAppendTo) {		
@@ -159,15 +155,4 @@ public class W3CDateFormat extends SimpleDateFormat {
 		}
 	}
 	
-	private String convertW3cTimeZoneToRfc822(String source) {
-		int length = source.length();
-		if (source.endsWith("Z")) {
-			return source.substring(0, length-1) + "+0000";
-		}
-		if (source.charAt(length-3) == ':') {
-			return source.substring(0, length-3) + source.substring(length - 2);
-		}
-		return source;
-	}
-	
 }
\ No newline at end of file
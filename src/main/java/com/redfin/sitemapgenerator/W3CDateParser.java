@@ -0,0 +1,185 @@
+package com.redfin.sitemapgenerator;
+
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.Date;
+import java.util.TimeZone;
+
+import com.redfin.sitemapgenerator.W3CDateFormat.Pattern;
+
+/**
+ * <p>Parses dates in the six W3C date time formats (see {@link W3CDateFormat}) in a single pass, without
+ * creating any intermediate objects.  The precision is detected from the length of the string and the
+ * separators it contains, so there's no need to try each {@link Pattern} in turn.</p>
+ *
+ * <p>Unlike {@link W3CDateFormat}, this class holds no state at all, so it's safe to share across threads;
+ * use it when you need to parse lots of dates (e.g. lastmod values loaded from a feed, or read back from
+ * an existing sitemap).</p>
+ *
+ * <p>Fractional seconds are interpreted as a decimal fraction, as the W3C note describes, so
+ * "19:20:30.45" means 450 milliseconds; digits beyond the millisecond are ignored.</p>
+ *
+ * @see <a href="http://www.w3.org/TR/NOTE-datetime">Date and Time Formats</a>
+ */
+public final class W3CDateParser {
+
+	private W3CDateParser() {}
+
+	/** Parses a W3C date time into milliseconds since the epoch; dates without a time zone are treated as GMT
+	 *
+	 * @throws ParseException if the string isn't a valid W3C date time
+	 */
+	public static long parseMillis(CharSequence text) throws ParseException {
+		return parseMillis(text, W3CDateFormat.ZULU);
+	}
+
+	/** Parses a W3C date time into milliseconds since the epoch
+	 *
+	 * @param text the date to parse
+	 * @param timeZone the time zone of dates that don't specify one (YEAR, MONTH and DAY precision)
+	 * @throws ParseException if the string isn't a valid W3C date time
+	 */
+	public static long parseMillis(CharSequence text, TimeZone timeZone) throws ParseException {
+		return parse(text, 0, text.length(), Pattern.AUTO, timeZone);
+	}
+
+	/** Parses a W3C date time into an {@link Instant}; dates without a time zone are treated as GMT
+	 *
+	 * @throws ParseException if the string isn't a valid W3C date time
+	 */
+	public static Instant parseInstant(CharSequence text) throws ParseException {
+		return Instant.ofEpochMilli(parseMillis(text));
+	}
+
+	/** Parses a W3C date time into a {@link Date}
+	 *
+	 * @param text the date to parse
+	 * @param timeZone the time zone of dates that don't specify one (YEAR, MONTH and DAY precision)
+	 * @throws ParseException if the string isn't a valid W3C date time
+	 */
+	public static Date parseDate(CharSequence text, TimeZone timeZone) throws ParseException {
+		return new Date(parseMillis(text, timeZone));
+	}
+
+	/** Parses text[start, end) which must match the expected pattern exactly (any pattern, for {@link Pattern#AUTO}) */
+	static long parse(CharSequence text, int start, int end, Pattern expected, TimeZone timeZone) throws ParseException {
+		int length = end - start;
+		int year = digits(text, start, 4, end);
+		Pattern detected = Pattern.YEAR;
+		int month = 1, day = 1, hour = 0, minute = 0, second = 0, millis = 0;
+		if (length > 4) {
+			separator(text, start + 4, end, '-');
+			month = digits(text, start + 5, 2, end);
+			detected = Pattern.MONTH;
+		}
+		if (length > 7) {
+			separator(text, start + 7, end, '-');
+			day = digits(text, start + 8, 2, end);
+			detected = Pattern.DAY;
+		}
+		int offsetMillis = 0;
+		if (length > 10) {
+			separator(text, start + 10, end, 'T');
+			hour = digits(text, start + 11, 2, end);
+			separator(text, start + 13, end, ':');
+			minute = digits(text, start + 14, 2, end);
+			detected = Pattern.MINUTE;
+			int pos = start + 16;
+			if (pos < end && text.charAt(pos) == ':') {
+				second = digits(text, pos + 1, 2, end);
+				detected = Pattern.SECOND;
+				pos += 3;
+				if (pos < end && text.charAt(pos) == '.') {
+					int fractionStart = ++pos;
+					int scale = 100;
+					while (pos < end && isDigit(text.charAt(pos))) {
+						millis += (text.charAt(pos) - '0') * scale;
+						scale /= 10;
+						pos++;
+					}
+					if (pos == fractionStart) throw new ParseException("Missing fractional seconds", pos);
+					detected = Pattern.MILLISECOND;
+				}
+			}
+			offsetMillis = timeZoneDesignator(text, pos, end);
+		}
+		if (expected != Pattern.AUTO && expected != detected) {
+			throw new ParseException("Expected " + expected + " precision but found " + detected, start);
+		}
+		if (month < 1 || month > 12) throw new ParseException("Invalid month", start + 5);
+		if (day < 1 || day > daysInMonth(year, month)) throw new ParseException("Invalid day", start + 8);
+		if (hour > 23) throw new ParseException("Invalid hour", start + 11);
+		if (minute > 59) throw new ParseException("Invalid minute", start + 14);
+		if (second > 59) throw new ParseException("Invalid second", start + 17);
+
+		long local = ((((daysFromCivil(year, month, day) * 24 + hour) * 60 + minute) * 60 + second) * 1000) + millis;
+		if (detected.ordinal() <= Pattern.MINUTE.ordinal()) return local - offsetMillis;
+		return local - zoneOffset(local, timeZone);
+	}
+
+	private static int timeZoneDesignator(CharSequence text, int pos, int end) throws ParseException {
+		if (pos >= end) throw new ParseException("Missing time zone designator", pos);
+		char c = text.charAt(pos);
+		if (c == 'Z') {
+			if (pos + 1 != end) throw new ParseException("Unexpected text after time zone designator", pos + 1);
+			return 0;
+		}
+		if (c != '+' && c != '-') throw new ParseException("Invalid time zone designator", pos);
+		int hours = digits(text, pos + 1, 2, end);
+		int minutesPos = pos + 3;
+		// W3C designators look like "+01:00", but we also accept RFC 822 style "+0100"
+		if (minutesPos < end && text.charAt(minutesPos) == ':') minutesPos++;
+		int minutes = digits(text, minutesPos, 2, end);
+		if (minutesPos + 2 != end) throw new ParseException("Unexpected text after time zone designator", minutesPos + 2);
+		if (hours > 23 || minutes > 59) throw new ParseException("Invalid time zone designator", pos);
+		int offset = (hours * 60 + minutes) * 60000;
+		return c == '-' ? -offset : offset;
+	}
+
+	private static int zoneOffset(long local, TimeZone timeZone) {
+		if (timeZone == null) return 0;
+		int offset = timeZone.getOffset(local - timeZone.getRawOffset());
+		return timeZone.getOffset(local - offset);
+	}
+
+	private static int digits(CharSequence text, int pos, int count, int end) throws ParseException {
+		if (pos + count > end) throw new ParseException("Unexpected end of date", end);
+		int value = 0;
+		for (int i = pos; i < pos + count; i++) {
+			char c = text.charAt(i);
+			if (!isDigit(c)) throw new ParseException("Expected a digit", i);
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	private static void separator(CharSequence text, int pos, int end, char expected) throws ParseException {
+		if (pos >= end || text.charAt(pos) != expected) throw new ParseException("Expected '" + expected + "'", pos);
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static int daysInMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			boolean leap = (year % 4 == 0) && (year % 100 != 0 || year % 400 == 0);
+			return leap ? 29 : 28;
+		case 4: case 6: case 9: case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/** Days since 1970-01-01 in the proleptic Gregorian calendar */
+	private static long daysFromCivil(int year, int month, int day) {
+		if (month <= 2) year--;
+		long era = (year >= 0 ? year : year - 399) / 400;
+		long yearOfEra = year - era * 400;
+		long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+}
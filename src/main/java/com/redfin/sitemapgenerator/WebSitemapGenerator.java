@@ -85,9 +85,5 @@ public class WebSitemapGenerator extends SitemapGenerator<WebSitemapUrl,WebSitem
 			return null;
 		}
 
-		public void render(WebSitemapUrl url, StringBuilder sb, W3CDateFormat dateFormat) {
-			super.render(url, sb, dateFormat, null);
-		}
-
 	}
 }
@@ -0,0 +1,40 @@
+package com.redfin.sitemapgenerator;
+
+import java.nio.charset.Charset;
+
+/** A constant piece of markup, encoded to UTF-8 once so byte-oriented sinks can copy it as-is.  Each fragment
+ * also has a compact form without the indentation and newlines, for sinks writing compact XML.
+ */
+final class XmlFragment {
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	
+	final String text;
+	final byte[] utf8;
+	final String compactText;
+	final byte[] compactUtf8;
+	
+	private XmlFragment(String text, String compactText) {
+		this.text = text;
+		this.utf8 = text.getBytes(UTF_8);
+		this.compactText = compactText;
+		this.compactUtf8 = compactText.getBytes(UTF_8);
+	}
+	
+	/** A fragment whose compact form just drops the leading indentation and the trailing newline */
+	static XmlFragment of(String text) {
+		int start = 0;
+		int end = text.length();
+		while (start < end && text.charAt(start) == ' ') start++;
+		if (end > start && text.charAt(end - 1) == '\n') end--;
+		return new XmlFragment(text, text.substring(start, end));
+	}
+	
+	static XmlFragment of(String text, String compactText) {
+		return new XmlFragment(text, compactText);
+	}
+	
+	@Override
+	public String toString() {
+		return text;
+	}
+}
@@ -0,0 +1,97 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/** A low-level destination for sitemap XML.  Markup is appended as-is, while {@link #text(String)} escapes
+ * the value in place, so renderers never need a temporary buffer to assemble an element.  A compact sink
+ * writes the compact form of each {@link XmlFragment}, without insignificant whitespace.
+ * @see Utf8XmlSink
+ */
+abstract class XmlSink {
+	final boolean compact;
+	
+	XmlSink(boolean compact) {
+		this.compact = compact;
+	}
+	
+	/** Appends a constant fragment of markup */
+	XmlSink append(XmlFragment fragment) throws IOException {
+		return append(compact ? fragment.compactText : fragment.text);
+	}
+	
+	/** Appends markup as-is */
+	abstract XmlSink append(String markup) throws IOException;
+	
+	/** Appends markup that's already encoded to UTF-8, e.g. by a {@link Utf8XmlSink}, as-is */
+	XmlSink appendUtf8(byte[] utf8) throws IOException {
+		return append(new String(utf8, StandardCharsets.UTF_8));
+	}
+	
+	/** Appends a single character as-is */
+	abstract XmlSink append(char c) throws IOException;
+	
+	/** Appends the characters string[start, end) as-is */
+	abstract void append(String string, int start, int end) throws IOException;
+	
+	/** Appends a text value, escaping it for XML */
+	XmlSink text(String value) throws IOException {
+		int start = 0;
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			String entity = entity(value.charAt(i));
+			if (entity == null) continue;
+			if (i > start) append(value, start, i);
+			append(entity);
+			start = i + 1;
+		}
+		if (start < length) append(value, start, length);
+		return this;
+	}
+	
+	/** Flushes anything buffered to the underlying destination */
+	void flush() throws IOException {}
+	
+	static String entity(char c) {
+		switch (c) {
+		case '&': return "&amp;";
+		case '\'': return "&apos;";
+		case '"': return "&quot;";
+		case '>': return "&gt;";
+		case '<': return "&lt;";
+		default: return null;
+		}
+	}
+	
+	static XmlSink of(StringBuilder sb) {
+		return new StringBuilderSink(sb, false);
+	}
+	
+	static XmlSink of(StringBuilder sb, boolean compact) {
+		return new StringBuilderSink(sb, compact);
+	}
+	
+	
+	private static class StringBuilderSink extends XmlSink {
+		private final StringBuilder sb;
+		
+		StringBuilderSink(StringBuilder sb, boolean compact) {
+			super(compact);
+			this.sb = sb;
+		}
+		
+		XmlSink append(String markup) {
+			sb.append(markup);
+			return this;
+		}
+		
+		XmlSink append(char c) {
+			sb.append(c);
+			return this;
+		}
+		
+		void append(String string, int start, int end) {
+			sb.append(string, start, end);
+		}
+	}
+}
@@ -0,0 +1,12 @@
+package com.redfin.sitemapgenerator;
+
+/** The pre-encoded open and close tags of a namespaced extension element, e.g. &lt;video:title&gt; */
+final class XmlTag {
+	final XmlFragment open;
+	final XmlFragment close;
+	
+	XmlTag(String namespace, String tagName) {
+		this.open = XmlFragment.of("      <" + namespace + ':' + tagName + '>');
+		this.close = XmlFragment.of("</" + namespace + ':' + tagName + ">\n");
+	}
+}
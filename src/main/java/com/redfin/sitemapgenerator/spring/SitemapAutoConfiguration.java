@@ -0,0 +1,66 @@
+package com.redfin.sitemapgenerator.spring;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.redfin.sitemapgenerator.WebSitemapGenerator;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Sets up the sitemaps of a Spring Boot application once "sitemap.base-url" is configured: declare
+ * {@link SitemapUrlProvider} beans, and the sitemaps are regenerated on a schedule, on a thread of their own,
+ * served by {@link SitemapController} in web applications, and measured by {@link SitemapMetrics} if Micrometer
+ * is there.  Every bean can be replaced by declaring one of the same type.
+ */
+@Configuration
+@ConditionalOnClass(WebSitemapGenerator.class)
+@ConditionalOnProperty(prefix = "sitemap", name = "base-url")
+@EnableConfigurationProperties(SitemapProperties.class)
+public class SitemapAutoConfiguration {
+
+	@Bean
+	@ConditionalOnMissingBean
+	public SitemapGeneratorFactory sitemapGeneratorFactory(SitemapProperties properties) {
+		return new SitemapGeneratorFactory(properties);
+	}
+
+	@Bean
+	@ConditionalOnMissingBean
+	public SitemapRegenerator sitemapRegenerator(SitemapGeneratorFactory factory,
+			ObjectProvider<List<SitemapUrlProvider>> providers, SitemapProperties properties) {
+		List<SitemapUrlProvider> list = providers.getIfAvailable();
+		if (list == null) list = Collections.emptyList();
+		return new SitemapRegenerator(factory, list, properties);
+	}
+
+	@Configuration
+	@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+	@ConditionalOnClass(name = "org.springframework.web.servlet.DispatcherServlet")
+	static class Web {
+		@Bean
+		@ConditionalOnMissingBean
+		public SitemapController sitemapController(SitemapRegenerator regenerator, SitemapProperties properties) {
+			return new SitemapController(regenerator, properties);
+		}
+	}
+
+	@Configuration
+	@ConditionalOnClass(MeterRegistry.class)
+	static class Metrics {
+		@Bean
+		@ConditionalOnMissingBean
+		public SitemapMetrics sitemapMetrics(SitemapRegenerator regenerator) {
+			return new SitemapMetrics(regenerator);
+		}
+	}
+}
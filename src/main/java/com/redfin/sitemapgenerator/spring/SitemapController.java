@@ -0,0 +1,49 @@
+package com.redfin.sitemapgenerator.spring;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+/**
+ * Serves the current set of sitemaps, at "sitemap.path".  Responses carry an ETag and a Last-Modified date, so
+ * clients (and caches in front of the application) get a 304 when their copy is current, and may be cached for
+ * "sitemap.cache-max-age".
+ */
+@RestController
+public class SitemapController {
+	private static final MediaType GZIP = MediaType.parseMediaType("application/x-gzip");
+
+	private final SitemapRegenerator regenerator;
+	private final CacheControl cacheControl;
+
+	public SitemapController(SitemapRegenerator regenerator, SitemapProperties properties) {
+		this.regenerator = regenerator;
+		cacheControl = CacheControl.maxAge(properties.getCacheMaxAge().getSeconds(), TimeUnit.SECONDS).cachePublic();
+	}
+
+	@GetMapping("${sitemap.path:}/{name:[\\w.-]+\\.xml(?:\\.gz)?}")
+	public ResponseEntity<Resource> sitemap(@PathVariable String name, WebRequest request) {
+		SitemapSet set = regenerator.getCurrent();
+		if (set == null) return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+		File file = set.getFile(name);
+		if (file == null) return ResponseEntity.notFound().build();
+		// a published set is never modified, so its generation and the name identify the content
+		String eTag = "\"" + set.getGeneration() + "-" + Long.toHexString(set.getPublished().getTime()) + "-" + name + "\"";
+		if (request.checkNotModified(eTag, set.getPublished().getTime())) return null;
+		return ResponseEntity.ok()
+			.cacheControl(cacheControl)
+			.contentType(name.endsWith(".gz") ? GZIP : MediaType.APPLICATION_XML)
+			.contentLength(file.length())
+			.body(new FileSystemResource(file));
+	}
+}
@@ -0,0 +1,31 @@
+package com.redfin.sitemapgenerator.spring;
+
+import java.io.File;
+import java.net.MalformedURLException;
+
+import com.redfin.sitemapgenerator.W3CDateFormat;
+import com.redfin.sitemapgenerator.WebSitemapGenerator;
+
+/**
+ * Makes generators configured from the {@link SitemapProperties}.  Generators (and their {@link W3CDateFormat})
+ * aren't thread-safe, and can only write once, so this bean is shared rather than a generator: every call makes a
+ * new one, with its own date format.
+ */
+public class SitemapGeneratorFactory {
+	private final SitemapProperties properties;
+
+	public SitemapGeneratorFactory(SitemapProperties properties) {
+		this.properties = properties;
+	}
+
+	/** Makes a generator that writes to the directory */
+	public WebSitemapGenerator newGenerator(File dir) throws MalformedURLException {
+		return WebSitemapGenerator.builder(properties.getBaseUrl(), dir)
+			.dateFormat(new W3CDateFormat())
+			.gzip(properties.isGzip())
+			.compact(properties.isCompact())
+			.maxUrls(properties.getMaxUrls())
+			.allowEmptySitemap(true)
+			.build();
+	}
+}
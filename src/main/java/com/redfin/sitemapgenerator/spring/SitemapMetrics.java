@@ -0,0 +1,53 @@
+package com.redfin.sitemapgenerator.spring;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Exposes the state of the {@link SitemapRegenerator} as metrics: how long the last generation took, how many
+ * sitemaps the current set has, how old it is, and how many generations were published or failed.
+ */
+public class SitemapMetrics implements MeterBinder {
+	private final SitemapRegenerator regenerator;
+
+	public SitemapMetrics(SitemapRegenerator regenerator) {
+		this.regenerator = regenerator;
+	}
+
+	public void bindTo(MeterRegistry registry) {
+		TimeGauge.builder("sitemap.generation.duration", regenerator, TimeUnit.MILLISECONDS, new ToDoubleFunction<SitemapRegenerator>() {
+			public double applyAsDouble(SitemapRegenerator regenerator) {
+				SitemapSet set = regenerator.getCurrent();
+				return set == null ? Double.NaN : set.getDurationMillis();
+			}
+		}).description("How long the current set of sitemaps took to generate").register(registry);
+		TimeGauge.builder("sitemap.age", regenerator, TimeUnit.MILLISECONDS, new ToDoubleFunction<SitemapRegenerator>() {
+			public double applyAsDouble(SitemapRegenerator regenerator) {
+				SitemapSet set = regenerator.getCurrent();
+				return set == null ? Double.NaN : System.currentTimeMillis() - set.getPublished().getTime();
+			}
+		}).description("How long ago the current set of sitemaps was published").register(registry);
+		Gauge.builder("sitemap.files", regenerator, new ToDoubleFunction<SitemapRegenerator>() {
+			public double applyAsDouble(SitemapRegenerator regenerator) {
+				SitemapSet set = regenerator.getCurrent();
+				return set == null ? Double.NaN : set.getSitemapCount();
+			}
+		}).description("How many sitemaps the current set has, not counting the index").register(registry);
+		FunctionCounter.builder("sitemap.generations", regenerator, new ToDoubleFunction<SitemapRegenerator>() {
+			public double applyAsDouble(SitemapRegenerator regenerator) {
+				return regenerator.getGenerations();
+			}
+		}).description("How many sets of sitemaps were published").register(registry);
+		FunctionCounter.builder("sitemap.generation.failures", regenerator, new ToDoubleFunction<SitemapRegenerator>() {
+			public double applyAsDouble(SitemapRegenerator regenerator) {
+				return regenerator.getFailures();
+			}
+		}).description("How many generations failed").register(registry);
+	}
+}
@@ -0,0 +1,52 @@
+package com.redfin.sitemapgenerator.spring;
+
+import java.io.File;
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/** The "sitemap.*" configuration properties */
+@ConfigurationProperties(prefix = "sitemap")
+public class SitemapProperties {
+	/** All URLs must be under this base URL, and the sitemap index refers to the sitemaps under it; required */
+	private String baseUrl;
+	/** Where the sets of sitemaps are generated; each one goes in a new version directory */
+	private File outputDir = new File(System.getProperty("java.io.tmpdir"), "sitemaps");
+	/** How many published versions to keep for rollback, including the current one */
+	private int keep = 3;
+	/** Whether to gzip the sitemaps */
+	private boolean gzip = false;
+	/** Whether to leave out the indentation */
+	private boolean compact = false;
+	/** The most URLs per sitemap */
+	private int maxUrls = 50000;
+	/** How long to wait between the end of one generation and the start of the next */
+	private Duration interval = Duration.ofHours(1);
+	/** How long to wait before the first generation */
+	private Duration initialDelay = Duration.ZERO;
+	/** Where the controller serves the sitemaps, e.g. "/sitemaps"; by default, at the root */
+	private String path = "";
+	/** How long clients may cache a sitemap before checking whether it changed */
+	private Duration cacheMaxAge = Duration.ofMinutes(10);
+
+	public String getBaseUrl() { return baseUrl; }
+	public void setBaseUrl(String baseUrl) { this.baseUrl = baseUrl; }
+	public File getOutputDir() { return outputDir; }
+	public void setOutputDir(File outputDir) { this.outputDir = outputDir; }
+	public int getKeep() { return keep; }
+	public void setKeep(int keep) { this.keep = keep; }
+	public boolean isGzip() { return gzip; }
+	public void setGzip(boolean gzip) { this.gzip = gzip; }
+	public boolean isCompact() { return compact; }
+	public void setCompact(boolean compact) { this.compact = compact; }
+	public int getMaxUrls() { return maxUrls; }
+	public void setMaxUrls(int maxUrls) { this.maxUrls = maxUrls; }
+	public Duration getInterval() { return interval; }
+	public void setInterval(Duration interval) { this.interval = interval; }
+	public Duration getInitialDelay() { return initialDelay; }
+	public void setInitialDelay(Duration initialDelay) { this.initialDelay = initialDelay; }
+	public String getPath() { return path; }
+	public void setPath(String path) { this.path = path; }
+	public Duration getCacheMaxAge() { return cacheMaxAge; }
+	public void setCacheMaxAge(Duration cacheMaxAge) { this.cacheMaxAge = cacheMaxAge; }
+}
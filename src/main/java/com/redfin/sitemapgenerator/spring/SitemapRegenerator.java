@@ -0,0 +1,180 @@
+package com.redfin.sitemapgenerator.spring;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import com.redfin.sitemapgenerator.SitemapPublisher;
+import com.redfin.sitemapgenerator.WebSitemapGenerator;
+
+/**
+ * Regenerates the sitemaps on a schedule, and publishes each new set atomically with a {@link SitemapPublisher}:
+ * a set is generated in a new version directory, and only becomes the {@link #getCurrent() current} one once it's
+ * complete, so readers always see a whole set.  The last "sitemap.keep" versions are kept, for the responses still
+ * reading them and for {@link #rollback()}.  Only one generation runs at a time.
+ *
+ * <p>Regeneration isn't incremental: when any provider's version changes, the whole set is generated again from
+ * every provider.  The versions only let a generation be skipped when nothing changed.</p>
+ *
+ * <p>The schedule runs on the regenerator's own single thread, started and shut down with it.  It isn't a bean,
+ * so that it's never picked for the application's own {@code @Scheduled} tasks.</p>
+ */
+public class SitemapRegenerator implements SmartLifecycle {
+	private static final Log log = LogFactory.getLog(SitemapRegenerator.class);
+
+	private final SitemapGeneratorFactory factory;
+	private final List<SitemapUrlProvider> providers;
+	private final SitemapProperties properties;
+	private final SitemapPublisher publisher;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final AtomicReference<SitemapSet> current = new AtomicReference<SitemapSet>();
+	private final AtomicLong generations = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private Object[] versions;
+	private ThreadPoolTaskScheduler scheduler;
+	private volatile ScheduledFuture<?> task;
+
+	public SitemapRegenerator(SitemapGeneratorFactory factory, List<SitemapUrlProvider> providers,
+			SitemapProperties properties) {
+		this.factory = factory;
+		this.providers = new ArrayList<SitemapUrlProvider>(providers);
+		this.properties = properties;
+		publisher = new SitemapPublisher.Options(properties.getOutputDir()).keep(properties.getKeep()).build();
+	}
+
+	/** The set being served, or null until the first one is published */
+	public SitemapSet getCurrent() {
+		return current.get();
+	}
+
+	/** How many sets were published */
+	public long getGenerations() { return generations.get(); }
+	/** How many generations failed */
+	public long getFailures() { return failures.get(); }
+
+	/**
+	 * Generates and publishes a new set, unless another generation is running, or no provider's version changed
+	 *
+	 * @return whether a new set was published
+	 */
+	public boolean regenerate() throws Exception {
+		if (!lock.tryLock()) return false;
+		try {
+			Object[] versions = new Object[providers.size()];
+			for (int i = 0; i < versions.length; i++) {
+				versions[i] = providers.get(i).getVersion();
+			}
+			if (current.get() != null && unchanged(versions)) return false;
+			long start = System.currentTimeMillis();
+			File dir = publisher.newVersion();
+			try {
+				WebSitemapGenerator generator = factory.newGenerator(dir);
+				for (SitemapUrlProvider provider : providers) {
+					provider.addUrls(generator);
+				}
+				generator.write();
+				generator.writeSitemapsWithIndex();
+				dir = publisher.publish(dir);
+			} catch (Exception e) {
+				publisher.discard(dir);
+				failures.incrementAndGet();
+				throw e;
+			}
+			long now = System.currentTimeMillis();
+			SitemapSet set = new SitemapSet(generations.incrementAndGet(), dir, now, now - start);
+			current.set(set);
+			this.versions = versions;
+			log.info("Published " + set.getSitemapCount() + " sitemaps in " + dir + " (" + set.getDurationMillis() + "ms)");
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private boolean unchanged(Object[] versions) {
+		for (Object version : versions) {
+			if (version == null) return false;
+		}
+		return Arrays.equals(versions, this.versions);
+	}
+
+	/**
+	 * Goes back to the version published before the current one, e.g. after a bad generation; the next generation
+	 * runs even if no provider's version changed
+	 */
+	public void rollback() throws IOException {
+		lock.lock();
+		try {
+			File dir = publisher.rollback();
+			current.set(new SitemapSet(generations.incrementAndGet(), dir, System.currentTimeMillis(), 0));
+			versions = null;
+			log.info("Rolled back to " + dir);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public synchronized void start() {
+		if (task != null) return;
+		// serve what the last run published until the first generation is done
+		try {
+			File dir = publisher.getCurrent();
+			if (dir != null && dir.isDirectory()) current.compareAndSet(null, new SitemapSet(generations.incrementAndGet(), dir, dir.lastModified(), 0));
+		} catch (IOException e) {
+			log.warn("Can't find the current sitemaps", e);
+		}
+		Runnable run = new Runnable() {
+			public void run() {
+				try {
+					regenerate();
+				} catch (Exception e) {
+					log.error("Sitemap generation failed", e);
+				}
+			}
+		};
+		scheduler = new ThreadPoolTaskScheduler();
+		scheduler.setThreadNamePrefix("sitemap-");
+		scheduler.setDaemon(true);
+		scheduler.initialize();
+		Date first = new Date(System.currentTimeMillis() + properties.getInitialDelay().toMillis());
+		task = scheduler.scheduleWithFixedDelay(run, first, properties.getInterval().toMillis());
+	}
+
+	public synchronized void stop() {
+		ScheduledFuture<?> task = this.task;
+		this.task = null;
+		if (task == null) return;
+		task.cancel(false);
+		scheduler.shutdown();
+		scheduler = null;
+	}
+
+	public void stop(Runnable callback) {
+		stop();
+		callback.run();
+	}
+
+	public boolean isRunning() {
+		return task != null;
+	}
+
+	public boolean isAutoStartup() {
+		return true;
+	}
+
+	public int getPhase() {
+		return Integer.MAX_VALUE;
+	}
+}
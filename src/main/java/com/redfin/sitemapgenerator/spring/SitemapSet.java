@@ -0,0 +1,54 @@
+package com.redfin.sitemapgenerator.spring;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** One published version of the sitemaps: a directory that's never modified once it's published */
+public final class SitemapSet {
+	/** The file name of the sitemap index */
+	public static final String INDEX_FILE_NAME = "sitemap_index.xml";
+
+	private final long generation;
+	private final File dir;
+	private final Map<String, File> files = new LinkedHashMap<String, File>();
+	private final int sitemaps;
+	private final long published;
+	private final long durationMillis;
+
+	SitemapSet(long generation, File dir, long published, long durationMillis) {
+		this.generation = generation;
+		this.dir = dir;
+		File[] children = dir.listFiles();
+		if (children == null) children = new File[0];
+		Arrays.sort(children);
+		int sitemaps = 0;
+		for (File child : children) {
+			String name = child.getName();
+			if (!name.endsWith(".xml") && !name.endsWith(".xml.gz")) continue;
+			files.put(name, child);
+			if (!name.equals(INDEX_FILE_NAME)) sitemaps++;
+		}
+		this.sitemaps = sitemaps;
+		this.published = published;
+		this.durationMillis = durationMillis;
+	}
+
+	/** Counts the sets published (or rolled back to) by one regenerator, from 1 */
+	public long getGeneration() { return generation; }
+	/** The directory of the set */
+	public File getDir() { return dir; }
+	/** The sitemaps and the index, by file name */
+	public Map<String, File> getFiles() { return Collections.unmodifiableMap(files); }
+	/** The file with that name, or null if it's not part of the set */
+	public File getFile(String name) { return files.get(name); }
+	/** How many sitemaps, not counting the index */
+	public int getSitemapCount() { return sitemaps; }
+	/** When the set was published */
+	public Date getPublished() { return new Date(published); }
+	/** How long the set took to generate, or 0 if it was rolled back to */
+	public long getDurationMillis() { return durationMillis; }
+}
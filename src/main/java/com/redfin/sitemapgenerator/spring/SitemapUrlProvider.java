@@ -0,0 +1,21 @@
+package com.redfin.sitemapgenerator.spring;
+
+import com.redfin.sitemapgenerator.WebSitemapGenerator;
+
+/**
+ * Supplies the URLs of the sitemaps; declare one or more beans of this type, and the {@link SitemapRegenerator}
+ * calls all of them on every generation.
+ */
+public interface SitemapUrlProvider {
+	/** Adds URLs to the generator of the new set; don't call write() on it */
+	void addUrls(WebSitemapGenerator generator) throws Exception;
+
+	/**
+	 * Identifies the current state of the URLs, e.g. a last-modified timestamp or a row count.  A generation is
+	 * skipped when every provider returns the same non-null version as at the last one; the default is null, so
+	 * every generation runs.
+	 */
+	default Object getVersion() throws Exception {
+		return null;
+	}
+}
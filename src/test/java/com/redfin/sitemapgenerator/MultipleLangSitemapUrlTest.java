@@ -114,6 +114,64 @@ public class MultipleLangSitemapUrlTest extends TestCase {
 		assertEquals(expected, sitemap);
 	}
 	
+	public void testCompact() throws Exception {
+		wsg = MultipleLangSitemapGenerator.builder(HOST, dir).compact(true).build();
+		wsg.addUrl(new MultipleLangSitemapUrl(URL, langs, defaultLang));
+		String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + 
+			"<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\" xmlns:xhtml=\"http://www.w3.org/1999/xhtml\">" + 
+			"<url><loc>https://example.com/inner-terms-and-conditions</loc>" + 
+			"<xhtml:link rel=\"alternate\" hreflang=\"es\" href=\"https://example.com/inner-terms-and-conditions\"/>" + 
+			"<xhtml:link rel=\"alternate\" hreflang=\"en\" href=\"https://en.example.com/inner-terms-and-conditions\"/>" + 
+			"</url>" + 
+			"<url><loc>https://en.example.com/inner-terms-and-conditions</loc>" + 
+			"<xhtml:link rel=\"alternate\" hreflang=\"es\" href=\"https://example.com/inner-terms-and-conditions\"/>" + 
+			"<xhtml:link rel=\"alternate\" hreflang=\"en\" href=\"https://en.example.com/inner-terms-and-conditions\"/>" + 
+			"</url>" + 
+			"</urlset>";
+		assertEquals(expected, writeSingleSiteMap(wsg));
+	}
+
+	public void testPathPrefix() throws Exception {
+		wsg = MultipleLangSitemapGenerator.builder(HOST, dir).compact(true).build();
+		wsg.addUrl(new Options(URL, langs, defaultLang).langStrategy(LangUrlStrategy.PATH_PREFIX).priority(0.5).build());
+		String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + 
+			"<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\" xmlns:xhtml=\"http://www.w3.org/1999/xhtml\">" + 
+			"<url><loc>https://example.com/inner-terms-and-conditions</loc><priority>0.5</priority>" + 
+			"<xhtml:link rel=\"alternate\" hreflang=\"es\" href=\"https://example.com/inner-terms-and-conditions\"/>" + 
+			"<xhtml:link rel=\"alternate\" hreflang=\"en\" href=\"https://example.com/en/inner-terms-and-conditions\"/>" + 
+			"</url>" + 
+			"<url><loc>https://example.com/en/inner-terms-and-conditions</loc><priority>0.5</priority>" + 
+			"<xhtml:link rel=\"alternate\" hreflang=\"es\" href=\"https://example.com/inner-terms-and-conditions\"/>" + 
+			"<xhtml:link rel=\"alternate\" hreflang=\"en\" href=\"https://example.com/en/inner-terms-and-conditions\"/>" + 
+			"</url>" + 
+			"</urlset>";
+		assertEquals(expected, writeSingleSiteMap(wsg));
+	}
+	
+	public void testQueryParameter() throws Exception {
+		MultipleLangSitemapUrl url = new Options(URL + "?id=1#top", langs, defaultLang)
+			.langStrategy(LangUrlStrategy.QUERY_PARAMETER).build();
+		assertEquals(URL + "?id=1#top", url.getUrlByLang("es"));
+		assertEquals(URL + "?id=1&lang=en#top", url.getUrlByLang("en"));
+		url = new Options(URL, langs, defaultLang).langStrategy(LangUrlStrategy.queryParameter("hl")).build();
+		assertEquals(URL + "?hl=en", url.getUrlByLang("en"));
+	}
+	
+	public void testSubdomain() throws Exception {
+		MultipleLangSitemapUrl url = new Options(HOST + "/a//b", langs, defaultLang).build();
+		assertEquals("https://en.example.com/a//b", url.getUrlByLang("en"));
+		url = new Options(HOST, langs, defaultLang).langStrategy(LangUrlStrategy.PATH_PREFIX).build();
+		assertEquals("https://example.com/en/", url.getUrlByLang("en"));
+	}
+	
+	public void testAutoValidateStructure() throws Exception {
+		// the entries of the other languages are on their own subdomains
+		wsg = MultipleLangSitemapGenerator.builder(HOST, dir).autoValidateStructure(true).build();
+		wsg.addUrl(new MultipleLangSitemapUrl(URL, langs, defaultLang));
+		String sitemap = writeSingleSiteMap(wsg);
+		assertTrue(sitemap, sitemap.contains("<loc>https://en.example.com/inner-terms-and-conditions</loc>"));
+	}
+	
 	private String writeSingleSiteMap(MultipleLangSitemapGenerator wsg) {
 		List<File> files = wsg.write();
 		assertEquals("Too many files: " + files.toString(), 1, files.size());
@@ -0,0 +1,96 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class RollingNewsSitemapTest extends TestCase {
+	
+	private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+	private long now = 1000 * HOUR;
+	private RollingNewsSitemap news;
+	private File file;
+	
+	@Override
+	public void setUp() throws Exception {
+		GoogleNewsSitemapGenerator generator = GoogleNewsSitemapGenerator.builder("http://www.example.com", null).build();
+		news = new RollingNewsSitemap(new RollingNewsSitemap.Options(generator).maxUrls(3)) {
+			@Override
+			long currentTimeMillis() {
+				return now;
+			}
+		};
+		file = File.createTempFile(RollingNewsSitemapTest.class.getSimpleName(), ".xml");
+		file.delete();
+	}
+	
+	@Override
+	public void tearDown() {
+		file.delete();
+	}
+	
+	private GoogleNewsSitemapUrl article(String name, long hoursAgo) throws Exception {
+		return new GoogleNewsSitemapUrl("http://www.example.com/" + name, new Date(now - hoursAgo * HOUR));
+	}
+	
+	private String sitemap() throws Exception {
+		return new String(news.getSitemap(), "UTF-8");
+	}
+	
+	public void testEvictsByTime() throws Exception {
+		assertTrue(news.add(article("a", 47)));
+		assertTrue(news.add(article("b", 1)));
+		assertFalse("too old", news.add(article("old", 49)));
+		assertEquals(2, news.size());
+		String xml = sitemap();
+		assertTrue(xml, xml.indexOf("/b<") < xml.indexOf("/a<"));
+		now += 2 * HOUR;
+		assertEquals(1, news.size());
+		xml = sitemap();
+		assertTrue(xml, xml.contains("/b<") && !xml.contains("/a<"));
+	}
+	
+	public void testEvictsByCount() throws Exception {
+		news.add(article("a", 4));
+		news.add(article("b", 3));
+		news.add(article("c", 2));
+		assertTrue(news.add(article("d", 1)));
+		assertFalse("older than the whole full window", news.add(article("e", 5)));
+		assertEquals(3, news.size());
+		assertEquals(new URL("http://www.example.com/d"), news.getUrls().get(0).getUrl());
+		assertEquals(new URL("http://www.example.com/b"), news.getUrls().get(2).getUrl());
+	}
+	
+	public void testRendersOnlyWhenChanged() throws Exception {
+		news.add(article("a", 2));
+		assertTrue(news.writeTo(file));
+		assertFalse(news.writeTo(file));
+		assertEquals(1, news.getRenders());
+		// the same article again changes nothing
+		news.add(article("a", 2));
+		assertFalse(news.writeTo(file));
+		assertEquals(1, news.getRenders());
+		news.add(new GoogleNewsSitemapUrl.Options("http://www.example.com/a", new Date(now - 2 * HOUR)).keywords("changed").build());
+		assertTrue(news.writeTo(file));
+		assertEquals(2, news.getRenders());
+		String xml = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+		assertTrue(xml, xml.contains("<news:keywords>changed</news:keywords>"));
+		assertTrue(news.remove(new URL("http://www.example.com/a")));
+		assertFalse(news.remove(new URL("http://www.example.com/a")));
+		assertTrue(news.writeTo(file));
+		xml = new String(Files.readAllBytes(file.toPath()), "UTF-8");
+		assertFalse(xml, xml.contains("/a<"));
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+	}
+	
+	public void testRejectsUrlsOfOtherSites() throws Exception {
+		try {
+			news.add(new GoogleNewsSitemapUrl("http://www.example.org/a", new Date(now)));
+			fail("Allowed a URL of another site");
+		} catch (RuntimeException e) {}
+	}
+}
@@ -0,0 +1,92 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SitemapAnalyzerTest extends TestCase {
+	
+	File dir;
+	
+	public void setUp() throws Exception {
+		dir = File.createTempFile(SitemapAnalyzerTest.class.getSimpleName(), "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+	}
+	
+	public void tearDown() {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+		dir = null;
+	}
+	
+	public void testAnalyze() throws Exception {
+		// 250 URLs in three gzipped sitemaps; the last 50 repeat the first 50
+		WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com", dir).gzip(true).maxUrls(100).build();
+		for (int i = 0; i < 250; i++) {
+			int page = i < 200 ? i : i - 200;
+			WebSitemapUrl.Options options = new WebSitemapUrl.Options("http://www.example.com/" + page);
+			if (page % 2 == 0) options.lastMod(new Date(page < 100 ? 0L : 40L * 86400000));
+			if (page % 5 == 0) options.changeFreq(ChangeFreq.DAILY).priority(0.5);
+			wsg.addUrl(options.build());
+		}
+		wsg.write();
+		wsg.writeSitemapsWithIndex();
+		
+		SitemapAnalyzer.Report report = new SitemapAnalyzer.Options().threads(2).baseUrl("http://www.example.org").build()
+			.analyze(new File(dir, "sitemap_index.xml"));
+		List<SitemapStatistics> sitemaps = report.getSitemaps();
+		assertEquals(3, sitemaps.size());
+		assertEquals("sitemap1.xml.gz", sitemaps.get(0).getName());
+		assertEquals(100, sitemaps.get(0).getUrls());
+		assertEquals(50, sitemaps.get(2).getUrls());
+		for (SitemapStatistics sitemap : sitemaps) {
+			assertEquals(new File(dir, sitemap.getName()).length(), sitemap.getCompressedBytes());
+			assertTrue(sitemap.getUncompressedBytes() > sitemap.getCompressedBytes());
+		}
+		assertEquals(new Date(0L), sitemaps.get(0).getOldestLastMod());
+		assertEquals(new Date(0L), sitemaps.get(0).getNewestLastMod());
+		assertEquals(new Date(40L * 86400000), sitemaps.get(1).getNewestLastMod());
+		
+		SitemapStatistics total = report.getTotal();
+		assertNull(total.getName());
+		assertEquals(250, total.getUrls());
+		assertEquals(200, total.getDistinctUrls());
+		assertEquals(50, total.getDuplicateUrls());
+		assertEquals(250, total.getHostViolations());
+		assertEquals(Long.valueOf(75), total.getLastModMonths().get("1970-01"));
+		assertEquals(Long.valueOf(50), total.getLastModMonths().get("1970-02"));
+		assertEquals(125, total.getNoLastMod());
+		assertEquals(Long.valueOf(50), total.getChangeFreqs().get(ChangeFreq.DAILY));
+		assertEquals(200, total.getNoChangeFreq());
+		assertEquals(1, total.getPriorities().size());
+		assertEquals(Long.valueOf(50), total.getPriorities().get(0.5));
+		
+		StringWriter out = new StringWriter();
+		report.writeTo(out);
+		String text = out.toString();
+		assertTrue(text, text.startsWith("sitemap1.xml.gz urls=100 distinct~100 bytes="));
+		assertTrue(text, text.contains("total urls=250 distinct~200 "));
+		assertTrue(text, text.contains("hostViolations=250 lastmod=1970-01-01..1970-02-10 duplicates~50\n"));
+		assertTrue(text, text.contains("\nlastmod 1970-01=75 1970-02=50 none=125\n"));
+		assertTrue(text, text.contains("\nchangefreq daily=50 none=200\npriority 0.5=50 none=200\n"));
+	}
+	
+	public void testDistinctEstimate() {
+		HyperLogLog a = new HyperLogLog();
+		HyperLogLog b = new HyperLogLog();
+		for (int i = 0; i < 100000; i++) {
+			a.add("http://www.example.com/" + i);
+			b.add("http://www.example.com/" + (i + 50000));
+		}
+		a.merge(b);
+		long estimate = a.estimate();
+		assertTrue(String.valueOf(estimate), Math.abs(estimate - 150000) < 150000 * 0.03);
+	}
+}
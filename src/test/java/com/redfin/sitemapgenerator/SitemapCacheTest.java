@@ -0,0 +1,167 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+public class SitemapCacheTest extends TestCase {
+	
+	/** 25 URLs, each modified at its number of seconds, rendering slowly */
+	class Source implements SitemapSource<WebSitemapUrl> {
+		final AtomicInteger pages = new AtomicInteger();
+		volatile int count = 25;
+		volatile String path = "/";
+		
+		public long count() {
+			return count;
+		}
+		
+		public Iterable<WebSitemapUrl> page(long offset, int limit) throws MalformedURLException {
+			pages.incrementAndGet();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			List<WebSitemapUrl> page = new ArrayList<WebSitemapUrl>();
+			for (long i = offset; i < Math.min(offset + limit, count); i++) {
+				page.add(new WebSitemapUrl.Options("http://www.example.com" + path + i).lastMod(new Date(1000L * i)).build());
+			}
+			return page;
+		}
+	}
+	
+	Source source;
+	WebSitemapGenerator wsg;
+	
+	public void setUp() throws Exception {
+		source = new Source();
+		wsg = WebSitemapGenerator.builder("http://www.example.com", null).maxUrls(10).build();
+	}
+	
+	public void testGetSitemap() throws Exception {
+		SitemapCache<WebSitemapUrl> cache = new SitemapCache.Options<WebSitemapUrl>(wsg, source).build();
+		assertEquals(3, cache.getSitemapCount());
+		assertNull(cache.getSitemap(0));
+		assertNull(cache.getSitemap(4));
+		
+		SitemapCache.Entry entry = cache.getSitemap(2);
+		String xml = gunzip(entry);
+		assertTrue(xml, xml.contains("<loc>http://www.example.com/10</loc>"));
+		assertTrue(xml, xml.contains("<loc>http://www.example.com/19</loc>"));
+		assertEquals(new Date(19000L), entry.getLastModified());
+		assertTrue(entry.getETag().matches("\"[0-9a-f]{32}\""));
+		assertSame(entry, cache.getSitemap(2));
+		assertEquals(1, source.pages.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		
+		String index = gunzip(cache.getIndex());
+		assertTrue(index, index.contains("<loc>http://www.example.com/sitemap3.xml</loc>"));
+		assertEquals(1, source.pages.get());
+	}
+	
+	public void testGzippedGenerator() throws Exception {
+		wsg = WebSitemapGenerator.builder("http://www.example.com", null).maxUrls(10).gzip(true).build();
+		SitemapCache<WebSitemapUrl> cache = new SitemapCache.Options<WebSitemapUrl>(wsg, source).build();
+		String xml = gunzip(cache.getSitemap(3));
+		assertTrue(xml, xml.contains("<loc>http://www.example.com/24</loc>"));
+		assertTrue(xml, xml.endsWith("</urlset>"));
+	}
+	
+	public void testSingleFlight() throws Exception {
+		final SitemapCache<WebSitemapUrl> cache = new SitemapCache.Options<WebSitemapUrl>(wsg, source).build();
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<SitemapCache.Entry>> results = new ArrayList<Future<SitemapCache.Entry>>();
+			for (int i = 0; i < 8; i++) {
+				results.add(executor.submit(new Callable<SitemapCache.Entry>() {
+					public SitemapCache.Entry call() throws Exception {
+						start.await();
+						return cache.getSitemap(1);
+					}
+				}));
+			}
+			start.countDown();
+			SitemapCache.Entry first = results.get(0).get();
+			for (Future<SitemapCache.Entry> result : results) {
+				assertSame(first, result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, source.pages.get());
+		assertEquals(1, cache.getMisses());
+		assertEquals(7, cache.getHits());
+	}
+	
+	public void testEviction() throws Exception {
+		SitemapCache<WebSitemapUrl> cache = new SitemapCache.Options<WebSitemapUrl>(wsg, source).build();
+		long size = cache.getSitemap(1).getSize() + 128;
+		// room for two sitemaps
+		cache = new SitemapCache.Options<WebSitemapUrl>(wsg, source).maxBytes(2 * size + 10).build();
+		source.pages.set(0);
+		cache.getSitemap(1);
+		cache.getSitemap(2);
+		cache.getSitemap(1);
+		cache.getSitemap(3);
+		assertEquals(3, source.pages.get());
+		assertTrue(cache.getBytes() <= 2 * size + 10);
+		// 2 was the least recently used
+		cache.getSitemap(1);
+		assertEquals(3, source.pages.get());
+		cache.getSitemap(2);
+		assertEquals(4, source.pages.get());
+		
+		cache = new SitemapCache.Options<WebSitemapUrl>(wsg, source).maxBytes(0).build();
+		cache.getSitemap(1);
+		cache.getSitemap(1);
+		assertEquals(6, source.pages.get());
+		assertEquals(0, cache.getBytes());
+	}
+	
+	public void testInvalidate() throws Exception {
+		SitemapCache<WebSitemapUrl> cache = new SitemapCache.Options<WebSitemapUrl>(wsg, source).build();
+		SitemapCache.Entry before = cache.getSitemap(1);
+		cache.getSitemap(2);
+		source.path = "/new/";
+		cache.invalidate(1);
+		SitemapCache.Entry after = cache.getSitemap(1);
+		assertFalse(before.getETag().equals(after.getETag()));
+		assertTrue(gunzip(after).contains("/new/0<"));
+		cache.getSitemap(2);
+		assertEquals(3, source.pages.get());
+		
+		source.count = 35;
+		assertEquals(3, cache.getSitemapCount());
+		cache.invalidate();
+		assertEquals(4, cache.getSitemapCount());
+		assertEquals(0, cache.getBytes());
+		assertNotNull(cache.getSitemap(4));
+	}
+	
+	private String gunzip(SitemapCache.Entry entry) throws IOException {
+		ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		entry.writeTo(gzipped);
+		assertEquals(entry.getSize(), gzipped.size());
+		GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.toByteArray()));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		for (int read; (read = in.read(buffer)) != -1;) out.write(buffer, 0, read);
+		return out.toString("UTF-8");
+	}
+}
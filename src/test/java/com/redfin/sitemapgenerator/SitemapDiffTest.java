@@ -0,0 +1,93 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SitemapDiffTest extends TestCase {
+	
+	File dir;
+	
+	public void setUp() throws Exception {
+		dir = File.createTempFile(SitemapDiffTest.class.getSimpleName(), "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+	}
+	
+	public void tearDown() {
+		delete(dir);
+		dir = null;
+	}
+	
+	private void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) delete(child);
+		}
+		file.deleteOnExit();
+		file.delete();
+	}
+	
+	public void testDiff() throws Exception {
+		File yesterday = new File(dir, "yesterday");
+		File today = new File(dir, "today");
+		yesterday.mkdir();
+		today.mkdir();
+		
+		// URLs 0-299 yesterday, in three gzipped sitemaps with an index
+		WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com", yesterday).gzip(true).maxUrls(100).build();
+		for (int i = 0; i < 300; i++) {
+			wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/" + i).lastMod(new Date(1000L * i)).build());
+		}
+		wsg.write();
+		wsg.writeSitemapsWithIndex();
+		
+		// URLs 5-304 today; 10 has a new lastmod, 20 a priority
+		wsg = WebSitemapGenerator.builder("http://www.example.com", today).maxUrls(120).build();
+		for (int i = 5; i < 305; i++) {
+			WebSitemapUrl.Options options = new WebSitemapUrl.Options("http://www.example.com/" + i).lastMod(new Date(1000L * i));
+			if (i == 10) options.lastMod(new Date(86400000L));
+			if (i == 20) options.priority(0.8);
+			wsg.addUrl(options.build());
+		}
+		wsg.write();
+		wsg.writeSitemapsWithIndex();
+		
+		W3CDateFormat dateFormat = new W3CDateFormat();
+		dateFormat.setTimeZone(W3CDateFormat.ZULU);
+		StringWriter report = new StringWriter();
+		SitemapDiff.Result result = new SitemapDiff.Options().threads(3).partitions(4).tempDir(dir).dateFormat(dateFormat).build()
+			.diff(yesterday, today, report);
+		assertEquals(5, result.getAdded());
+		assertEquals(5, result.getRemoved());
+		assertEquals(2, result.getChanged());
+		assertEquals(293, result.getUnchanged());
+		assertFalse(result.isEmpty());
+		
+		List<String> lines = Arrays.asList(report.toString().split("\n"));
+		assertEquals(12, lines.size());
+		assertTrue(lines.contains("+ http://www.example.com/304"));
+		assertTrue(lines.contains("- http://www.example.com/0"));
+		assertTrue(lines.contains("~ http://www.example.com/10 lastmod 1970-01-01T00:00:10Z 1970-01-02"));
+		assertTrue(lines.contains("~ http://www.example.com/20 priority - 0.8"));
+		// the spill files are gone
+		assertEquals(2, dir.list().length);
+	}
+	
+	public void testSame() throws Exception {
+		WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com", dir).build();
+		for (int i = 0; i < 10; i++) {
+			wsg.addUrl("http://www.example.com/" + i);
+		}
+		wsg.write();
+		File sitemap = new File(dir, "sitemap.xml");
+		SitemapDiff.Result result = new SitemapDiff().diff(sitemap, sitemap, null);
+		assertTrue(result.isEmpty());
+		assertEquals(10, result.getUnchanged());
+	}
+}
@@ -1,14 +1,24 @@
 package com.redfin.sitemapgenerator;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
 
+import org.xml.sax.SAXException;
+
 import junit.framework.TestCase;
 
 public class SitemapGeneratorTest extends TestCase {
@@ -155,6 +165,49 @@ public class SitemapGeneratorTest extends TestCase {
 		assertEquals(expected, sitemap);
 	}
 	
+	public void testEscapedUrl() throws Exception {
+		wsg = new WebSitemapGenerator("http://www.example.com", dir);
+		wsg.addUrl("http://www.example.com/search?a=1&b='<2>'");
+		String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + 
+			"<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\" >\n" + 
+			"  <url>\n" + 
+			"    <loc>http://www.example.com/search?a=1&amp;b=&apos;&lt;2&gt;&apos;</loc>\n" + 
+			"  </url>\n" + 
+			"</urlset>";
+		String sitemap = writeSingleSiteMap(wsg);
+		assertEquals(expected, sitemap);
+	}
+	
+	public void testNonAsciiUrl() throws Exception {
+		wsg = new WebSitemapGenerator("http://www.example.com", dir);
+		wsg.addUrl("http://www.example.com/caf\u00e9/\u20ac/\ud83d\ude00");
+		String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + 
+			"<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\" >\n" + 
+			"  <url>\n" + 
+			"    <loc>http://www.example.com/caf\u00e9/\u20ac/\ud83d\ude00</loc>\n" + 
+			"  </url>\n" + 
+			"</urlset>";
+		List<File> files = wsg.write();
+		byte[] bytes = Files.readAllBytes(files.get(0).toPath());
+		assertEquals(expected, new String(bytes, "UTF-8"));
+	}
+	
+	public void testCompact() throws Exception {
+		W3CDateFormat df = new W3CDateFormat();
+		df.setTimeZone(W3CDateFormat.ZULU);
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).dateFormat(df).autoValidate(true).compact(true).build();
+		WebSitemapUrl url = new WebSitemapUrl.Options("http://www.example.com/index.html")
+			.changeFreq(ChangeFreq.DAILY).lastMod(new Date(0)).priority(1.0).build();
+		wsg.addUrl(url);
+		String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + 
+			"<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">" + 
+			"<url><loc>http://www.example.com/index.html</loc><lastmod>1970-01-01</lastmod>" + 
+			"<changefreq>daily</changefreq><priority>1.0</priority></url>" + 
+			"</urlset>";
+		String sitemap = writeSingleSiteMap(wsg);
+		assertEquals(expected, sitemap);
+	}
+	
 	public void testBadUrl() throws Exception {
 		wsg = new WebSitemapGenerator("http://www.example.com", dir);
 		try {
@@ -323,6 +376,74 @@ public class SitemapGeneratorTest extends TestCase {
 		assertEquals("sitemap didn't match", SITEMAP1, actual);
 	}
 	
+	public void testGzipAutoValidate() throws Exception {
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir)
+			.gzip(true).autoValidate(true).maxUrls(10).build();
+		for (int i = 0; i < 20; i++) {
+			wsg.addUrl("http://www.example.com/"+i);
+		}
+		List<File> files = wsg.write();
+		assertEquals("Wrong number of files: " + files.toString(), 2, files.size());
+		for (File file : files) {
+			SitemapValidator.validateWebSitemap(file);
+			file.delete();
+		}
+	}
+	
+	public void testAutoValidateInvalidXml() throws Exception {
+		ValidatingOutputStream out = new ValidatingOutputStream(new ByteArrayOutputStream(), SitemapValidator.webSitemapValidators());
+		out.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+				+ "<url><priority>high</priority></url></urlset>").getBytes("UTF-8"));
+		out.close();
+		try {
+			out.finish();
+			fail("invalid sitemap passed validation");
+		} catch (SAXException e) {
+			// expected
+		}
+	}
+	
+	public void testParallelAutoValidate() throws Exception {
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir)
+			.autoValidate(true).validationThreads(3).maxUrls(10).build();
+		for (int i = 0; i < 95; i++) {
+			wsg.addUrl("http://www.example.com/"+i);
+		}
+		List<File> files = wsg.write();
+		assertEquals("Wrong number of files: " + files.toString(), 10, files.size());
+	}
+
+	public void testAutoValidateWithStructure() throws Exception {
+		// each sitemap is much bigger than the 16 chunks a validator may leave waiting
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir)
+			.autoValidate(true).autoValidateStructure(true).maxUrls(10000).build();
+		for (int i = 0; i < 25000; i++) {
+			wsg.addUrl("http://www.example.com/"+i);
+		}
+		List<File> files = wsg.write();
+		assertEquals("Wrong number of files: " + files.toString(), 3, files.size());
+	}
+
+	public void testBackgroundValidationFailure() throws Exception {
+		String valid = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">"
+				+ "<url><loc>http://www.example.com/</loc></url></urlset>";
+		String invalid = valid.replace("<loc>", "<priority>high</priority><loc>");
+		BackgroundValidator validator = new BackgroundValidator(2);
+		String[] documents = { valid, invalid, valid };
+		for (int i = 0; i < documents.length; i++) {
+			OutputStream out = validator.validate(new File("sitemap" + i + ".xml"), new ByteArrayOutputStream(), SitemapValidator.webSitemapValidators());
+			out.write(documents[i].getBytes("UTF-8"));
+			out.close();
+		}
+		try {
+			validator.finish();
+			fail("invalid sitemap passed validation");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().endsWith("[sitemap1.xml]"));
+			assertTrue(e.getCause() instanceof SAXException);
+		}
+	}
+	
 	public void testBaseDirIsNullThrowsNullPointerException() throws Exception {
 		wsg = WebSitemapGenerator.builder("http://www.example.com", null).autoValidate(true).maxUrls(10).build();
 		wsg.addUrl("http://www.example.com/index.html");
@@ -366,6 +487,416 @@ public class SitemapGeneratorTest extends TestCase {
 		assertEquals(SITEMAP1, sitemap);
 	}
 	
+	public void testSitemapSource() throws Exception {
+		final int[] pages = new int[1];
+		SitemapSource<WebSitemapUrl> source = new SitemapSource<WebSitemapUrl>() {
+			public long count() {
+				return 21;
+			}
+			public Iterable<WebSitemapUrl> page(long offset, int limit) throws MalformedURLException {
+				pages[0]++;
+				List<WebSitemapUrl> page = new ArrayList<WebSitemapUrl>();
+				for (long i = offset; i < Math.min(offset + limit, 21); i++) {
+					page.add(new WebSitemapUrl("http://www.example.com/" + (i < 20 ? i : "just-one-more")));
+				}
+				return page;
+			}
+		};
+		wsg = WebSitemapGenerator.builder("http://www.example.com", null).maxUrls(10).build();
+		assertEquals(3, wsg.getSitemapCount(source));
+		assertEquals("sitemap3.xml", wsg.getSitemapFileName(3));
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		wsg.writeSitemap(source, 3, out);
+		assertEquals(SITEMAP_PLUS_ONE, out.toString("UTF-8"));
+		assertEquals(1, pages[0]);
+		out.reset();
+		wsg.writeSitemap(source, 1, out);
+		assertEquals(SITEMAP1, out.toString("UTF-8"));
+		
+		out.reset();
+		wsg.writeSitemapIndex(source, out);
+		String index = out.toString("UTF-8");
+		assertTrue(index, index.contains("<loc>http://www.example.com/sitemap1.xml</loc>"));
+		assertTrue(index, index.contains("<loc>http://www.example.com/sitemap3.xml</loc>"));
+		assertFalse(index, index.contains("sitemap4.xml"));
+		assertEquals(2, pages[0]);
+		
+		wsg = WebSitemapGenerator.builder("http://www.example.com", null).maxUrls(10).gzip(true).build();
+		out.reset();
+		wsg.writeSitemap(source, 3, out);
+		GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()));
+		ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		for (int read; (read = gzipStream.read(buffer)) != -1;) unzipped.write(buffer, 0, read);
+		assertEquals(SITEMAP_PLUS_ONE, unzipped.toString("UTF-8"));
+	}
+
+	public void testSitemapSourceFromManyThreads() throws Exception {
+		final SitemapSource<WebSitemapUrl> source = new SitemapSource<WebSitemapUrl>() {
+			public long count() {
+				return 8000;
+			}
+			public Iterable<WebSitemapUrl> page(long offset, int limit) throws MalformedURLException {
+				List<WebSitemapUrl> page = new ArrayList<WebSitemapUrl>();
+				for (long i = offset; i < offset + limit; i++) {
+					page.add(new WebSitemapUrl.Options("http://www.example.com/" + i).lastMod(new Date(i * 86399999L)).build());
+				}
+				return page;
+			}
+		};
+		wsg = WebSitemapGenerator.builder("http://www.example.com", null).maxUrls(1000).build();
+		final String[] expected = new String[8];
+		for (int i = 0; i < expected.length; i++) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			wsg.writeSitemap(source, i + 1, out);
+			expected[i] = out.toString("UTF-8");
+		}
+		final List<String> mismatches = Collections.synchronizedList(new ArrayList<String>());
+		Thread[] threads = new Thread[expected.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int sitemap = i + 1;
+			threads[i] = new Thread() {
+				public void run() {
+					try {
+						for (int j = 0; j < 5; j++) {
+							ByteArrayOutputStream out = new ByteArrayOutputStream();
+							wsg.writeSitemap(source, sitemap, out);
+							if (!expected[sitemap - 1].equals(out.toString("UTF-8"))) mismatches.add("sitemap" + sitemap);
+						}
+					} catch (IOException e) {
+						mismatches.add(e.toString());
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(new ArrayList<String>(), mismatches);
+	}
+	
+	public void testContentAddressed() throws Exception {
+		List<File> first = writeContentAddressed("14");
+		assertEquals(2, first.size());
+		assertTrue(first.get(0).getName(), first.get(0).getName().matches("sitemap1-[0-9a-f]{16}\\.xml\\.gz"));
+		assertTrue(first.get(1).getName(), first.get(1).getName().matches("sitemap2-[0-9a-f]{16}\\.xml\\.gz"));
+		String index = TestUtil.slurpFileAndDelete(new File(dir, "sitemap_index.xml"));
+		assertTrue(index, index.contains("<loc>http://www.example.com/" + first.get(0).getName() + "</loc>"));
+		assertTrue(index, index.contains("<loc>http://www.example.com/" + first.get(1).getName() + "</loc>"));
+		// no temporary files left
+		assertEquals(2, dir.list().length);
+		
+		// the same content gets the same names; only the sitemap that changed gets a new one
+		assertEquals(first, writeContentAddressed("14"));
+		List<File> changed = writeContentAddressed("changed");
+		assertEquals(first.get(0), changed.get(0));
+		assertFalse(first.get(1).equals(changed.get(1)));
+		// the sitemap the previous index listed is kept for one more run, then deleted
+		assertTrue(first.get(1).exists());
+		List<File> changedAgain = writeContentAddressed("changed again");
+		assertFalse(first.get(1).exists());
+		assertTrue(changed.get(1).exists());
+		assertTrue(changedAgain.get(1).exists());
+		assertEquals(4, dir.list().length);
+	}
+	
+	public void testSitemapResults() throws Exception {
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).maxUrls(10).gzip(true).writeManifest(true).build();
+		for (int i = 0; i < 14; i++) {
+			wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/" + i).lastMod(new Date(1000000000000L + i * 1000L)).build());
+		}
+		List<File> files = wsg.write();
+		List<SitemapResult> results = wsg.getSitemapResults();
+		assertEquals(2, results.size());
+		assertEquals(10, results.get(0).getUrls());
+		assertEquals(4, results.get(1).getUrls());
+		assertEquals(new Date(1000000009000L), results.get(0).getMaxLastMod());
+		assertEquals(new Date(1000000013000L), results.get(1).getMaxLastMod());
+		for (int i = 0; i < 2; i++) {
+			SitemapResult result = results.get(i);
+			File file = files.get(i);
+			assertEquals(file, result.getFile());
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			assertEquals(bytes.length, result.getBytes());
+			GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(bytes));
+			ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+			byte[] buffer = new byte[1024];
+			for (int read; (read = gzipStream.read(buffer)) != -1;) unzipped.write(buffer, 0, read);
+			assertEquals(unzipped.size(), result.getUncompressedBytes());
+			assertTrue(result.getUncompressedBytes() > result.getBytes());
+			byte[] sha256 = java.security.MessageDigest.getInstance("SHA-256").digest(bytes);
+			assertTrue(java.util.Arrays.equals(sha256, result.getSha256()));
+			Crc32c crc = new Crc32c();
+			crc.update(bytes, 0, bytes.length);
+			assertEquals(crc.getValue(), result.getCrc32c());
+			assertEquals("\"" + result.getSha256Hex().substring(0, 32) + "\"", result.getETag());
+		}
+		String manifest = new String(Files.readAllBytes(wsg.getManifestFile().toPath()), "UTF-8");
+		assertTrue(manifest, manifest.contains("\"file\":\"sitemap1.xml.gz\",\"urls\":10,"));
+		assertTrue(manifest, manifest.contains("\"sha256\":\"" + results.get(1).getSha256Hex() + "\""));
+	}
+	
+	public void testCrc32c() throws Exception {
+		byte[] bytes = "123456789".getBytes("US-ASCII");
+		Crc32c crc = new Crc32c();
+		crc.update(bytes, 0, bytes.length);
+		assertEquals(0xE3069283L, crc.getValue());
+		crc.reset();
+		for (byte b : bytes) crc.update(b);
+		assertEquals(0xE3069283L, crc.getValue());
+		// the eight-byte path, from an unaligned offset
+		byte[] longer = new byte[1001];
+		for (int i = 0; i < longer.length; i++) longer[i] = (byte) (i * 31);
+		crc.reset();
+		crc.update(longer, 1, 1000);
+		Crc32c slow = new Crc32c();
+		for (int i = 1; i < longer.length; i++) slow.update(longer[i]);
+		assertEquals(slow.getValue(), crc.getValue());
+	}
+	
+	public void testPartitioner() throws Exception {
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).maxUrls(2)
+				.partitioner(ShardPartitioners.byPathPrefix("other", "/homes/", "/homes/for-sale/", "/rentals/")).build();
+		wsg.addUrl("http://www.example.com/homes/1");
+		wsg.addUrl("http://www.example.com/rentals/1");
+		wsg.addUrl("http://www.example.com/homes/2");
+		wsg.addUrl("http://www.example.com/homes/for-sale/1");
+		wsg.addUrl("http://www.example.com/about");
+		wsg.addUrl("http://www.example.com/homes/3");
+		List<String> names = new ArrayList<String>();
+		for (File file : wsg.write()) {
+			names.add(file.getName());
+		}
+		assertEquals("[sitemap-homes-1.xml, sitemap-homes-2.xml, sitemap-rentals.xml, sitemap-homes_for_sale.xml, sitemap-other.xml]", names.toString());
+		String homes = TestUtil.slurpFileAndDelete(new File(dir, "sitemap-homes-1.xml"));
+		assertTrue(homes, homes.contains("/homes/1<") && homes.contains("/homes/2<") && !homes.contains("/homes/3<"));
+		String forSale = TestUtil.slurpFileAndDelete(new File(dir, "sitemap-homes_for_sale.xml"));
+		assertTrue(forSale, forSale.contains("/homes/for-sale/1<"));
+		wsg.writeSitemapsWithIndex();
+		String index = TestUtil.slurpFileAndDelete(new File(dir, "sitemap_index.xml"));
+		for (String name : names) {
+			assertTrue(index, index.contains("<loc>http://www.example.com/" + name + "</loc>"));
+		}
+	}
+	
+	public void testHashAndChangeFreqPartitioners() throws Exception {
+		ShardPartitioner<ISitemapUrl> byHash = ShardPartitioners.byHash(4);
+		int[] counts = new int[4];
+		for (int i = 0; i < 4000; i++) {
+			WebSitemapUrl url = new WebSitemapUrl("http://www.example.com/" + i);
+			String shard = byHash.getShard(url);
+			assertEquals(shard, byHash.getShard(new WebSitemapUrl("http://www.example.com/" + i)));
+			counts[Integer.parseInt(shard.substring(1))]++;
+		}
+		for (int count : counts) {
+			assertTrue(String.valueOf(count), count > 800 && count < 1200);
+		}
+		ShardPartitioner<ISitemapUrl> byChangeFreq = ShardPartitioners.byChangeFreq();
+		assertEquals("daily", byChangeFreq.getShard(new WebSitemapUrl.Options("http://www.example.com/").changeFreq(ChangeFreq.DAILY).build()));
+		assertEquals("none", byChangeFreq.getShard(new WebSitemapUrl("http://www.example.com/")));
+		try {
+			ShardPartitioners.byPathPrefix("bad-name", "/homes/");
+			fail("Allowed a dash in a shard name");
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	public void testTimePartitioner() throws Exception {
+		W3CDateFormat format = new W3CDateFormat(W3CDateFormat.Pattern.DAY);
+		format.setTimeZone(W3CDateFormat.ZULU);
+		TimeShardPartitioner byMonth = TimeShardPartitioner.byMonth().now(format.parse("2024-03-10"));
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).partitioner(byMonth).build();
+		wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/jan").lastMod("2024-01-31T12:00Z").build());
+		wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/feb").lastMod("2024-02-01T12:00Z").build());
+		wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/mar").lastMod("2024-03-09T12:00Z").build());
+		wsg.addUrl("http://www.example.com/undated");
+		List<File> first = wsg.write();
+		assertEquals("[sitemap-m2024_01.xml, sitemap-m2024_02.xml, sitemap-m2024_03.xml, sitemap-undated.xml]", names(first));
+		wsg.writeSitemapsWithIndex();
+		
+		// the next run only adds the current month; a URL for a frozen month is dropped
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).partitioner(byMonth).build();
+		wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/jan2").lastMod("2024-01-15T12:00Z").build());
+		wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/mar2").lastMod("2024-03-10T12:00Z").build());
+		List<File> second = wsg.write();
+		assertEquals("[sitemap-m2024_01.xml, sitemap-m2024_02.xml, sitemap-m2024_03.xml]", names(second));
+		assertEquals(1, wsg.getSitemapResults().size());
+		wsg.writeSitemapsWithIndex();
+		String index = TestUtil.slurpFileAndDelete(new File(dir, "sitemap_index.xml"));
+		assertTrue(index, index.contains("sitemap-m2024_01.xml") && index.contains("sitemap-m2024_02.xml"));
+		String jan = TestUtil.slurpFileAndDelete(new File(dir, "sitemap-m2024_01.xml"));
+		assertTrue(jan, jan.contains("/jan<") && !jan.contains("/jan2<"));
+		String mar = TestUtil.slurpFileAndDelete(new File(dir, "sitemap-m2024_03.xml"));
+		assertTrue(mar, mar.contains("/mar2<") && !mar.contains("/mar<"));
+	}
+	
+	public void testTimePartitionerAdoptsIndexedFiles() throws Exception {
+		W3CDateFormat format = new W3CDateFormat(W3CDateFormat.Pattern.DAY);
+		format.setTimeZone(W3CDateFormat.ZULU);
+		TimeShardPartitioner byMonth = TimeShardPartitioner.byMonth().now(format.parse("2024-03-10"));
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).partitioner(byMonth).maxUrls(1).build();
+		wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/mar").lastMod("2024-03-01T12:00Z").build());
+		assertEquals("[sitemap-m2024_03.xml]", names(wsg.write()));
+		wsg.writeSitemapsWithIndex();
+		// March outgrows one sitemap, leaving the first run's file behind
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).partitioner(byMonth).maxUrls(1).build();
+		wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/mar").lastMod("2024-03-01T12:00Z").build());
+		wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/mar2").lastMod("2024-03-09T12:00Z").build());
+		assertEquals("[sitemap-m2024_03-1.xml, sitemap-m2024_03-2.xml]", names(wsg.write()));
+		wsg.writeSitemapsWithIndex();
+		assertTrue(new File(dir, "sitemap-m2024_03.xml").isFile());
+		
+		// once March is frozen, only the files of the last index are adopted
+		byMonth.now(format.parse("2024-04-10"));
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).partitioner(byMonth).maxUrls(1).build();
+		assertEquals("[sitemap-m2024_03-1.xml, sitemap-m2024_03-2.xml]", names(wsg.write()));
+		wsg.writeSitemapsWithIndex();
+		String index = TestUtil.slurpFileAndDelete(new File(dir, "sitemap_index.xml"));
+		assertFalse(index, index.contains("sitemap-m2024_03.xml"));
+		
+		// a content-addressed file whose hash is all digits isn't mistaken for a numbered one
+		File hashed = new File(dir, "sitemap-m2024_02-1234567890123456.xml");
+		Files.copy(new File(dir, "sitemap-m2024_03-1.xml").toPath(), hashed.toPath());
+		SitemapIndexGenerator sig = new SitemapIndexGenerator.Options("http://www.example.com", new File(dir, "sitemap_index.xml")).build();
+		sig.addUrl("http://www.example.com/" + hashed.getName()).write();
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).partitioner(byMonth).build();
+		assertEquals("[" + hashed.getName() + "]", names(wsg.write()));
+		
+		// nor is a shard adopted if one of its files is gone
+		hashed.delete();
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).partitioner(byMonth).build();
+		wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/feb").lastMod("2024-02-01T12:00Z").build());
+		assertEquals("[sitemap-m2024_02.xml]", names(wsg.write()));
+	}
+	
+	public void testTimePartitionerPeriods() throws Exception {
+		W3CDateFormat format = new W3CDateFormat(W3CDateFormat.Pattern.DAY);
+		format.setTimeZone(W3CDateFormat.ZULU);
+		TimeShardPartitioner byWeek = TimeShardPartitioner.byWeek().now(format.parse("2024-03-05"));
+		// 2021-01-03 is a Sunday, in the last ISO week of 2020
+		assertEquals("w2020_53", byWeek.getShard(new WebSitemapUrl.Options("http://www.example.com/").lastMod("2021-01-03T12:00Z").build()));
+		assertEquals("w2024_10", byWeek.getShard(new WebSitemapUrl.Options("http://www.example.com/").lastMod("2024-03-04T12:00Z").build()));
+		// the week of 2024-02-26 ended on 2024-03-04, and its day of grace is over
+		assertTrue(byWeek.isFrozen("w2024_09"));
+		assertFalse(byWeek.isFrozen("w2024_10"));
+		byWeek.now(format.parse("2024-03-04"));
+		assertFalse(byWeek.isFrozen("w2024_09"));
+		assertFalse(byWeek.isFrozen("m2020_01"));
+		assertFalse(byWeek.isFrozen(TimeShardPartitioner.UNDATED));
+		TimeShardPartitioner byMonth = TimeShardPartitioner.byMonth().now(format.parse("2024-03-02")).grace(0, java.util.concurrent.TimeUnit.DAYS);
+		assertTrue(byMonth.isFrozen("m2024_02"));
+		assertFalse(byMonth.isFrozen("m2024_03"));
+	}
+	
+	public void testAppend() throws Exception {
+		checkAppend(false);
+	}
+	
+	public void testAppendGzipped() throws Exception {
+		checkAppend(true);
+	}
+	
+	private void checkAppend(boolean gzip) throws Exception {
+		String suffix = gzip ? ".xml.gz" : ".xml";
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).maxUrls(5).gzip(gzip).append(true).build();
+		for (int i = 0; i < 3; i++) wsg.addUrl("http://www.example.com/" + i);
+		assertEquals("[sitemap1" + suffix + "]", names(wsg.write()));
+		File first = new File(dir, "sitemap1" + suffix);
+		long length = first.length();
+		
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).maxUrls(5).gzip(gzip).append(true).build();
+		for (int i = 3; i < 7; i++) wsg.addUrl("http://www.example.com/" + i);
+		assertEquals("[sitemap1" + suffix + ", sitemap2" + suffix + "]", names(wsg.write()));
+		assertTrue(first.length() > length);
+		// the sitemap that was appended to has a result, for the whole file
+		SitemapResult appended = wsg.getSitemapResults().get(0);
+		assertEquals(first, appended.getFile());
+		assertEquals(5, appended.getUrls());
+		assertEquals(first.length(), appended.getBytes());
+		assertEquals(read(first, gzip).getBytes("UTF-8").length, appended.getUncompressedBytes());
+		assertTrue(Arrays.equals(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(first.toPath())), appended.getSha256()));
+		assertEquals(2, wsg.getSitemapResults().size());
+		wsg.writeSitemapsWithIndex();
+		String index = TestUtil.slurpFileAndDelete(new File(dir, "sitemap_index.xml"));
+		assertTrue(index, index.contains("sitemap1" + suffix) && index.contains("sitemap2" + suffix) && !index.contains("sitemap3"));
+		
+		// the appended sitemap is the same as if it had been written at once
+		File fresh = new File(dir, "fresh");
+		fresh.mkdir();
+		try {
+			WebSitemapGenerator all = WebSitemapGenerator.builder("http://www.example.com", fresh).maxUrls(5).gzip(gzip).build();
+			for (int i = 0; i < 7; i++) all.addUrl("http://www.example.com/" + i);
+			all.write();
+			assertEquals(read(new File(fresh, "sitemap1" + suffix), gzip), read(first, gzip));
+			assertEquals(read(new File(fresh, "sitemap2" + suffix), gzip), read(new File(dir, "sitemap2" + suffix), gzip));
+		} finally {
+			for (File file : fresh.listFiles()) file.delete();
+			fresh.delete();
+		}
+		
+		// a full last sitemap is left alone
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).maxUrls(2).gzip(gzip).append(true).build();
+		wsg.addUrl("http://www.example.com/7");
+		assertEquals("[sitemap3" + suffix + "]", names(wsg.write()));
+		wsg.writeSitemapsWithIndex();
+		index = TestUtil.slurpFileAndDelete(new File(dir, "sitemap_index.xml"));
+		assertTrue(index, index.contains("sitemap3" + suffix));
+	}
+	
+	public void testAppendToSingleSitemap() throws Exception {
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).build();
+		wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/0").lastMod(new Date(1000000009000L)).build());
+		wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/1").lastMod(new Date(1000000001000L)).build());
+		assertEquals("[sitemap.xml]", names(wsg.write()));
+		
+		// the single sitemap is copied to the first numbered one, and that is appended to
+		String single = new String(Files.readAllBytes(new File(dir, "sitemap.xml").toPath()), "UTF-8");
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).append(true).build();
+		wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/2").lastMod(new Date(1000000005000L)).build());
+		// nothing is touched until the sitemaps are written
+		assertFalse(new File(dir, "sitemap1.xml").exists());
+		assertEquals("[sitemap1.xml]", names(wsg.write()));
+		assertEquals(single, TestUtil.slurpFileAndDelete(new File(dir, "sitemap.xml")));
+		SitemapResult result = wsg.getSitemapResults().get(0);
+		assertEquals(3, result.getUrls());
+		assertEquals(new Date(1000000009000L), result.getMaxLastMod());
+		wsg.writeSitemapsWithIndex();
+		String index = TestUtil.slurpFileAndDelete(new File(dir, "sitemap_index.xml"));
+		assertTrue(index, index.contains("sitemap1.xml") && !index.contains("sitemap.xml") && !index.contains("sitemap2"));
+		String sitemap = TestUtil.slurpFileAndDelete(new File(dir, "sitemap1.xml"));
+		assertTrue(sitemap, sitemap.contains("/0<") && sitemap.contains("/2<"));
+	}
+	
+	private static String read(File file, boolean gzip) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		if (!gzip) return new String(bytes, "UTF-8");
+		GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(bytes));
+		ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		for (int read; (read = gzipStream.read(buffer)) != -1;) unzipped.write(buffer, 0, read);
+		return new String(unzipped.toByteArray(), "UTF-8");
+	}
+	
+	private static String names(List<File> files) {
+		List<String> names = new ArrayList<String>();
+		for (File file : files) {
+			names.add(file.getName());
+		}
+		return names.toString();
+	}
+	
+	private List<File> writeContentAddressed(String last) throws Exception {
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).maxUrls(10).gzip(true).contentAddressed(true).build();
+		for (int i = 0; i < 14; i++) {
+			wsg.addUrl("http://www.example.com/" + i);
+		}
+		wsg.addUrl("http://www.example.com/" + last);
+		List<File> files = wsg.write();
+		wsg.writeSitemapsWithIndex();
+		return files;
+	}
+	
 	private String writeSingleSiteMap(WebSitemapGenerator wsg) {
 		List<File> files = wsg.write();
 		assertEquals("Too many files: " + files.toString(), 1, files.size());
@@ -125,6 +125,19 @@ public class SitemapIndexGeneratorTest extends TestCase {
 		assertEquals(expected, actual);
 	}
 	
+	public void testCompact() throws Exception {
+		sig = new SitemapIndexGenerator.Options(EXAMPLE, outFile).dateFormat(ZULU).autoValidate(true).compact(true).build();
+		SitemapIndexUrl url = new SitemapIndexUrl(EXAMPLE+"index.html", new Date(0));
+		sig.addUrl(url);
+		sig.write();
+		String actual = TestUtil.slurpFileAndDelete(outFile);
+		String expected = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + 
+				"<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">" + 
+				"<sitemap><loc>http://www.example.com/index.html</loc><lastmod>1970-01-01</lastmod></sitemap>" + 
+				"</sitemapindex>";
+		assertEquals(expected, actual);
+	}
+	
 	public void testAddByPrefix() throws MalformedURLException {
 		sig = new SitemapIndexGenerator.Options(EXAMPLE, outFile).autoValidate(true)
 			.defaultLastMod(new Date(0)).dateFormat(ZULU).build();
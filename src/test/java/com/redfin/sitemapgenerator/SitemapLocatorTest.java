@@ -0,0 +1,184 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+public class SitemapLocatorTest extends TestCase {
+	
+	File dir;
+	
+	public void setUp() throws Exception {
+		dir = File.createTempFile(SitemapLocatorTest.class.getSimpleName(), "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+	}
+	
+	public void tearDown() {
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+		dir = null;
+	}
+	
+	private static String url(int i) {
+		// one of them needs escaping
+		return i == 7 ? "http://www.example.com/search?a=1&b=2" : "http://www.example.com/" + i;
+	}
+	
+	private WebSitemapGenerator generator(boolean gzip) throws Exception {
+		return WebSitemapGenerator.builder("http://www.example.com", dir).maxUrls(10).gzip(gzip).writeLocator(true).writeManifest(true).build();
+	}
+	
+	private WebSitemapGenerator write(boolean gzip, int urls) throws Exception {
+		WebSitemapGenerator wsg = generator(gzip);
+		for (int i = 0; i < urls; i++) wsg.addUrl(url(i));
+		wsg.write();
+		return wsg;
+	}
+	
+	private static byte[] read(File file) throws IOException {
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		if (!file.getName().endsWith(".gz")) return bytes;
+		GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(bytes));
+		ByteArrayOutputStream unzipped = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		for (int read; (read = gzipStream.read(buffer)) != -1;) unzipped.write(buffer, 0, read);
+		return unzipped.toByteArray();
+	}
+	
+	/** Checks that the locator points at the element of every URL */
+	private void checkLocated(SitemapLocator locator, List<String> urls) throws IOException {
+		assertEquals(urls.size(), locator.size());
+		for (String url : urls) {
+			SitemapLocator.Location location = locator.find(url);
+			assertNotNull(url, location);
+			assertTrue(url + " at " + location, SitemapLocator.entryEnd(read(location.getFile()), (int) location.getOffset(), url) > 0);
+		}
+	}
+	
+	private static List<String> urls(int from, int to) {
+		List<String> urls = new ArrayList<String>();
+		for (int i = from; i < to; i++) urls.add(url(i));
+		return urls;
+	}
+	
+	public void testLocate() throws Exception {
+		WebSitemapGenerator wsg = write(false, 25);
+		SitemapLocator locator = SitemapLocator.open(wsg.getLocatorFile());
+		checkLocated(locator, urls(0, 25));
+		assertEquals("sitemap1.xml", locator.find(url(7)).getFile().getName());
+		assertEquals("sitemap3.xml", locator.find(new URL(url(24))).getFile().getName());
+		byte[] xml = read(new File(dir, "sitemap2.xml"));
+		String entry = new String(xml, (int) locator.find(url(10)).getOffset(), 48, "UTF-8");
+		assertTrue(entry, entry.startsWith("  <url>\n    <loc>http://www.example.com/10</loc>"));
+		assertNull(locator.find("http://www.example.com/nothing"));
+	}
+	
+	public void testUpdateUrls() throws Exception {
+		checkUpdateUrls(false);
+	}
+	
+	public void testUpdateUrlsGzipped() throws Exception {
+		checkUpdateUrls(true);
+	}
+	
+	private void checkUpdateUrls(boolean gzip) throws Exception {
+		String suffix = gzip ? ".xml.gz" : ".xml";
+		write(gzip, 25).writeSitemapsWithIndex();
+		File third = new File(dir, "sitemap3" + suffix);
+		byte[] untouched = Files.readAllBytes(third.toPath());
+		
+		WebSitemapUrl changed = new WebSitemapUrl.Options(url(13)).lastMod(new Date(0)).build();
+		List<File> rewritten = generator(gzip).updateUrls(Collections.singletonList(changed),
+				Arrays.asList(new URL(url(3)), new URL(url(7)), new URL("http://www.example.com/nothing")));
+		assertEquals(Arrays.asList(new File(dir, "sitemap1" + suffix), new File(dir, "sitemap2" + suffix)), rewritten);
+		assertTrue(Arrays.equals(untouched, Files.readAllBytes(third.toPath())));
+		
+		WebSitemapGenerator wsg = generator(gzip);
+		rewritten = wsg.updateUrls(Collections.<WebSitemapUrl>emptyList(), Collections.singletonList(new URL(url(14))));
+		List<SitemapResult> results = wsg.getSitemapResults();
+		assertEquals(1, results.size());
+		SitemapResult result = results.get(0);
+		assertEquals(rewritten.get(0), result.getFile());
+		assertEquals(9, result.getUrls());
+		assertEquals(read(result.getFile()).length, result.getUncompressedBytes());
+		assertEquals(result.getFile().length(), result.getBytes());
+		assertEquals(new Date(0), result.getMaxLastMod());
+		String manifest = new String(Files.readAllBytes(wsg.getManifestFile().toPath()), "UTF-8");
+		assertTrue(manifest, manifest.contains(result.getSha256Hex()));
+		assertEquals(manifest, 3, manifest.split("\"file\":").length - 1);
+		assertTrue(manifest, manifest.contains("\"sitemap3" + suffix + "\""));
+		SitemapReader index = SitemapReader.open(wsg.getIndexFile());
+		try {
+			assertEquals(3, countSitemaps(index));
+		} finally {
+			index.close();
+		}
+		SitemapValidator.validateSitemapIndex(wsg.getIndexFile());
+		
+		String first = new String(read(new File(dir, "sitemap1" + suffix)), "UTF-8");
+		assertFalse(first, first.contains("/3<") || first.contains("search"));
+		assertTrue(first, first.contains("/2<") && first.contains("/4<") && first.endsWith("</urlset>"));
+		String second = new String(read(new File(dir, "sitemap2" + suffix)), "UTF-8");
+		assertTrue(second, second.contains("<loc>http://www.example.com/13</loc>\n    <lastmod>1970-01-01</lastmod>"));
+		SitemapValidator.validateWebSitemap(new File(dir, "sitemap1" + suffix));
+		
+		SitemapLocator locator = SitemapLocator.open(new File(dir, "sitemap_locator.bin"));
+		List<String> urls = urls(0, 25);
+		urls.remove(url(3));
+		urls.remove(url(7));
+		urls.remove(url(14));
+		checkLocated(locator, urls);
+		assertNull(locator.find(url(3)));
+		
+		try {
+			generator(gzip).updateUrls(Collections.singletonList(new WebSitemapUrl(url(3))), Collections.<URL>emptyList());
+			fail("Updated a URL that isn't there");
+		} catch (IllegalArgumentException e) {}
+	}
+	
+	private static int countSitemaps(SitemapReader index) throws IOException {
+		int count = 0;
+		while (index.nextSitemap() != null) count++;
+		return count;
+	}
+	
+	public void testAppendKeepsRecords() throws Exception {
+		WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com", dir).maxUrls(10).gzip(true).append(true).writeLocator(true).build();
+		for (int i = 0; i < 6; i++) wsg.addUrl(url(i));
+		wsg.write();
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).maxUrls(10).gzip(true).append(true).writeLocator(true).build();
+		for (int i = 6; i < 15; i++) wsg.addUrl(url(i));
+		wsg.write();
+		SitemapLocator locator = SitemapLocator.open(wsg.getLocatorFile());
+		checkLocated(locator, urls(0, 15));
+		assertEquals("sitemap1.xml.gz", locator.find(url(9)).getFile().getName());
+		assertEquals("sitemap2.xml.gz", locator.find(url(10)).getFile().getName());
+	}
+	
+	public void testAppendToRenamedSitemap() throws Exception {
+		WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com", dir).maxUrls(10).writeLocator(true).build();
+		for (int i = 0; i < 6; i++) wsg.addUrl(url(i));
+		wsg.write();
+		wsg = WebSitemapGenerator.builder("http://www.example.com", dir).maxUrls(10).append(true).writeLocator(true).build();
+		for (int i = 6; i < 8; i++) wsg.addUrl(url(i));
+		wsg.write();
+		SitemapLocator locator = SitemapLocator.open(wsg.getLocatorFile());
+		checkLocated(locator, urls(0, 8));
+		assertEquals("sitemap1.xml", locator.find(url(0)).getFile().getName());
+	}
+}
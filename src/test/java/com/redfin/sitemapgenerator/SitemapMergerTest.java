@@ -0,0 +1,87 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.File;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class SitemapMergerTest extends TestCase {
+	
+	File dir;
+	
+	public void setUp() throws Exception {
+		dir = File.createTempFile(SitemapMergerTest.class.getSimpleName(), "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+	}
+	
+	public void tearDown() {
+		delete(dir);
+		dir = null;
+	}
+	
+	private void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null) {
+			for (File child : files) delete(child);
+		}
+		file.deleteOnExit();
+		file.delete();
+	}
+	
+	public void testMerge() throws Exception {
+		File legacy1 = new File(dir, "legacy1");
+		File legacy2 = new File(dir, "legacy2");
+		File out = new File(dir, "out");
+		legacy1.mkdir();
+		legacy2.mkdir();
+		out.mkdir();
+		
+		// URLs 0-299 in the first set, in three gzipped sitemaps with an index
+		WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com", legacy1).gzip(true).maxUrls(100).build();
+		for (int i = 0; i < 300; i++) {
+			wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/" + i).lastMod(new Date(1000L * i)).build());
+		}
+		wsg.write();
+		wsg.writeSitemapsWithIndex();
+		
+		// URLs 200-399 in the second one, newer for the even ones and older for the odd ones
+		wsg = WebSitemapGenerator.builder("http://www.example.com", legacy2).build();
+		for (int i = 200; i < 400; i++) {
+			long lastMod = i % 2 == 0 ? 1000000L + i : 1L;
+			wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/" + i).lastMod(new Date(lastMod)).priority(0.3).build());
+		}
+		wsg.write();
+		
+		wsg = WebSitemapGenerator.builder("http://www.example.com", out).maxUrls(150).build();
+		int count = new SitemapMerger.Options().threads(3).partitions(4).tempDir(dir).build()
+			.add(new File(legacy1, "sitemap_index.xml"), new File(legacy2, "sitemap.xml"))
+			.mergeInto(wsg);
+		assertEquals(400, count);
+		List<File> files = wsg.write();
+		assertEquals(3, files.size());
+		
+		Map<String, SitemapUrlRecord> merged = new HashMap<String, SitemapUrlRecord>();
+		for (File file : files) {
+			SitemapReader reader = SitemapReader.open(file);
+			try {
+				for (SitemapUrlRecord record = reader.nextRecord(); record != null; record = reader.nextRecord()) {
+					assertNull("duplicate " + record, merged.put(record.getLoc(), record));
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		assertEquals(400, merged.size());
+		assertEquals(1000L * 100, merged.get("http://www.example.com/100").getLastModMillis());
+		assertEquals(1000000L + 250, merged.get("http://www.example.com/250").getLastModMillis());
+		assertEquals(0.3, merged.get("http://www.example.com/250").getPriority());
+		assertEquals(1000L * 251, merged.get("http://www.example.com/251").getLastModMillis());
+		assertFalse(merged.get("http://www.example.com/251").hasPriority());
+		assertEquals(1L, merged.get("http://www.example.com/351").getLastModMillis());
+	}
+}
@@ -0,0 +1,121 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import junit.framework.TestCase;
+
+public class SitemapPublisherTest extends TestCase {
+	
+	private static final Executor DIRECT = new Executor() {
+		public void execute(Runnable command) {
+			command.run();
+		}
+	};
+	
+	File dir;
+	
+	public void setUp() throws Exception {
+		dir = File.createTempFile(SitemapPublisherTest.class.getSimpleName(), "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+	}
+	
+	public void tearDown() {
+		delete(dir);
+		dir = null;
+	}
+	
+	private void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null && !Files.isSymbolicLink(file.toPath())) {
+			for (File child : files) delete(child);
+		}
+		file.deleteOnExit();
+		file.delete();
+	}
+	
+	private File generate(SitemapPublisher publisher, String page) throws Exception {
+		File version = publisher.newVersion();
+		WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com", version).build();
+		wsg.addUrl("http://www.example.com/" + page);
+		wsg.write();
+		wsg.writeSitemapsWithIndex();
+		return version;
+	}
+	
+	public void testPublish() throws Exception {
+		SitemapPublisher publisher = new SitemapPublisher.Options(dir).keep(2).executor(DIRECT).build();
+		assertNull(publisher.getCurrent());
+		
+		File staging = generate(publisher, "first");
+		assertEquals("v000001.staging", staging.getName());
+		assertNull(publisher.getCurrent());
+		assertTrue(publisher.getVersions().isEmpty());
+		File first = publisher.publish(staging);
+		assertEquals(new File(dir, "v000001"), first);
+		assertFalse(staging.exists());
+		assertEquals(first, publisher.getCurrent());
+		File link = new File(dir, SitemapPublisher.CURRENT_LINK);
+		assertTrue(Files.isSymbolicLink(link.toPath()));
+		assertTrue(new String(Files.readAllBytes(new File(link, "sitemap.xml").toPath()), "UTF-8").contains("/first<"));
+		
+		File second = publisher.publish(generate(publisher, "second"));
+		File third = publisher.publish(generate(publisher, "third"));
+		assertEquals("v000003", third.getName());
+		assertEquals(third, publisher.getCurrent());
+		assertTrue(new String(Files.readAllBytes(new File(link, "sitemap.xml").toPath()), "UTF-8").contains("/third<"));
+		// only the last two are kept
+		assertEquals(Arrays.asList(second, third), publisher.getVersions());
+		assertFalse(first.exists());
+	}
+	
+	public void testRollback() throws Exception {
+		SitemapPublisher publisher = new SitemapPublisher.Options(dir).keep(3).executor(DIRECT).build();
+		File first = publisher.publish(generate(publisher, "first"));
+		try {
+			publisher.rollback();
+			fail("Nothing to roll back to");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		File second = publisher.publish(generate(publisher, "second"));
+		assertEquals(first, publisher.rollback());
+		assertEquals(first, publisher.getCurrent());
+		File link = new File(dir, SitemapPublisher.CURRENT_LINK);
+		assertTrue(new String(Files.readAllBytes(new File(link, "sitemap.xml").toPath()), "UTF-8").contains("/first<"));
+		
+		// rolling forward again is just publishing the version
+		assertEquals(second, publisher.publish(second));
+		assertEquals(second, publisher.getCurrent());
+	}
+	
+	public void testGarbageCollection() throws Exception {
+		SitemapPublisher publisher = new SitemapPublisher.Options(dir).keep(1).symlink(false).executor(DIRECT).build();
+		File abandoned = new File(dir, "v000007.staging");
+		abandoned.mkdir();
+		File inProgress = publisher.newVersion();
+		assertEquals("v000008.staging", inProgress.getName());
+		File discarded = publisher.newVersion();
+		publisher.discard(discarded);
+		assertFalse(discarded.exists());
+		
+		File published = publisher.publish(generate(publisher, "page"));
+		assertFalse(abandoned.exists());
+		assertTrue(inProgress.exists());
+		assertFalse(new File(dir, SitemapPublisher.CURRENT_LINK).exists());
+		List<File> versions = publisher.getVersions();
+		assertEquals(Arrays.asList(published), versions);
+		
+		try {
+			publisher.publish(new File(dir.getParentFile(), "v000001"));
+			fail("Not a version of the root");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,198 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+public class SitemapReaderTest extends TestCase {
+	
+	File dir;
+	W3CDateFormat dateFormat;
+	
+	public void setUp() throws Exception {
+		dir = File.createTempFile(SitemapReaderTest.class.getSimpleName(), "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		dateFormat = new W3CDateFormat(W3CDateFormat.Pattern.SECOND);
+		dateFormat.setTimeZone(W3CDateFormat.ZULU);
+	}
+	
+	public void tearDown() {
+		for (File file : dir.listFiles()) {
+			file.deleteOnExit();
+			file.delete();
+		}
+		dir.delete();
+		dir = null;
+	}
+	
+	public void testReadGzippedShardsAndIndex() throws Exception {
+		WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com", dir)
+			.gzip(true).maxUrls(10).dateFormat(dateFormat).build();
+		for (int i = 0; i < 25; i++) {
+			wsg.addUrl(new WebSitemapUrl.Options("http://www.example.com/" + i + "?a=1&b=2")
+				.lastMod(new Date(i * 1000L)).changeFreq(ChangeFreq.WEEKLY).priority(0.5).build());
+		}
+		List<File> files = wsg.write();
+		wsg.writeSitemapsWithIndex();
+		
+		SitemapReader index = SitemapReader.open(new File(dir, "sitemap_index.xml"));
+		try {
+			assertTrue(index.isSitemapIndex());
+			for (File file : files) {
+				SitemapIndexUrl sitemap = index.nextSitemap();
+				assertEquals("http://www.example.com/" + file.getName(), sitemap.getUrl().toString());
+			}
+			assertNull(index.nextSitemap());
+		} finally {
+			index.close();
+		}
+		
+		int i = 0;
+		for (File file : files) {
+			SitemapReader reader = SitemapReader.open(file);
+			try {
+				assertFalse(reader.isSitemapIndex());
+				for (SitemapUrlRecord record = reader.nextRecord(); record != null; record = reader.nextRecord()) {
+					assertEquals(new SitemapUrlRecord("http://www.example.com/" + i + "?a=1&b=2", i * 1000L, ChangeFreq.WEEKLY, 0.5), record);
+					i++;
+				}
+			} finally {
+				reader.close();
+			}
+		}
+		assertEquals(25, i);
+	}
+	
+	public void testReadTypedUrls() throws Exception {
+		String sitemap = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + 
+			"<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\" xmlns:video=\"http://www.google.com/schemas/sitemap-video/1.1\"" +
+			" xmlns:image=\"http://www.google.com/schemas/sitemap-image/1.1\" xmlns:news=\"http://www.google.com/schemas/sitemap-news/0.9\">\n" + 
+			"  <url>\n" + 
+			"    <loc>http://www.example.com/plain</loc>\n" + 
+			"    <lastmod>2005-01-01</lastmod>\n" + 
+			"  </url>\n" + 
+			"  <url>\n" + 
+			"    <loc>http://www.example.com/video</loc>\n" + 
+			"    <video:video>\n" + 
+			"      <video:player_loc allow_embed=\"no\">http://www.example.com/player.swf</video:player_loc>\n" + 
+			"      <video:title>Grilling</video:title>\n" + 
+			"      <video:tag>steak</video:tag>\n" + 
+			"      <video:tag>meat</video:tag>\n" + 
+			"      <video:duration>600</video:duration>\n" + 
+			"    </video:video>\n" + 
+			"  </url>\n" + 
+			"  <url>\n" + 
+			"    <loc>http://www.example.com/image</loc>\n" + 
+			"    <priority>0.8</priority>\n" + 
+			"    <image:image><image:loc>http://www.example.com/a.png</image:loc><image:title>A</image:title></image:image>\n" + 
+			"  </url>\n" + 
+			"  <url>\n" + 
+			"    <loc>http://www.example.com/news</loc>\n" + 
+			"    <news:news><news:publication_date>2008-11-23T12:00:00Z</news:publication_date><news:keywords>a, b</news:keywords></news:news>\n" + 
+			"  </url>\n" + 
+			"</urlset>";
+		W3CDateFormat autoFormat = new W3CDateFormat();
+		autoFormat.setTimeZone(W3CDateFormat.ZULU);
+		SitemapReader reader = new SitemapReader(new ByteArrayInputStream(sitemap.getBytes("UTF-8")), autoFormat, null);
+		try {
+			WebSitemapUrl plain = reader.nextUrl();
+			assertEquals(WebSitemapUrl.class, plain.getClass());
+			assertEquals(dateFormat.parse("2005-01-01T00:00:00Z"), plain.getLastMod());
+			
+			GoogleVideoSitemapUrl video = (GoogleVideoSitemapUrl) reader.nextUrl();
+			assertEquals(new URL("http://www.example.com/player.swf"), video.getPlayerUrl());
+			assertEquals("No", video.getAllowEmbed());
+			assertEquals("Grilling", video.getTitle());
+			assertEquals(2, video.getTags().size());
+			assertEquals(Integer.valueOf(600), video.getDurationInSeconds());
+			
+			GoogleImageSitemapUrl image = (GoogleImageSitemapUrl) reader.nextUrl();
+			assertEquals(new URL("http://www.example.com/a.png"), image.getImageUrl());
+			assertEquals("A", image.getTitle());
+			assertEquals(0.8, image.getPriority());
+			
+			GoogleNewsSitemapUrl news = (GoogleNewsSitemapUrl) reader.nextUrl();
+			assertEquals(dateFormat.parse("2008-11-23T12:00:00Z"), news.getPublicationDate());
+			assertEquals("a, b", news.getKeywords());
+			
+			assertNull(reader.nextUrl());
+			assertNull(reader.nextUrl());
+		} finally {
+			reader.close();
+		}
+	}
+	
+	public void testInvalidExtension() throws Exception {
+		String sitemap = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" + 
+			"<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\" xmlns:video=\"http://www.google.com/schemas/sitemap-video/1.1\">\n" + 
+			"  <url>\n" + 
+			"    <loc>http://www.example.com/video</loc>\n" + 
+			"    <video:video>\n" + 
+			"      <video:content_loc>http://www.example.com/video.flv</video:content_loc>\n" + 
+			"      <video:rating>7</video:rating>\n" + 
+			"    </video:video>\n" + 
+			"  </url>\n" + 
+			"</urlset>";
+		SitemapReader reader = new SitemapReader(new ByteArrayInputStream(sitemap.getBytes("UTF-8")));
+		try {
+			reader.nextUrl();
+			fail("read a video rated 7 out of 5");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("http://www.example.com/video") && e.getMessage().contains("at line 9"));
+		} finally {
+			reader.close();
+		}
+	}
+	
+	public void testNotASitemap() throws Exception {
+		try {
+			new SitemapReader(new ByteArrayInputStream("<html/>".getBytes("UTF-8")));
+			fail("read a document that isn't a sitemap");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+	
+	public void testParallelRead() throws Exception {
+		WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com", dir).maxUrls(100).build();
+		for (int i = 0; i < 1000; i++) {
+			wsg.addUrl("http://www.example.com/" + i);
+		}
+		List<File> files = wsg.write();
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Integer>> counts = new ArrayList<Future<Integer>>();
+			for (final File file : files) {
+				counts.add(executor.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						SitemapReader reader = SitemapReader.open(file);
+						try {
+							int count = 0;
+							while (reader.nextUrl() != null) count++;
+							return count;
+						} finally {
+							reader.close();
+						}
+					}
+				}));
+			}
+			for (Future<Integer> count : counts) {
+				assertEquals(Integer.valueOf(100), count.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+}
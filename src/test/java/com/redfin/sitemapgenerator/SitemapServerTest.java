@@ -0,0 +1,156 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+public class SitemapServerTest extends TestCase {
+	
+	File dir;
+	SitemapServer server;
+	
+	public void setUp() throws Exception {
+		dir = File.createTempFile(SitemapServerTest.class.getSimpleName(), "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+	}
+	
+	public void tearDown() {
+		if (server != null) server.close();
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+		dir = null;
+	}
+	
+	public void testDirectory() throws Exception {
+		WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com", dir).maxUrls(10).build();
+		for (int i = 0; i < 15; i++) {
+			wsg.addUrl("http://www.example.com/" + i);
+		}
+		wsg.write();
+		wsg.writeSitemapsWithIndex();
+		server = new SitemapServer.Options().directory(dir).build();
+		server.start();
+		
+		HttpURLConnection connection = open("sitemap2.xml", null);
+		assertEquals(200, connection.getResponseCode());
+		assertEquals("application/xml; charset=UTF-8", connection.getContentType());
+		assertEquals(new File(dir, "sitemap2.xml").length(), connection.getContentLength());
+		String body = read(connection.getInputStream());
+		assertEquals(TestUtil.slurpFileAndDelete(new File(dir, "sitemap2.xml")).length(), body.length());
+		assertTrue(body, body.contains("<loc>http://www.example.com/14</loc>"));
+		
+		connection = open("sitemap_index.xml", null);
+		String eTag = connection.getHeaderField("ETag");
+		String lastModified = connection.getHeaderField("Last-Modified");
+		assertTrue(read(connection.getInputStream()).contains("sitemap1.xml"));
+		assertNotNull(eTag);
+		assertNotNull(lastModified);
+		
+		connection = open("sitemap_index.xml", null);
+		connection.setRequestProperty("If-None-Match", "\"other\", " + eTag);
+		assertEquals(304, connection.getResponseCode());
+		connection = open("sitemap_index.xml", null);
+		connection.setRequestProperty("If-Modified-Since", lastModified);
+		assertEquals(304, connection.getResponseCode());
+		connection = open("sitemap_index.xml", null);
+		connection.setRequestProperty("If-Modified-Since", "Thu, 01 Jan 1970 00:00:00 GMT");
+		assertEquals(200, connection.getResponseCode());
+		
+		assertEquals(404, open("sitemap3.xml", null).getResponseCode());
+		assertEquals(404, open("../" + dir.getName() + "/sitemap1.xml", null).getResponseCode());
+		assertEquals(404, open("", null).getResponseCode());
+		connection = open("sitemap1.xml", null);
+		connection.setRequestMethod("POST");
+		assertEquals(405, connection.getResponseCode());
+	}
+	
+	public void testGzippedDirectory() throws Exception {
+		WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com", dir).gzip(true).build();
+		wsg.addUrl("http://www.example.com/index.html");
+		wsg.write();
+		server = new SitemapServer.Options().contextPath("/sitemaps").directory(dir).build();
+		server.start();
+		File file = new File(dir, "sitemap.xml.gz");
+		
+		// the file itself, as-is
+		HttpURLConnection connection = open("sitemaps/sitemap.xml.gz", null);
+		assertEquals("application/x-gzip", connection.getContentType());
+		assertNull(connection.getContentEncoding());
+		assertEquals(file.length(), connection.getContentLength());
+		assertTrue(read(new GZIPInputStream(connection.getInputStream())).contains("/index.html"));
+		
+		// the XML, gzip-encoded or not
+		connection = open("sitemaps/sitemap.xml", "gzip, deflate");
+		assertEquals("gzip", connection.getContentEncoding());
+		assertEquals(file.length(), connection.getContentLength());
+		String gzipETag = connection.getHeaderField("ETag");
+		assertTrue(read(new GZIPInputStream(connection.getInputStream())).contains("/index.html"));
+		connection = open("sitemaps/sitemap.xml", "gzip;q=0");
+		assertNull(connection.getContentEncoding());
+		assertFalse(gzipETag.equals(connection.getHeaderField("ETag")));
+		assertTrue(read(connection.getInputStream()).contains("/index.html"));
+	}
+	
+	public void testCache() throws Exception {
+		SitemapSource<WebSitemapUrl> source = new SitemapSource<WebSitemapUrl>() {
+			public long count() {
+				return 25;
+			}
+			public Iterable<WebSitemapUrl> page(long offset, int limit) throws MalformedURLException {
+				List<WebSitemapUrl> page = new ArrayList<WebSitemapUrl>();
+				for (long i = offset; i < Math.min(offset + limit, 25); i++) {
+					page.add(new WebSitemapUrl("http://www.example.com/" + i));
+				}
+				return page;
+			}
+		};
+		WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com", null).maxUrls(10).build();
+		SitemapCache<WebSitemapUrl> cache = new SitemapCache.Options<WebSitemapUrl>(wsg, source).build();
+		server = new SitemapServer.Options().cache(cache).build();
+		server.start();
+		
+		HttpURLConnection connection = open("sitemap3.xml", "gzip");
+		assertEquals("gzip", connection.getContentEncoding());
+		assertEquals(cache.getSitemap(3).getETag(), connection.getHeaderField("ETag"));
+		assertTrue(read(new GZIPInputStream(connection.getInputStream())).contains("<loc>http://www.example.com/24</loc>"));
+		connection = open("sitemap3.xml", null);
+		assertTrue(read(connection.getInputStream()).contains("<loc>http://www.example.com/24</loc>"));
+		connection = open("sitemap_index.xml", null);
+		assertTrue(read(connection.getInputStream()).contains("<loc>http://www.example.com/sitemap3.xml</loc>"));
+		
+		connection = open("sitemap3.xml", "gzip");
+		connection.setRequestProperty("If-None-Match", cache.getSitemap(3).getETag());
+		assertEquals(304, connection.getResponseCode());
+		assertEquals(404, open("sitemap4.xml", null).getResponseCode());
+		assertEquals(404, open("sitemap03.xml", null).getResponseCode());
+		assertEquals(404, open("other.xml", null).getResponseCode());
+	}
+	
+	private HttpURLConnection open(String path, String acceptEncoding) throws IOException {
+		URL url = new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), "/" + path);
+		HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+		if (acceptEncoding != null) connection.setRequestProperty("Accept-Encoding", acceptEncoding);
+		return connection;
+	}
+	
+	private String read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		for (int read; (read = in.read(buffer)) != -1;) out.write(buffer, 0, read);
+		in.close();
+		return out.toString("UTF-8");
+	}
+}
@@ -0,0 +1,207 @@
+package com.redfin.sitemapgenerator;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.net.URL;
+import java.util.Date;
+import java.util.List;
+
+import org.xml.sax.SAXException;
+
+import junit.framework.TestCase;
+
+public class SitemapValidatorTest extends TestCase {
+	
+	private static final String HEADER = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n";
+	private static final String URLSET = "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\"";
+	private static final long NOW = 1000L * 24 * 60 * 60 * 1000;
+	
+	File dir;
+	
+	public void setUp() throws Exception {
+		dir = File.createTempFile(SitemapValidatorTest.class.getSimpleName(), "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+	}
+	
+	public void tearDown() {
+		for (File file : dir.listFiles()) {
+			file.deleteOnExit();
+			file.delete();
+		}
+		dir.delete();
+		dir = null;
+	}
+	
+	public void testGeneratedSitemaps() throws Exception {
+		URL url = new URL("http://www.example.com/index.html");
+		WebSitemapGenerator web = WebSitemapGenerator.builder("http://www.example.com", dir)
+			.fileNamePrefix("web").autoValidateStructure(true).gzip(true).maxUrls(5).build();
+		for (int i = 0; i < 12; i++) {
+			web.addUrl(new WebSitemapUrl.Options("http://www.example.com/" + i).lastMod(new Date(0))
+				.changeFreq(ChangeFreq.DAILY).priority(0.5).build());
+		}
+		web.write();
+		web.writeSitemapsWithIndex();
+		SitemapValidator.validateStructure(new File(dir, "sitemap_index.xml"));
+		GoogleVideoSitemapGenerator.builder("http://www.example.com", dir).fileNamePrefix("video").autoValidateStructure(true).build()
+			.addUrl(new GoogleVideoSitemapUrl.Options(url, new URL("http://www.example.com/video.flv")).title("Video").build())
+			.write();
+		GoogleImageSitemapGenerator.builder("http://www.example.com", dir).fileNamePrefix("image").autoValidateStructure(true).build()
+			.addUrl(new GoogleImageSitemapUrl(url, new URL("http://www.example.com/image.png")))
+			.write();
+		GoogleNewsSitemapGenerator.builder("http://www.example.com", dir).fileNamePrefix("news").autoValidateStructure(true).build()
+			.addUrl(new GoogleNewsSitemapUrl(url, new Date()))
+			.write();
+		GoogleMobileSitemapGenerator.builder("http://www.example.com", dir).fileNamePrefix("mobile").autoValidateStructure(true).build()
+			.addUrl(new GoogleMobileSitemapUrl(url))
+			.write();
+		GoogleGeoSitemapGenerator.builder("http://www.example.com", dir).fileNamePrefix("geo").autoValidateStructure(true).build()
+			.addUrl(new GoogleGeoSitemapUrl(url, GoogleGeoSitemapUrl.Format.KML))
+			.write();
+		GoogleCodeSitemapGenerator.builder("http://www.example.com", dir).fileNamePrefix("code").autoValidateStructure(true).build()
+			.addUrl(new GoogleCodeSitemapUrl(url, "Java"))
+			.write();
+	}
+	
+	public void testVideoWithoutTitle() throws Exception {
+		GoogleVideoSitemapGenerator wsg = GoogleVideoSitemapGenerator.builder("http://www.example.com", dir)
+			.autoValidateStructure(true).build();
+		wsg.addUrl(new GoogleVideoSitemapUrl(new URL("http://www.example.com/index.html"), new URL("http://www.example.com/video.flv")));
+		try {
+			wsg.write();
+			fail("video without a title passed validation");
+		} catch (RuntimeException e) {
+			assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("without a title"));
+		}
+	}
+	
+	public void testOldNews() throws Exception {
+		String news = " xmlns:news=\"http://www.google.com/schemas/sitemap-news/0.9\">"
+				+ "<url><loc>http://www.example.com/</loc><news:news><news:publication_date>%s</news:publication_date></news:news></url></urlset>";
+		validate(String.format(news, "1972-09-25T00:00:00Z"));
+		assertInvalid("published more than 3 days ago", String.format(news, "1972-09-20T00:00:00Z"));
+	}
+	
+	public void testTooManyNews() throws Exception {
+		StringBuilder sb = new StringBuilder(URLSET).append(" xmlns:news=\"http://www.google.com/schemas/sitemap-news/0.9\">");
+		for (int i = 0; i <= SitemapStructureValidator.MAX_NEWS_URLS; i++) {
+			sb.append("<url><loc>http://www.example.com/").append(i).append("</loc>");
+			sb.append("<news:news><news:publication_date>1972-09-26</news:publication_date></news:news></url>");
+		}
+		assertInvalid("more than 1000 URLs", sb.append("</urlset>").toString().substring(URLSET.length()));
+	}
+	
+	public void testNonMobileUrl() throws Exception {
+		assertInvalid("without mobile:mobile", " xmlns:mobile=\"http://www.google.com/schemas/sitemap-mobile/1.0\">"
+				+ "<url><loc>http://www.example.com/</loc></url></urlset>");
+	}
+	
+	public void testOtherHost() throws Exception {
+		assertInvalid("isn't on the host", "><url><loc>http://www.example.com/</loc></url>"
+				+ "<url><loc>http://www.example.org/</loc></url></urlset>");
+	}
+	
+	public void testAlternateOnOtherHost() throws Exception {
+		String xhtml = " xmlns:xhtml=\"http://www.w3.org/1999/xhtml\">";
+		String alternates = "<xhtml:link rel=\"alternate\" hreflang=\"es\" href=\"http://www.example.com/\"/>"
+				+ "<xhtml:link rel=\"alternate\" hreflang=\"en\" href=\"http://en.example.com/\"/>";
+		validate(xhtml + "<url><loc>http://www.example.com/</loc>" + alternates + "</url>"
+				+ "<url><loc>http://en.example.com/</loc>" + alternates + "</url></urlset>");
+		assertInvalid("isn't on the host", xhtml + "<url><loc>http://www.example.com/</loc></url>"
+				+ "<url><loc>http://www.example.org/</loc>" + alternates + "</url></urlset>");
+		// none of the alternates is on the host
+		assertInvalid("isn't on the host", xhtml + "<url><loc>http://www.example.com/</loc></url><url><loc>http://en.example.com/</loc>"
+				+ "<xhtml:link rel=\"alternate\" hreflang=\"en\" href=\"http://en.example.com/\"/></url></urlset>");
+	}
+	
+	public void testBadValues() throws Exception {
+		assertInvalid("Invalid changefreq", "><url><loc>http://www.example.com/</loc><changefreq>often</changefreq></url></urlset>");
+		assertInvalid("between 0.0 and 1.0", "><url><loc>http://www.example.com/</loc><priority>1.5</priority></url></urlset>");
+		assertInvalid("Invalid date", "><url><loc>http://www.example.com/</loc><lastmod>yesterday</lastmod></url></urlset>");
+		assertInvalid("Invalid URL", "><url><loc>/relative</loc></url></urlset>");
+		assertInvalid("without a loc", "><url><lastmod>2005-01-01</lastmod></url></urlset>");
+	}
+	
+	public void testTooLarge() throws Exception {
+		String sitemap = HEADER + URLSET + "><url><loc>http://www.example.com/</loc></url></urlset>";
+		try {
+			new SitemapStructureValidator(null, 100, NOW).validate(new ByteArrayInputStream(sitemap.getBytes("UTF-8")), null);
+			fail("sitemap larger than the limit passed validation");
+		} catch (SAXException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("larger than 100 bytes"));
+		}
+	}
+	
+	public void testGeneratedFiles() throws Exception {
+		WebSitemapGenerator wsg = WebSitemapGenerator.builder("http://www.example.com", dir).build();
+		wsg.addUrl("http://www.example.com/");
+		List<File> files = wsg.write();
+		SitemapValidator.validateStructure(files.get(0), new URL("http://www.example.com"), SitemapValidator.LEGACY_MAX_SITEMAP_BYTES);
+		try {
+			SitemapValidator.validateStructure(files.get(0), new URL("http://www.example.org"), SitemapValidator.MAX_SITEMAP_BYTES);
+			fail("sitemap on the wrong host passed validation");
+		} catch (SAXException e) {
+			// expected
+		}
+	}
+	
+	public void testValidationPolicy() throws Exception {
+		Date[] dates = { new Date(), new Date(0), new Date() };
+		GoogleNewsSitemapGenerator wsg = GoogleNewsSitemapGenerator.builder("http://www.example.com", dir)
+			.autoValidateStructure(true).maxUrls(1).validationPolicy(ValidationPolicy.FIRST_AND_LAST).build();
+		for (int i = 0; i < dates.length; i++) {
+			wsg.addUrl(new GoogleNewsSitemapUrl("http://www.example.com/" + i, dates[i]));
+		}
+		assertEquals(3, wsg.write().size());
+		
+		wsg = GoogleNewsSitemapGenerator.builder("http://www.example.com", dir)
+			.autoValidateStructure(true).maxUrls(1).validationPolicy(ValidationPolicy.everyNth(2)).build();
+		for (int i = 0; i < dates.length; i++) {
+			wsg.addUrl(new GoogleNewsSitemapUrl("http://www.example.com/" + i, dates[i]));
+		}
+		assertEquals(3, wsg.write().size());
+		
+		wsg = GoogleNewsSitemapGenerator.builder("http://www.example.com", dir)
+			.autoValidateStructure(true).maxUrls(1).build();
+		for (int i = 0; i < dates.length; i++) {
+			wsg.addUrl(new GoogleNewsSitemapUrl("http://www.example.com/" + i, dates[i]));
+		}
+		try {
+			wsg.write();
+			fail("old news passed validation");
+		} catch (RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().endsWith("[sitemap2.xml]"));
+		}
+	}
+	
+	public void testFractionPolicy() throws Exception {
+		ValidationPolicy policy = ValidationPolicy.fraction(0.25, 42);
+		ValidationPolicy samePolicy = ValidationPolicy.fraction(0.25, 42);
+		int validated = 0;
+		for (int i = 0; i < 10000; i++) {
+			boolean validate = policy.shouldValidate(i, false);
+			assertEquals(validate, samePolicy.shouldValidate(i, false));
+			if (validate) validated++;
+		}
+		assertTrue("validated " + validated, validated > 2300 && validated < 2700);
+		assertFalse(ValidationPolicy.fraction(0.0, 42).shouldValidate(0, true));
+		assertTrue(ValidationPolicy.fraction(1.0, 42).shouldValidate(0, true));
+	}
+	
+	private void validate(String urlset) throws Exception {
+		String sitemap = HEADER + URLSET + urlset;
+		new SitemapStructureValidator(null, SitemapValidator.MAX_SITEMAP_BYTES, NOW)
+			.validate(new ByteArrayInputStream(sitemap.getBytes("UTF-8")), null);
+	}
+	
+	private void assertInvalid(String expectedMessage, String urlset) throws Exception {
+		try {
+			validate(urlset);
+			fail("invalid sitemap passed validation: " + urlset);
+		} catch (SAXException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains(expectedMessage));
+		}
+	}
+}
@@ -75,6 +75,33 @@ public class W3CDateFormatTest extends TestCase {
 		verifyPatternParse("1969-12-31T16:00:00.000-08:00", AUTO, epoch);
 	}
 	
+	public void testParseRejectsWrongPattern() {
+		verifyPatternParse("1970-01-01T00:00Z", DAY, null);
+		verifyPatternParse("1970-01-01", MINUTE, null);
+	}
+	
+	public void testFastParse() throws Exception {
+		assertEquals(0L, W3CDateParser.parseMillis("1970-01-01T00:00:00.000Z"));
+		assertEquals(0L, W3CDateParser.parseMillis("1969-12-31T16:00-08:00"));
+		assertEquals(0L, W3CDateParser.parseMillis("1970-01-01T01:00:00+0100"));
+		assertEquals(450L, W3CDateParser.parseMillis("1970-01-01T00:00:00.45Z"));
+		assertEquals(1L, W3CDateParser.parseMillis("1970-01-01T00:00:00.0019Z"));
+		assertEquals(951782400000L, W3CDateParser.parseMillis("2000-02-29"));
+		assertEquals(28800000L, W3CDateParser.parseMillis("1970", TimeZone.getTimeZone("PST")));
+		assertEquals(new Date(0).getTime(), W3CDateParser.parseInstant("1970-01").toEpochMilli());
+	}
+	
+	public void testFastParseInvalid() {
+		String[] invalid = { "", "197", "1970-", "1970-13", "1970-02-30", "1970-01-01T", "1970-01-01T24:00Z",
+				"1970-01-01T00:00", "1970-01-01T00:00:00.Z", "1970-01-01T00:00+01", "1970-01-01T00:00Zjunk", "1970/01/01" };
+		for (String text : invalid) {
+			try {
+				W3CDateParser.parseMillis(text);
+				fail("Parsed invalid date " + text);
+			} catch (ParseException e) {}
+		}
+	}
+	
 	private void verifyPatternFormat(Date date, Pattern pattern, String expected) {
 		verifyPatternFormat(date, pattern, expected, W3CDateFormat.ZULU);
 	}
@@ -0,0 +1,110 @@
+package com.redfin.sitemapgenerator.spring;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.test.context.assertj.AssertableApplicationContext;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+import org.springframework.boot.test.context.runner.ContextConsumer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.TaskScheduler;
+
+import com.redfin.sitemapgenerator.WebSitemapGenerator;
+
+import junit.framework.TestCase;
+
+public class SitemapAutoConfigurationTest extends TestCase {
+	
+	@Configuration
+	static class Urls {
+		@Bean
+		public SitemapUrlProvider urls() {
+			return new SitemapUrlProvider() {
+				public void addUrls(WebSitemapGenerator generator) throws Exception {
+					generator.addUrl("http://www.example.com/index.html");
+				}
+			};
+		}
+	}
+	
+	@Configuration
+	static class CustomFactory {
+		@Bean
+		public SitemapGeneratorFactory customFactory() {
+			SitemapProperties properties = new SitemapProperties();
+			properties.setBaseUrl("http://www.example.com");
+			return new SitemapGeneratorFactory(properties);
+		}
+	}
+	
+	File dir;
+	ApplicationContextRunner runner;
+	
+	public void setUp() throws Exception {
+		dir = File.createTempFile(SitemapAutoConfigurationTest.class.getSimpleName(), "");
+		dir.delete();
+		dir.deleteOnExit();
+		runner = new ApplicationContextRunner()
+			.withConfiguration(AutoConfigurations.of(SitemapAutoConfiguration.class))
+			// keep the schedule from generating while the context is up
+			.withPropertyValues("sitemap.output-dir=" + dir, "sitemap.initial-delay=1h");
+	}
+	
+	public void tearDown() {
+		delete(dir);
+		dir = null;
+	}
+	
+	private void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null && !Files.isSymbolicLink(file.toPath())) {
+			for (File child : files) delete(child);
+		}
+		file.deleteOnExit();
+		file.delete();
+	}
+	
+	public void testOffWithoutBaseUrl() {
+		runner.run(new ContextConsumer<AssertableApplicationContext>() {
+			public void accept(AssertableApplicationContext context) {
+				assertNull(context.getStartupFailure());
+				assertTrue(context.getBeansOfType(SitemapRegenerator.class).isEmpty());
+				assertTrue(context.getBeansOfType(SitemapGeneratorFactory.class).isEmpty());
+			}
+		});
+	}
+	
+	public void testBeans() {
+		runner.withUserConfiguration(Urls.class).withPropertyValues("sitemap.base-url=http://www.example.com", "sitemap.max-urls=10")
+			.run(new ContextConsumer<AssertableApplicationContext>() {
+				public void accept(AssertableApplicationContext context) throws Exception {
+					assertNull(context.getStartupFailure());
+					SitemapRegenerator regenerator = context.getBean(SitemapRegenerator.class);
+					assertTrue(regenerator.isRunning());
+					assertNotNull(context.getBean(SitemapGeneratorFactory.class));
+					assertNotNull(context.getBean(SitemapMetrics.class));
+					assertEquals(10, context.getBean(SitemapProperties.class).getMaxUrls());
+					// not a web application
+					assertTrue(context.getBeansOfType(SitemapController.class).isEmpty());
+					// the regenerator's pool mustn't be offered to the application's @Scheduled tasks
+					assertTrue(context.getBeansOfType(TaskScheduler.class).isEmpty());
+					
+					assertTrue(regenerator.regenerate());
+					assertNotNull(regenerator.getCurrent().getFile("sitemap.xml"));
+				}
+			});
+	}
+	
+	public void testUserBeanWins() {
+		runner.withUserConfiguration(CustomFactory.class).withPropertyValues("sitemap.base-url=http://www.example.com")
+			.run(new ContextConsumer<AssertableApplicationContext>() {
+				public void accept(AssertableApplicationContext context) {
+					assertNull(context.getStartupFailure());
+					assertEquals(1, context.getBeansOfType(SitemapGeneratorFactory.class).size());
+					assertTrue(context.containsBean("customFactory"));
+				}
+			});
+	}
+}
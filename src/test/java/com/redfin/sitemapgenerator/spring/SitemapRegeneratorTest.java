@@ -0,0 +1,132 @@
+package com.redfin.sitemapgenerator.spring;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import com.redfin.sitemapgenerator.WebSitemapGenerator;
+
+import junit.framework.TestCase;
+
+public class SitemapRegeneratorTest extends TestCase {
+	
+	/** Adds as many URLs as it's told, and reports its version */
+	static class Provider implements SitemapUrlProvider {
+		int urls = 3;
+		Object version = "v1";
+		int calls;
+		RuntimeException failure;
+		
+		public void addUrls(WebSitemapGenerator generator) throws Exception {
+			calls++;
+			if (failure != null) throw failure;
+			for (int i = 0; i < urls; i++) {
+				generator.addUrl("http://www.example.com/" + i);
+			}
+		}
+		
+		public Object getVersion() {
+			return version;
+		}
+	}
+	
+	File dir;
+	Provider provider;
+	SitemapRegenerator regenerator;
+	
+	public void setUp() throws Exception {
+		dir = File.createTempFile(SitemapRegeneratorTest.class.getSimpleName(), "");
+		dir.delete();
+		dir.mkdir();
+		dir.deleteOnExit();
+		SitemapProperties properties = new SitemapProperties();
+		properties.setBaseUrl("http://www.example.com");
+		properties.setOutputDir(dir);
+		properties.setMaxUrls(2);
+		provider = new Provider();
+		regenerator = new SitemapRegenerator(new SitemapGeneratorFactory(properties), Arrays.<SitemapUrlProvider>asList(provider), properties);
+	}
+	
+	public void tearDown() {
+		delete(dir);
+		dir = null;
+	}
+	
+	private void delete(File file) {
+		File[] files = file.listFiles();
+		if (files != null && !Files.isSymbolicLink(file.toPath())) {
+			for (File child : files) delete(child);
+		}
+		file.deleteOnExit();
+		file.delete();
+	}
+	
+	public void testPublish() throws Exception {
+		assertNull(regenerator.getCurrent());
+		assertTrue(regenerator.regenerate());
+		SitemapSet set = regenerator.getCurrent();
+		assertEquals(1, set.getGeneration());
+		assertEquals(2, set.getSitemapCount());
+		assertNotNull(set.getFile("sitemap1.xml"));
+		assertNotNull(set.getFile("sitemap2.xml"));
+		assertNotNull(set.getFile(SitemapSet.INDEX_FILE_NAME));
+		assertTrue(set.getFile("sitemap2.xml").isFile());
+		assertEquals(1, regenerator.getGenerations());
+	}
+	
+	public void testSkipIfUnchanged() throws Exception {
+		assertTrue(regenerator.regenerate());
+		SitemapSet first = regenerator.getCurrent();
+		assertFalse(regenerator.regenerate());
+		assertSame(first, regenerator.getCurrent());
+		assertEquals(1, provider.calls);
+		
+		provider.version = "v2";
+		provider.urls = 5;
+		assertTrue(regenerator.regenerate());
+		SitemapSet second = regenerator.getCurrent();
+		assertEquals(2, second.getGeneration());
+		assertEquals(3, second.getSitemapCount());
+		assertFalse(second.getDir().equals(first.getDir()));
+		// the set that was being served is kept for rollback
+		assertTrue(first.getFile("sitemap1.xml").isFile());
+	}
+	
+	public void testNullVersionAlwaysRegenerates() throws Exception {
+		provider.version = null;
+		assertTrue(regenerator.regenerate());
+		assertTrue(regenerator.regenerate());
+		assertEquals(2, provider.calls);
+		assertEquals(2, regenerator.getGenerations());
+	}
+	
+	public void testFailureKeepsCurrent() throws Exception {
+		assertTrue(regenerator.regenerate());
+		SitemapSet first = regenerator.getCurrent();
+		provider.version = "v2";
+		provider.failure = new IllegalStateException("database down");
+		try {
+			regenerator.regenerate();
+			fail("the provider's failure was swallowed");
+		} catch (IllegalStateException e) {
+			// expected
+		}
+		assertSame(first, regenerator.getCurrent());
+		assertEquals(1, regenerator.getFailures());
+		
+		provider.failure = null;
+		assertTrue(regenerator.regenerate());
+		assertEquals(2, regenerator.getGenerations());
+	}
+	
+	public void testRollback() throws Exception {
+		assertTrue(regenerator.regenerate());
+		File first = regenerator.getCurrent().getDir().getCanonicalFile();
+		provider.version = "v2";
+		assertTrue(regenerator.regenerate());
+		regenerator.rollback();
+		assertEquals(first, regenerator.getCurrent().getDir().getCanonicalFile());
+		// the next generation runs even though the version didn't change
+		assertTrue(regenerator.regenerate());
+	}
+}